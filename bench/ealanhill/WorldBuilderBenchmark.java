@@ -0,0 +1,91 @@
+package ealanhill;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ealanhill.objects.World;
+
+/**
+ * Benchmarks building a whole world, and the door pass on its own,
+ * across a sweep of world sizes and room tries.
+ * 
+ * @author Alan Hill
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldBuilderBenchmark {
+	
+	/** the width and height of the world */
+	@Param({"80", "500", "2000"})
+	private int worldSize;
+	/** the number of tries to attempt to place a room */
+	@Param({"100", "10000", "100000"})
+	private int roomTries;
+	
+	/** the world the door pass runs over */
+	private World world = null;
+	/** the doorways found by the sweep, a bit per tile row by row */
+	private long[] doorways = null;
+	
+	/**
+	 * Places the rooms of the world the door pass runs over, the
+	 * same seed is used so every iteration sees the same rooms.
+	 */
+	@Setup(Level.Iteration)
+	public void setUp() {
+		this.world = newBuilder().generateRooms();
+		this.doorways = new long[((this.world.getWidth() + 63) >>> 6) * this.world.getHeight()];
+	}
+	
+	/**
+	 * Builds a whole world.
+	 * 
+	 * @return the {@link World}
+	 */
+	@Benchmark
+	public World create() {
+		return newBuilder().create();
+	}
+	
+	/**
+	 * Finds the doorways of the whole world in one sweep, the part of
+	 * the door pass that used to scan each room's perimeter.
+	 * 
+	 * @return the doorways
+	 */
+	@Benchmark
+	public long[] findDoorways() {
+		this.world.findDoorways(0, this.world.getHeight(), this.doorways);
+		return this.doorways;
+	}
+	
+	/**
+	 * Creates a builder with the benchmark's settings and a fixed seed.
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	private WorldBuilder newBuilder() {
+		return new WorldBuilder()
+				.setWorldWidth(this.worldSize)
+				.setWorldHeight(this.worldSize)
+				.setRoomTries(this.roomTries)
+				.setSeed(42L);
+	}
+}
@@ -0,0 +1,118 @@
+package ealanhill.objects;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks checking rooms for collisions as the number of rooms in the
+ * world grows, and scanning every tile of the world.
+ * 
+ * @author Alan Hill
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldBenchmark {
+	
+	/** the number of candidate rooms checked per invocation */
+	private static final int CANDIDATES = 1024;
+	/** the width and height of the rooms placed in the world */
+	private static final int ROOM_SIZE = 5;
+	/** the distance between the rooms placed in the world */
+	private static final int STRIDE = 8;
+	
+	/** the number of rooms in the world */
+	@Param({"100", "1000", "10000", "100000"})
+	private int roomCount;
+	
+	/** the world, with its rooms laid out in a lattice */
+	private World world = null;
+	/** the candidate rooms, every one collides with a room in the world */
+	private Room[] candidates = null;
+	
+	/**
+	 * Lays the rooms out in a lattice, leaving gaps too narrow for
+	 * any candidate, so checking the candidates never changes the world.
+	 */
+	@Setup
+	public void setUp() {
+		int side = (int)Math.ceil(Math.sqrt(this.roomCount));
+		int size = side * STRIDE + 2;
+		this.world = new World(size, size);
+		this.world.setRoomIndex(new GridRoomIndex(size, size, STRIDE));
+		
+		// fill the world with walls
+		for(int y = 0; y < size; y++) {
+			for(int x = 0; x < size; x++) {
+				this.world.insertTile(x, y, Tile.Wall);
+			}
+		}
+		
+		for(int i = 0; i < this.roomCount; i++) {
+			this.world.insertRoom(new Room(1 + (i % side) * STRIDE, 1 + (i / side) * STRIDE, ROOM_SIZE, ROOM_SIZE));
+		}
+		
+		// only place candidates over the rows of the lattice that are full
+		int fullHeight = (this.roomCount / side) * STRIDE;
+		
+		SplittableRandom random = new SplittableRandom(42L);
+		this.candidates = new Room[CANDIDATES];
+		for(int i = 0; i < CANDIDATES; i++) {
+			int width = random.nextInt(ROOM_SIZE) + 3;
+			int height = random.nextInt(ROOM_SIZE) + 3;
+			this.candidates[i] = new Room(random.nextInt(size - width), random.nextInt(fullHeight - height), width, height);
+		}
+	}
+	
+	/**
+	 * Attempts to insert every candidate room.
+	 * 
+	 * @return the number of rooms inserted, always zero
+	 */
+	@Benchmark
+	@OperationsPerInvocation(CANDIDATES)
+	public int insertRoom() {
+		int inserted = 0;
+		for(int i = 0; i < CANDIDATES; i++) {
+			if(this.world.insertRoom(this.candidates[i])) {
+				inserted++;
+			}
+		}
+		return inserted;
+	}
+	
+	/**
+	 * Reads every tile in the world, row by row.
+	 * 
+	 * @return the number of floor tiles
+	 */
+	@Benchmark
+	public int getTileScan() {
+		int floors = 0;
+		for(int y = 0; y < this.world.getHeight(); y++) {
+			for(int x = 0; x < this.world.getWidth(); x++) {
+				if(this.world.getTile(x, y) == Tile.Floor) {
+					floors++;
+				}
+			}
+		}
+		return floors;
+	}
+}
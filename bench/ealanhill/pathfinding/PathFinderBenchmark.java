@@ -0,0 +1,105 @@
+package ealanhill.pathfinding;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ealanhill.WorldBuilder;
+import ealanhill.objects.Room;
+import ealanhill.objects.World;
+
+/**
+ * Benchmarks finding paths between the rooms of a world with A* and
+ * with Jump Point Search, reusing the same path for every query.
+ * 
+ * @author Alan Hill
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFinderBenchmark {
+	
+	/** the number of paths found per invocation */
+	private static final int QUERIES = 64;
+	
+	/** the path finder over the world */
+	private PathFinder finder = null;
+	/** the start and goal of each path, the centers of two rooms */
+	private int[] queries = null;
+	/** the path filled in by every query */
+	private Path path = new Path();
+	
+	/**
+	 * Builds a world and picks pairs of rooms to find paths between.
+	 */
+	@Setup
+	public void setUp() {
+		World world = new WorldBuilder()
+				.setSeed(42L)
+				.setWorldWidth(300)
+				.setWorldHeight(300)
+				.setRoomTries(3000)
+				.setPlannedCorridors(true)
+				.setMetricsEnabled(false)
+				.create();
+		this.finder = new PathFinder(world);
+		
+		SplittableRandom random = new SplittableRandom(42L);
+		this.queries = new int[4 * QUERIES];
+		for(int i = 0; i < QUERIES; i++) {
+			Room start = world.getRooms().get(random.nextInt(world.getRooms().size()));
+			Room goal = world.getRooms().get(random.nextInt(world.getRooms().size()));
+			this.queries[4 * i] = start.getCenterX();
+			this.queries[4 * i + 1] = start.getCenterY();
+			this.queries[4 * i + 2] = goal.getCenterX();
+			this.queries[4 * i + 3] = goal.getCenterY();
+		}
+	}
+	
+	/**
+	 * Finds every path with A*.
+	 * 
+	 * @return the total cost of the paths
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long findPath() {
+		long cost = 0;
+		for(int i = 0; i < 4 * QUERIES; i += 4) {
+			cost += this.finder.findPath(this.queries[i], this.queries[i + 1],
+					this.queries[i + 2], this.queries[i + 3], this.path).getCost();
+		}
+		return cost;
+	}
+	
+	/**
+	 * Finds every path with Jump Point Search.
+	 * 
+	 * @return the total cost of the paths
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long findJumpPath() {
+		long cost = 0;
+		for(int i = 0; i < 4 * QUERIES; i += 4) {
+			cost += this.finder.findJumpPath(this.queries[i], this.queries[i + 1],
+					this.queries[i + 2], this.queries[i + 3], this.path).getCost();
+		}
+		return cost;
+	}
+}
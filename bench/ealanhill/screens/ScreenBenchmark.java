@@ -0,0 +1,68 @@
+package ealanhill.screens;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asciiPanel.AsciiPanel;
+import ealanhill.WorldBuilder;
+import ealanhill.objects.World;
+
+/**
+ * Benchmarks drawing the world onto the terminal, which is what every
+ * key press costs.
+ * 
+ * @author Alan Hill
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScreenBenchmark {
+	
+	/** the width and height of the world */
+	@Param({"80", "500", "2000"})
+	private int worldSize;
+	
+	/** the screen being drawn */
+	private Screen screen = null;
+	
+	/**
+	 * Builds the world and the screen to draw it on, the same size
+	 * terminal the application uses.
+	 */
+	@Setup
+	public void setUp() {
+		World world = new WorldBuilder()
+				.setWorldWidth(this.worldSize)
+				.setWorldHeight(this.worldSize)
+				.setRoomTries(this.worldSize * this.worldSize / 64)
+				.setSeed(42L)
+				.create();
+		this.screen = new Screen(new AsciiPanel(100, 100), world);
+	}
+	
+	/**
+	 * Draws the world onto the terminal.
+	 * 
+	 * @return the {@link Screen}
+	 */
+	@Benchmark
+	public Screen display() {
+		this.screen.display();
+		return this.screen;
+	}
+}
@@ -0,0 +1,194 @@
+package ealanhill;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import ealanhill.io.TextWorldWriter;
+import ealanhill.io.WorldFile;
+import ealanhill.objects.World;
+
+/**
+ * Generates worlds in bulk without a display, writing each world out as
+ * soon as it's built. Nothing here touches AWT, Swing or the AsciiPanel,
+ * so it can run on a headless machine.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp RoguelikeMaze.jar ealanhill.BatchGenerator [options]
+ *   --count N          the number of worlds to generate (default 1)
+ *   --width N          how wide each world should be
+ *   --height N         how high each world should be
+ *   --maxRoomSize N    the maximum room size
+ *   --roomTries N      the number of tries to place a room
+ *   --seed N           the seed of the first world, each following world uses the next seed
+ *   --parallelism N    generate each world in parallel on this many threads
+ *   --out DIR          the directory to write the worlds to, or "-" for stdout (default)
+ *   --format FORMAT    "text" (default) or "binary", binary worlds need an output directory
+ * </pre>
+ * 
+ * @author Alan Hill
+ *
+ */
+public class BatchGenerator {
+
+	/** the number of worlds to generate */
+	private int count = 1;
+	/** how wide each world should be, {@code null} for the default */
+	private Integer worldWidth = null;
+	/** how high each world should be, {@code null} for the default */
+	private Integer worldHeight = null;
+	/** the maximum room size, {@code null} for the default */
+	private Integer maxRoomSize = null;
+	/** the number of tries to place a room, {@code null} for the default */
+	private Integer roomTries = null;
+	/** the seed of the first world, {@code null} to pick one at random */
+	private Long seed = null;
+	/** the number of threads to generate each world with, {@code null} to generate on this thread */
+	private Integer parallelism = null;
+	/** the directory to write the worlds to, {@code null} for stdout */
+	private File outputDirectory = null;
+	/** whether to write the worlds as a {@link WorldFile} rather than text */
+	private boolean binary = false;
+	
+	/**
+	 * Generates the worlds, writing each one out as soon as it's built.
+	 * 
+	 * @throws IOException if a world couldn't be written
+	 */
+	public void run() throws IOException {
+		// the worlds use consecutive seeds, starting from a random one if none was given
+		long firstSeed = this.seed == null ? new SplittableRandom().nextLong() : this.seed;
+		
+		if(this.outputDirectory != null) {
+			this.outputDirectory.mkdirs();
+		}
+		
+		Writer stdout = this.outputDirectory == null ?
+				new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16) : null;
+		
+		long tiles = 0;
+		long start = System.nanoTime();
+		
+		for(int i = 0; i < this.count; i++) {
+			long worldSeed = firstSeed + i;
+			World world = generate(worldSeed);
+			tiles += (long)world.getWidth() * world.getHeight();
+			
+			if(stdout != null) {
+				// separate the worlds with a header line
+				stdout.write("# seed " + worldSeed + " " + world.getWidth() + "x" + world.getHeight() + "\n");
+				TextWorldWriter.write(world, stdout);
+				stdout.flush();
+			} else if(this.binary) {
+				WorldFile.write(world, new File(this.outputDirectory, "world-" + worldSeed + ".rlmz").toPath());
+			} else {
+				File file = new File(this.outputDirectory, "world-" + worldSeed + ".txt");
+				try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+					TextWorldWriter.write(world, writer);
+				}
+			}
+		}
+		
+		// report how fast we went on stderr, so it doesn't end up in the worlds
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("Generated %d worlds (%d tiles) in %.3f s: %.2f worlds/s, %.0f tiles/s%n",
+				this.count, tiles, seconds, this.count / seconds, tiles / seconds);
+	}
+	
+	/**
+	 * Generates a single world with the settings.
+	 * 
+	 * @param worldSeed the seed of the world
+	 * 
+	 * @return the {@link World}
+	 */
+	private World generate(long worldSeed) {
+		WorldBuilder builder = new WorldBuilder()
+				.setWorldWidth(this.worldWidth)
+				.setWorldHeight(this.worldHeight)
+				.setMaxRoomSize(this.maxRoomSize)
+				.setRoomTries(this.roomTries)
+				.setSeed(worldSeed)
+				.setParallelism(this.parallelism);
+		return this.parallelism == null ? builder.create() : builder.createParallel();
+	}
+	
+	/**
+	 * Reads the settings from the command line arguments.
+	 * 
+	 * @param args the command line arguments
+	 * 
+	 * @throws IllegalArgumentException if an argument isn't recognized or is missing its value
+	 */
+	private void parseArguments(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if(i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing a value for " + option);
+			}
+			String value = args[++i];
+			
+			switch(option) {
+			case "--count":
+				this.count = Integer.parseInt(value);
+				break;
+			case "--width":
+				this.worldWidth = Integer.valueOf(value);
+				break;
+			case "--height":
+				this.worldHeight = Integer.valueOf(value);
+				break;
+			case "--maxRoomSize":
+				this.maxRoomSize = Integer.valueOf(value);
+				break;
+			case "--roomTries":
+				this.roomTries = Integer.valueOf(value);
+				break;
+			case "--seed":
+				this.seed = Long.valueOf(value);
+				break;
+			case "--parallelism":
+				this.parallelism = Integer.valueOf(value);
+				break;
+			case "--format":
+				if(!"text".equals(value) && !"binary".equals(value)) {
+					throw new IllegalArgumentException("Unknown format " + value);
+				}
+				this.binary = "binary".equals(value);
+				break;
+			case "--out":
+				this.outputDirectory = "-".equals(value) ? null : new File(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		
+		if(this.binary && this.outputDirectory == null) {
+			throw new IllegalArgumentException("Binary worlds need an output directory");
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		// make certain nothing we load can open a display
+		System.setProperty("java.awt.headless", "true");
+		
+		BatchGenerator generator = new BatchGenerator();
+		try {
+			generator.parseArguments(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: BatchGenerator [--count N] [--width N] [--height N] [--maxRoomSize N] "
+					+ "[--roomTries N] [--seed N] [--parallelism N] [--out DIR|-] [--format text|binary]");
+			System.exit(1);
+		}
+		
+		generator.run();
+	}
+}
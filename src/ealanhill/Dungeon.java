@@ -0,0 +1,631 @@
+package ealanhill;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ealanhill.io.WorldFile;
+import ealanhill.objects.RoomStore;
+import ealanhill.objects.Tile;
+import ealanhill.objects.World;
+
+/**
+ * A dungeon of levels, each a {@link World} generated the first time it's
+ * visited. A level is generated from a seed derived from the dungeon's seed
+ * and its depth, so it's always the same no matter which levels were visited
+ * before it. Every level but the last has stairs down, which lead to the
+ * stairs up of the level below. Each level places its stairs in its own room
+ * nearest a point derived from the seed and the depth of the upper level, so
+ * the stairs of two levels are paired without either level being needed to
+ * place the other's. The paired stairs are near the same place, but are
+ * usually at different coordinates.
+ * 
+ * Only the levels being used are kept as worlds. Once the levels take more
+ * memory than the budget, the least recently used are encoded as
+ * {@link WorldFile}s in memory, which take a fraction of the space. If that's
+ * still too much, the encoded levels that haven't been changed are dropped,
+ * as they can be generated again, and the changed ones are written to the
+ * spill directory. Without a spill directory a changed level stays in memory,
+ * so changes are never lost. The level asked for last is never evicted.
+ * 
+ * A level's world is detached when the level is evicted, so a change made
+ * through a world kept from an earlier {@link #getLevel(int)} fails rather
+ * than being lost with the world. An {@link EvictionListener} is told as
+ * each level is evicted, to let go of its world and ask for the level again.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class Dungeon implements AutoCloseable {
+	
+	/** the default number of bytes the levels can take in memory */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+	
+	/** the seed the levels are derived from */
+	private long seed = 0;
+	/** the settings each level is generated with */
+	private WorldSupply.Config config = null;
+	/** the number of bytes the levels can take in memory */
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	/** where to write the changed levels that don't fit in memory, {@code null} to keep them in memory */
+	private Path spillDirectory = null;
+	/** every level, {@code null} until it's first visited */
+	private Level[] levels = null;
+	/** the levels held as worlds, by depth, in order of least to most recently used */
+	private LinkedHashMap<Integer, Level> resident = new LinkedHashMap<Integer, Level>(16, 0.75f, true);
+	/** the levels held encoded in memory, by depth, in the order they were encoded */
+	private LinkedHashMap<Integer, Level> encoded = new LinkedHashMap<Integer, Level>();
+	/** the number of bytes the resident and encoded levels take */
+	private long memoryUsed = 0;
+	/** the number of levels written to the spill directory */
+	private int spilledLevels = 0;
+	/** the listeners told when a level is evicted */
+	private List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+	
+	/**
+	 * Create a dungeon with the default memory budget, that keeps every
+	 * changed level in memory.
+	 * 
+	 * @param seed the seed the levels are derived from
+	 * @param depth the number of levels
+	 * @param config the {@link WorldSupply.Config} each level is generated with
+	 */
+	public Dungeon(long seed, int depth, WorldSupply.Config config) {
+		this(seed, depth, config, DEFAULT_MEMORY_BUDGET, null);
+	}
+	
+	/**
+	 * Create a dungeon.
+	 * 
+	 * @param seed the seed the levels are derived from
+	 * @param depth the number of levels
+	 * @param config the {@link WorldSupply.Config} each level is generated with
+	 * @param memoryBudget the number of bytes the levels can take in memory
+	 * @param spillDirectory where to write the changed levels that don't fit
+	 * in memory, can be {@code null} to keep them in memory
+	 * 
+	 * @throws IllegalArgumentException if the dungeon has no levels
+	 */
+	public Dungeon(long seed, int depth, WorldSupply.Config config, long memoryBudget, Path spillDirectory) {
+		if(depth < 1) {
+			throw new IllegalArgumentException("A dungeon must have at least one level");
+		}
+		
+		this.seed = seed;
+		this.config = config;
+		this.memoryBudget = Math.max(0, memoryBudget);
+		this.spillDirectory = spillDirectory;
+		this.levels = new Level[depth];
+	}
+	
+	/**
+	 * Get a level of the dungeon, generating it if it's the first visit, or
+	 * bringing it back into memory if it has been evicted. The levels used
+	 * least recently are evicted if the levels now take more than the budget.
+	 * 
+	 * @param depth the depth of the level, 0 being the top
+	 * 
+	 * @return the {@link World} of the level, which stays the level's world
+	 * until the level is evicted, after which it's detached and can no
+	 * longer be changed
+	 * 
+	 * @throws IOException if the level had been spilled and couldn't be read
+	 */
+	public synchronized World getLevel(int depth) throws IOException {
+		checkDepth(depth);
+		
+		Level level = this.levels[depth];
+		if(level == null) {
+			level = new Level(depth);
+			this.levels[depth] = level;
+		}
+		
+		if(level.world == null) {
+			if(level.encoded != null) {
+				// the level fits in memory, encoded
+				level.world = WorldFile.decode(level.encoded);
+				this.encoded.remove(depth);
+				this.memoryUsed -= level.encoded.length;
+				level.encoded = null;
+			} else if(level.file != null) {
+				// the level was spilled to disk
+				level.world = WorldFile.read(level.file);
+				Files.deleteIfExists(level.file);
+				level.file = null;
+				this.spilledLevels--;
+			} else {
+				// the level has never been visited, or was dropped without changes
+				generate(level);
+			}
+			
+			level.modificationCount = level.world.getModificationCount();
+			level.size = residentSize(level.world);
+			this.memoryUsed += level.size;
+			this.resident.put(depth, level);
+		} else {
+			// mark the level as the most recently used
+			this.resident.get(depth);
+		}
+		
+		evict(level);
+		return level.world;
+	}
+	
+	/**
+	 * Get the stairs up of a level, which lead to the stairs down of the
+	 * level above. The level is generated if it hasn't been visited.
+	 * 
+	 * @param depth the depth of the level, 0 being the top
+	 * 
+	 * @return the {@link Stairs}, or {@code null} if the level is the top or
+	 * has no room for the stairs
+	 * 
+	 * @throws IOException if the level had been spilled and couldn't be read
+	 */
+	public synchronized Stairs getStairsUp(int depth) throws IOException {
+		checkDepth(depth);
+		if(this.levels[depth] == null) {
+			getLevel(depth);
+		}
+		return this.levels[depth].stairsUp;
+	}
+	
+	/**
+	 * Get the stairs down of a level, which lead to the stairs up of the
+	 * level below. The level is generated if it hasn't been visited.
+	 * 
+	 * @param depth the depth of the level, 0 being the top
+	 * 
+	 * @return the {@link Stairs}, or {@code null} if the level is the bottom
+	 * or has no room for the stairs
+	 * 
+	 * @throws IOException if the level had been spilled and couldn't be read
+	 */
+	public synchronized Stairs getStairsDown(int depth) throws IOException {
+		checkDepth(depth);
+		if(this.levels[depth] == null) {
+			getLevel(depth);
+		}
+		return this.levels[depth].stairsDown;
+	}
+	
+	/**
+	 * Adds a listener to be told when a level is evicted.
+	 * 
+	 * @param listener the {@link EvictionListener} to add
+	 */
+	public void addEvictionListener(EvictionListener listener) {
+		this.evictionListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener added by {@link #addEvictionListener(EvictionListener)}.
+	 * 
+	 * @param listener the {@link EvictionListener} to remove
+	 */
+	public void removeEvictionListener(EvictionListener listener) {
+		this.evictionListeners.remove(listener);
+	}
+	
+	/**
+	 * Get the seed the levels are derived from
+	 * 
+	 * @return
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+	
+	/**
+	 * Get the number of levels
+	 * 
+	 * @return
+	 */
+	public int getDepth() {
+		return this.levels.length;
+	}
+	
+	/**
+	 * Get the number of bytes the levels in memory take, an estimate for the
+	 * levels held as worlds. It can be over the budget if the level asked for
+	 * last is too large for it, or the changed levels have nowhere to spill to.
+	 * 
+	 * @return the number of bytes
+	 */
+	public synchronized long getMemoryUsed() {
+		return this.memoryUsed;
+	}
+	
+	/**
+	 * Get the number of levels held as worlds
+	 * 
+	 * @return
+	 */
+	public synchronized int getResidentLevels() {
+		return this.resident.size();
+	}
+	
+	/**
+	 * Get the number of levels held encoded in memory
+	 * 
+	 * @return
+	 */
+	public synchronized int getEncodedLevels() {
+		return this.encoded.size();
+	}
+	
+	/**
+	 * Get the number of levels written to the spill directory
+	 * 
+	 * @return
+	 */
+	public synchronized int getSpilledLevels() {
+		return this.spilledLevels;
+	}
+	
+	/**
+	 * Deletes the levels written to the spill directory, and lets go of the
+	 * levels in memory. The dungeon mustn't be used afterwards.
+	 * 
+	 * @throws IOException if a spilled level couldn't be deleted
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		IOException failure = null;
+		for(Level level : this.levels) {
+			if(level != null && level.file != null) {
+				try {
+					Files.deleteIfExists(level.file);
+				} catch(IOException e) {
+					failure = e;
+				}
+				level.file = null;
+			}
+		}
+		
+		this.resident.clear();
+		this.encoded.clear();
+		this.memoryUsed = 0;
+		this.spilledLevels = 0;
+		if(failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Generates a level and places its stairs, the stairs up first so the
+	 * stairs down can be kept out of the same room.
+	 * 
+	 * @param level the {@link Level} to generate
+	 */
+	private void generate(Level level) {
+		World world = this.config.generate(WorldBuilder.deriveSeed(this.seed, level.depth));
+		level.world = world;
+		
+		int upRoom = -1;
+		if(level.depth > 0) {
+			upRoom = nearestRoom(world, level.depth - 1, -1);
+			if(upRoom != -1) {
+				level.stairsUp = placeStairs(world, upRoom, Tile.StairsUp, level.depth, level.depth - 1, null);
+			}
+		}
+		
+		if(level.depth < this.levels.length - 1) {
+			int downRoom = nearestRoom(world, level.depth, upRoom);
+			if(downRoom != -1) {
+				level.stairsDown = placeStairs(world, downRoom, Tile.StairsDown, level.depth, level.depth + 1, level.stairsUp);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the room of a level whose center is nearest the point the stairs
+	 * between two levels are placed by.
+	 * 
+	 * @param world the {@link World} of the level
+	 * @param upperDepth the depth of the upper of the two levels the stairs join
+	 * @param avoid the id of a room to only use if it's the only room, -1 for none
+	 * 
+	 * @return the id of the nearest room, or -1 if the level has no rooms
+	 */
+	private int nearestRoom(World world, int upperDepth, int avoid) {
+		// the point comes from a stream keyed apart from the levels' seeds,
+		// so both levels find the same point
+		SplittableRandom random = new SplittableRandom(WorldBuilder.deriveSeed(this.seed, ~(long)upperDepth));
+		int targetX = random.nextInt(world.getWidth());
+		int targetY = random.nextInt(world.getHeight());
+		
+		RoomStore rooms = world.getRoomStore();
+		int nearest = -1;
+		long nearestDistance = Long.MAX_VALUE;
+		for(int room = 0; room < rooms.size(); room++) {
+			if(room == avoid) {
+				continue;
+			}
+			
+			long dx = rooms.getCenterX(room) - targetX;
+			long dy = rooms.getCenterY(room) - targetY;
+			long distance = dx * dx + dy * dy;
+			if(distance < nearestDistance) {
+				nearest = room;
+				nearestDistance = distance;
+			}
+		}
+		
+		return nearest == -1 ? avoid : nearest;
+	}
+	
+	/**
+	 * Places stairs in the middle of a room, or in its corner if the
+	 * middle is taken by the other stairs.
+	 * 
+	 * @param world the {@link World} of the level
+	 * @param room the id of the room to place the stairs in
+	 * @param tile the {@link Tile} of the stairs
+	 * @param depth the depth of the level
+	 * @param leadsTo the depth of the level the stairs lead to
+	 * @param other the other {@link Stairs} of the level, can be {@code null}
+	 * 
+	 * @return the {@link Stairs}, or {@code null} if the room only has space for the other stairs
+	 */
+	private static Stairs placeStairs(World world, int room, Tile tile, int depth, int leadsTo, Stairs other) {
+		RoomStore rooms = world.getRoomStore();
+		int x = rooms.getCenterX(room);
+		int y = rooms.getCenterY(room);
+		if(other != null && other.x == x && other.y == y) {
+			if(rooms.getWidth(room) == 1 && rooms.getHeight(room) == 1) {
+				return null;
+			}
+			x = rooms.getX(room);
+			y = rooms.getY(room);
+		}
+		
+		world.insertTile(x, y, tile);
+		return new Stairs(x, y, depth, leadsTo);
+	}
+	
+	/**
+	 * Evicts the least recently used levels until the levels fit the budget,
+	 * first encoding the resident levels, then dropping or spilling the
+	 * encoded levels. The world of each resident level evicted is detached
+	 * before it's encoded, and the listeners are told once the levels fit.
+	 * 
+	 * @param current the {@link Level} asked for last, which is never evicted
+	 * 
+	 * @throws IOException if a level couldn't be encoded or spilled
+	 */
+	private void evict(Level current) throws IOException {
+		List<Level> evicted = null;
+		List<World> worlds = null;
+		
+		Iterator<Level> residents = this.resident.values().iterator();
+		while(this.memoryUsed > this.memoryBudget && residents.hasNext()) {
+			Level level = residents.next();
+			if(level == current) {
+				continue;
+			}
+			
+			// nothing can change the world once it's detached, so the
+			// encoding has every change made through it
+			level.world.detach();
+			
+			// once a level has been changed it can't be generated again
+			level.changed |= level.world.getModificationCount() != level.modificationCount;
+			level.encoded = WorldFile.encode(level.world);
+			if(evicted == null) {
+				evicted = new ArrayList<Level>();
+				worlds = new ArrayList<World>();
+			}
+			evicted.add(level);
+			worlds.add(level.world);
+			level.world = null;
+			residents.remove();
+			this.memoryUsed += level.encoded.length - level.size;
+			this.encoded.put(level.depth, level);
+		}
+		
+		// the levels already evicted are reported even if a spill fails
+		try {
+			Iterator<Level> encodings = this.encoded.values().iterator();
+			while(this.memoryUsed > this.memoryBudget && encodings.hasNext()) {
+				Level level = encodings.next();
+				if(level.changed) {
+					if(this.spillDirectory == null) {
+						continue;
+					}
+					
+					// the encoding is already a world file, so it's written as is,
+					// and the level only refers to the file once it's all there
+					Path file = Files.createTempFile(this.spillDirectory, "level-" + level.depth + "-", ".world");
+					try {
+						Files.write(file, level.encoded);
+					} catch(IOException e) {
+						try {
+							Files.deleteIfExists(file);
+						} catch(IOException suppressed) {
+							e.addSuppressed(suppressed);
+						}
+						throw e;
+					}
+					level.file = file;
+					this.spilledLevels++;
+				}
+				
+				this.memoryUsed -= level.encoded.length;
+				level.encoded = null;
+				encodings.remove();
+			}
+		} finally {
+			if(evicted != null) {
+				for(int i = 0; i < evicted.size(); i++) {
+					for(EvictionListener listener : this.evictionListeners) {
+						listener.levelEvicted(evicted.get(i).depth, worlds.get(i));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ensures a depth is one of the dungeon's levels.
+	 * 
+	 * @param depth the depth
+	 * 
+	 * @throws IllegalArgumentException if the depth is outside of the dungeon
+	 */
+	private void checkDepth(int depth) {
+		if(depth < 0 || depth >= this.levels.length) {
+			throw new IllegalArgumentException("The depth must be between 0 and " + (this.levels.length - 1) + ", not " + depth);
+		}
+	}
+	
+	/**
+	 * Estimates the number of bytes a world takes, a byte per tile, two bits
+	 * per tile for the floor bits, and the rooms.
+	 * 
+	 * @param world the {@link World}
+	 * 
+	 * @return the number of bytes
+	 */
+	private static long residentSize(World world) {
+		long tiles = (long)world.getWidth() * world.getHeight();
+		return tiles + tiles / 4 + 48L * world.getRooms().size();
+	}
+	
+	/**
+	 * A level of the dungeon, in whichever form it's held.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private static class Level {
+		
+		/** the depth of the level */
+		private int depth = 0;
+		/** the world of the level, {@code null} unless it's resident */
+		private World world = null;
+		/** the encoded world, {@code null} unless it's held encoded */
+		private byte[] encoded = null;
+		/** the file the world was spilled to, {@code null} unless it's spilled */
+		private Path file = null;
+		/** the modification count of the world when it became resident */
+		private long modificationCount = 0;
+		/** the estimated number of bytes the world takes while it's resident */
+		private long size = 0;
+		/** whether the level has been changed since it was generated */
+		private boolean changed = false;
+		/** the stairs up, {@code null} if there are none */
+		private Stairs stairsUp = null;
+		/** the stairs down, {@code null} if there are none */
+		private Stairs stairsDown = null;
+		
+		/**
+		 * Create a level that hasn't been generated.
+		 * 
+		 * @param depth the depth of the level
+		 */
+		Level(int depth) {
+			this.depth = depth;
+		}
+	}
+	
+	/**
+	 * Listens for the levels of a dungeon being evicted, so a world kept
+	 * from {@link Dungeon#getLevel(int)} can be let go of.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	public interface EvictionListener {
+		
+		/**
+		 * Called after a level has been evicted, while the dungeon is locked,
+		 * so it mustn't ask the dungeon for a level.
+		 * 
+		 * @param depth the depth of the level
+		 * @param world the detached {@link World} the level had, which can
+		 * still be read but no longer changed
+		 */
+		void levelEvicted(int depth, World world);
+	}
+	
+	/**
+	 * Stairs between two levels of a dungeon.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	public static class Stairs {
+		
+		/** the x coordinate of the stairs */
+		private int x = 0;
+		/** the y coordinate of the stairs */
+		private int y = 0;
+		/** the depth of the level the stairs are on */
+		private int depth = 0;
+		/** the depth of the level the stairs lead to */
+		private int leadsTo = 0;
+		
+		/**
+		 * Create stairs.
+		 * 
+		 * @param x the x coordinate of the stairs
+		 * @param y the y coordinate of the stairs
+		 * @param depth the depth of the level the stairs are on
+		 * @param leadsTo the depth of the level the stairs lead to
+		 */
+		Stairs(int x, int y, int depth, int leadsTo) {
+			this.x = x;
+			this.y = y;
+			this.depth = depth;
+			this.leadsTo = leadsTo;
+		}
+		
+		/**
+		 * Get the x coordinate of the stairs
+		 * 
+		 * @return
+		 */
+		public int getX() {
+			return this.x;
+		}
+		
+		/**
+		 * Get the y coordinate of the stairs
+		 * 
+		 * @return
+		 */
+		public int getY() {
+			return this.y;
+		}
+		
+		/**
+		 * Get the depth of the level the stairs are on
+		 * 
+		 * @return
+		 */
+		public int getDepth() {
+			return this.depth;
+		}
+		
+		/**
+		 * Get the depth of the level the stairs lead to
+		 * 
+		 * @return
+		 */
+		public int getLeadsTo() {
+			return this.leadsTo;
+		}
+		
+		@Override
+		public String toString() {
+			return "Stairs[x=" + this.x + ", y=" + this.y + ", depth=" + this.depth + ", leadsTo=" + this.leadsTo + "]";
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package ealanhill;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ealanhill.events.GenerationEvent;
+import ealanhill.events.GenerationSubscriber;
+import ealanhill.events.GenerationSubscription;
+import ealanhill.objects.World;
+
+/**
+ * Generates a world in the background, sending the events of the generation
+ * to a {@link GenerationSubscriber} as they happen, so the world can be shown
+ * or processed while it's being built. Created by {@link WorldBuilder#stream()}.
+ * 
+ * The world is generated on one thread and the events are sent on another,
+ * through a bounded buffer. The generation runs ahead of the subscriber until
+ * the buffer is full, then waits until the subscriber requests more events,
+ * so a slow subscriber holds the generation back rather than the events
+ * piling up.
+ * 
+ * A publisher only has one subscriber, as there's only one generation.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class GenerationPublisher {
+	
+	/** the default number of events the generation can get ahead of the subscriber */
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+	
+	/** the builder generating the world */
+	private WorldBuilder builder = null;
+	/** runs the generation and the sending of the events */
+	private Executor executor = null;
+	/** the number of events the generation can get ahead of the subscriber */
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	/** whether the publisher has been subscribed to */
+	private AtomicBoolean subscribed = new AtomicBoolean();
+	/** the subscription of the subscriber, {@code null} until subscribed */
+	private volatile Subscription subscription = null;
+	
+	/**
+	 * Create a publisher for a builder.
+	 * 
+	 * @param builder the {@link WorldBuilder} to generate the world with
+	 * @param executor the {@link Executor} to run the generation and the sending
+	 * of the events on, each runs until the generation is done so they each need
+	 * a thread of their own
+	 * @param bufferSize the number of events the generation can get ahead of the subscriber
+	 */
+	GenerationPublisher(WorldBuilder builder, Executor executor, int bufferSize) {
+		this.builder = builder;
+		this.executor = executor;
+		this.bufferSize = Math.max(1, bufferSize);
+	}
+	
+	/**
+	 * Subscribes to the events of the generation and starts generating the
+	 * world. The subscriber is told it's subscribed before this returns.
+	 * 
+	 * @param subscriber the {@link GenerationSubscriber} to send the events to
+	 * 
+	 * @throws IllegalStateException if the publisher has already been subscribed to
+	 */
+	public void subscribe(GenerationSubscriber subscriber) {
+		if(!this.subscribed.compareAndSet(false, true)) {
+			throw new IllegalStateException("A world can only be streamed to one subscriber");
+		}
+		
+		final Subscription subscription = new Subscription(subscriber);
+		this.subscription = subscription;
+		subscriber.onSubscribe(subscription);
+		
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				subscription.deliver();
+			}
+		});
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				generate(subscription);
+			}
+		});
+	}
+	
+	/**
+	 * Generates the world, then tells the subscription the generation is done.
+	 * 
+	 * @param subscription the {@link Subscription} to send the events to
+	 */
+	private void generate(Subscription subscription) {
+		Throwable error = null;
+		try {
+			this.builder.create();
+		} catch(CancellationException e) {
+			// the subscriber doesn't want the rest of the world
+		} catch(Throwable e) {
+			error = e;
+		} finally {
+			this.builder.setPublisher(null);
+		}
+		subscription.finish(error);
+	}
+	
+	/**
+	 * Adds an event to the buffer, waiting for the subscriber to catch up if
+	 * the buffer is full. Called by the builder as the world is generated.
+	 * 
+	 * @param type what happened
+	 * @param world the {@link World} being generated
+	 * @param x the left most x coordinate of the tiles changed
+	 * @param y the top most y coordinate of the tiles changed
+	 * @param width how wide the tiles changed are
+	 * @param height how high the tiles changed are
+	 * 
+	 * @throws CancellationException if the subscription has been cancelled, to
+	 * stop the generation
+	 */
+	void emit(GenerationEvent.Type type, World world, int x, int y, int width, int height) {
+		Subscription subscription = this.subscription;
+		if(subscription != null) {
+			subscription.offer(new GenerationEvent(type, world, x, y, width, height));
+		}
+	}
+	
+	/**
+	 * The subscription of the subscriber, holding the events the generation
+	 * has got ahead by. Everything is guarded by the subscription's monitor,
+	 * which the generation and the sending of the events wait on.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private class Subscription implements GenerationSubscription {
+		
+		/** the subscriber to send the events to */
+		private GenerationSubscriber subscriber = null;
+		/** the events generated but not yet sent */
+		private ArrayDeque<GenerationEvent> buffer = new ArrayDeque<GenerationEvent>();
+		/** the number of events requested but not yet sent */
+		private long demand = 0;
+		/** whether the subscription has been cancelled */
+		private boolean cancelled = false;
+		/** whether the generation is done */
+		private boolean finished = false;
+		/** why the generation failed, {@code null} if it didn't */
+		private Throwable error = null;
+		
+		/**
+		 * Create a subscription for a subscriber.
+		 * 
+		 * @param subscriber the {@link GenerationSubscriber} to send the events to
+		 */
+		Subscription(GenerationSubscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+		
+		@Override
+		public synchronized void request(long count) {
+			if(this.cancelled || this.finished && this.buffer.isEmpty()) {
+				return;
+			}
+			
+			if(count <= 0) {
+				// a bad request stops the generation and is reported to the subscriber
+				this.error = new IllegalArgumentException("The number of events requested must be positive, not " + count);
+				this.finished = true;
+				this.buffer.clear();
+			} else {
+				// don't overflow, Long.MAX_VALUE means every event anyway
+				this.demand = this.demand + count < 0 ? Long.MAX_VALUE : this.demand + count;
+			}
+			notifyAll();
+		}
+		
+		@Override
+		public synchronized void cancel() {
+			this.cancelled = true;
+			this.buffer.clear();
+			notifyAll();
+		}
+		
+		/**
+		 * Adds an event to the buffer, waiting while the buffer is full.
+		 * 
+		 * @param event the {@link GenerationEvent} to add
+		 * 
+		 * @throws CancellationException if the subscription has been cancelled
+		 */
+		synchronized void offer(GenerationEvent event) {
+			while(!this.cancelled && !this.finished && this.buffer.size() >= GenerationPublisher.this.bufferSize) {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					this.cancelled = true;
+				}
+			}
+			
+			// a bad request finishes the subscription early, which stops the generation too
+			if(this.cancelled || this.finished) {
+				throw new CancellationException("The subscriber stopped listening to the generation");
+			}
+			
+			this.buffer.add(event);
+			notifyAll();
+		}
+		
+		/**
+		 * Records that the generation is done.
+		 * 
+		 * @param error why the generation failed, {@code null} if it didn't
+		 */
+		synchronized void finish(Throwable error) {
+			if(!this.finished) {
+				this.error = error;
+				this.finished = true;
+			}
+			notifyAll();
+		}
+		
+		/**
+		 * Sends the events to the subscriber as they're requested, then tells
+		 * the subscriber the generation is done, unless the subscription is
+		 * cancelled first.
+		 */
+		void deliver() {
+			while(true) {
+				GenerationEvent event = null;
+				Throwable failure = null;
+				synchronized(this) {
+					// wait for an event that's been requested, or for the generation to be done
+					while(!this.cancelled && (this.buffer.isEmpty() ? !this.finished : this.demand == 0)) {
+						try {
+							wait();
+						} catch(InterruptedException e) {
+							Thread.currentThread().interrupt();
+							this.cancelled = true;
+						}
+					}
+					
+					if(this.cancelled) {
+						return;
+					}
+					
+					if(this.buffer.isEmpty()) {
+						failure = this.error;
+					} else {
+						event = this.buffer.poll();
+						if(this.demand != Long.MAX_VALUE) {
+							this.demand--;
+						}
+						// there's room for the generation to carry on
+						notifyAll();
+					}
+				}
+				
+				// call the subscriber outside of the lock, so it can request more
+				if(event != null) {
+					try {
+						this.subscriber.onNext(event);
+					} catch(RuntimeException e) {
+						// a subscriber that fails can't take any more events
+						cancel();
+						this.subscriber.onError(e);
+						return;
+					}
+				} else if(failure != null) {
+					this.subscriber.onError(failure);
+					return;
+				} else {
+					this.subscriber.onComplete();
+					return;
+				}
+			}
+		}
+	}
+}
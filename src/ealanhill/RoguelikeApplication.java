@@ -6,10 +6,16 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 import asciiPanel.AsciiPanel;
+import ealanhill.events.GenerationEvent;
+import ealanhill.events.GenerationSubscriber;
+import ealanhill.events.GenerationSubscription;
+import ealanhill.objects.FieldOfView;
 import ealanhill.objects.World;
 import ealanhill.screens.Screen;
 
@@ -26,10 +32,12 @@ public class RoguelikeApplication extends JFrame implements KeyListener {
 	private static final long serialVersionUID = 4329591566564043380L;
 	/** the panel to display the ascii art of the maze */
 	private AsciiPanel terminal = new AsciiPanel(100, 100);
-	/** the screen that holds and reacts to user interaction */
-	private Screen screen = null;
+	/** the screen that holds and reacts to user interaction, built on the main thread and drawn on the event thread */
+	private volatile Screen screen = null;
 	/** the properties we have read from the properties file for configuring the world */
 	private Properties properties = new Properties();
+	/** whether the screen is waiting to be drawn on the event thread */
+	private AtomicBoolean repaintPending = new AtomicBoolean();
 	
 	/**
 	 * Default constructor to set up the display
@@ -70,23 +78,95 @@ public class RoguelikeApplication extends JFrame implements KeyListener {
 		Integer worldHeight = properties.getProperty("worldHeight") == null ?
 				null : new Integer(properties.getProperty("worldHeight"));
 		
+		// attempt to get the desired seed, a blank seed means pick one at random
+		Long seed = getLongProperty("seed");
+		
+		// attempt to get the desired chunk size, setting one builds a chunked world
+		Integer chunkSize = getIntegerProperty("chunkSize");
+		
+		// attempt to get the desired number of chunks to hold at a time
+		Integer maxChunks = getIntegerProperty("maxChunks");
+		
+		// attempt to get the desired number of changed chunks to hold at a time
+		Integer maxChangedChunks = getIntegerProperty("maxChangedChunks");
+		
+		// attempt to get the desired number of threads, setting one builds the world in parallel
+		Integer parallelism = getIntegerProperty("parallelism");
+		
+		// attempt to get the desired region size when building in parallel
+		Integer regionSize = getIntegerProperty("regionSize");
+		
+		// attempt to get whether rooms should only be tried in the free space
+		Boolean freeSpaceSampling = getBooleanProperty("freeSpaceSampling");
+		
+		// attempt to get the desired fraction of the world to cover with rooms
+		Double targetDensity = getDoubleProperty("targetDensity");
+		
+		// attempt to get whether the corridors should be planned once the rooms are placed
+		Boolean plannedCorridors = getBooleanProperty("plannedCorridors");
+		
+		// attempt to get the desired chance of extra corridors between neighbouring rooms
+		Double extraCorridors = getDoubleProperty("extraCorridors");
+		
+		// attempt to get whether the world should keep the walls around each tile
+		Boolean neighbourMasks = getBooleanProperty("neighbourMasks");
+		
 		// build our world with the desired settings
-		World world = builder.setMaxRoomSize(maxRoomSize)
-							 .setRoomTries(roomTries)
-							 .setWorldWidth(worldWidth)
-							 .setWorldHeight(worldHeight)
-							 .create();
+		builder.setMaxRoomSize(maxRoomSize)
+			   .setRoomTries(roomTries)
+			   .setWorldWidth(worldWidth)
+			   .setWorldHeight(worldHeight)
+			   .setSeed(seed)
+			   .setChunkSize(chunkSize)
+			   .setMaxChunks(maxChunks)
+			   .setMaxChangedChunks(maxChangedChunks)
+			   .setParallelism(parallelism)
+			   .setRegionSize(regionSize)
+			   .setFreeSpaceSampling(freeSpaceSampling)
+			   .setTargetDensity(targetDensity)
+			   .setPlannedCorridors(plannedCorridors)
+			   .setExtraCorridors(extraCorridors)
+			   .setNeighbourMasks(neighbourMasks);
+		
+		// attempt to get whether to show the world as it's generated
+		Boolean streamGeneration = getBooleanProperty("streamGeneration");
+		
+		World world = null;
+		if(chunkSize != null) {
+			world = builder.createChunked();
+		} else if(parallelism != null) {
+			world = builder.createParallel();
+		} else if(streamGeneration != null && streamGeneration) {
+			// the screen is shown as soon as the world is filled
+			builder.stream().subscribe(new ScreenFeed());
+			return;
+		} else {
+			world = builder.create();
+		}
 		
 		// create a new screen with our terminal and the world
 		screen = new Screen(terminal, world);
+		addFieldOfView(screen, world);
 		
 		repaint();
 	}
 	
 	@Override
 	public void repaint() {
-		terminal.clear();
-		screen.display();
+		// the screen is only drawn on the event thread, so it's never
+		// drawn by two threads at once
+		if(!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::repaint);
+			return;
+		}
+		
+		// the screen only writes the cells that have changed, so
+		// the terminal isn't cleared first; there's no screen until
+		// the world has been built
+		Screen screen = this.screen;
+		if(screen != null) {
+			screen.display();
+		}
 		super.repaint();
 	}
 
@@ -95,8 +175,11 @@ public class RoguelikeApplication extends JFrame implements KeyListener {
 
 	@Override
 	public void keyPressed(KeyEvent keyEvent) {
-		screen = this.screen.respondToUserInput(keyEvent);
-		repaint();
+		Screen screen = this.screen;
+		if(screen != null) {
+			this.screen = screen.respondToUserInput(keyEvent);
+			repaint();
+		}
 	}
 
 	@Override
@@ -113,6 +196,70 @@ public class RoguelikeApplication extends JFrame implements KeyListener {
 		application.buildWorld();
 	}
 	
+	/**
+	 * Only shows what can be seen from the center of the screen, if a view
+	 * radius has been set.
+	 * 
+	 * @param screen the {@link Screen} showing the world
+	 * @param world the {@link World} being shown
+	 */
+	private void addFieldOfView(Screen screen, World world) {
+		// attempt to get the desired view radius, setting one only shows what
+		// can be seen from the center of the screen
+		Integer viewRadius = getIntegerProperty("viewRadius");
+		if(viewRadius != null) {
+			screen.setFieldOfView(new FieldOfView(world).setRadius(viewRadius));
+		}
+	}
+	
+	/**
+	 * Get a property as an {@link Integer}.
+	 * 
+	 * @param key the key of the property
+	 * 
+	 * @return the value of the property, or {@code null} if it's missing or blank
+	 */
+	private Integer getIntegerProperty(String key) {
+		String value = properties.getProperty(key);
+		return value == null || value.trim().isEmpty() ? null : Integer.valueOf(value.trim());
+	}
+	
+	/**
+	 * Get a property as a {@link Long}.
+	 * 
+	 * @param key the key of the property
+	 * 
+	 * @return the value of the property, or {@code null} if it's missing or blank
+	 */
+	private Long getLongProperty(String key) {
+		String value = properties.getProperty(key);
+		return value == null || value.trim().isEmpty() ? null : Long.valueOf(value.trim());
+	}
+	
+	/**
+	 * Get a property as a {@link Boolean}.
+	 * 
+	 * @param key the key of the property
+	 * 
+	 * @return the value of the property, or {@code null} if it's missing or blank
+	 */
+	private Boolean getBooleanProperty(String key) {
+		String value = properties.getProperty(key);
+		return value == null || value.trim().isEmpty() ? null : Boolean.valueOf(value.trim());
+	}
+	
+	/**
+	 * Get a property as a {@link Double}.
+	 * 
+	 * @param key the key of the property
+	 * 
+	 * @return the value of the property, or {@code null} if it's missing or blank
+	 */
+	private Double getDoubleProperty(String key) {
+		String value = properties.getProperty(key);
+		return value == null || value.trim().isEmpty() ? null : Double.valueOf(value.trim());
+	}
+	
 	/**
 	 * Reads the "config.properties" file if it exists.
 	 */
@@ -130,4 +277,74 @@ public class RoguelikeApplication extends JFrame implements KeyListener {
 			// nothing to do if we can't find the properties file, we can just use the defaults
 		}
 	}
+	
+	/**
+	 * Shows the world on the screen while it's being generated, drawing it
+	 * again as the events come in. The screen is only drawn once for any
+	 * number of events that arrive while it's waiting to be drawn.
+	 * 
+	 * @author Alan Hill
+	 *
+	 */
+	private class ScreenFeed implements GenerationSubscriber {
+		
+		/** the number of events to have requested at a time */
+		private static final int WINDOW = 64;
+		
+		/** the subscription to request the events from */
+		private GenerationSubscription subscription = null;
+		/** the world being generated, {@code null} until it's been filled */
+		private World world = null;
+		
+		@Override
+		public void onSubscribe(GenerationSubscription subscription) {
+			this.subscription = subscription;
+			subscription.request(WINDOW);
+		}
+		
+		@Override
+		public void onNext(GenerationEvent event) {
+			if(event.getType() == GenerationEvent.Type.STARTED) {
+				// the world is all walls, show it straight away
+				this.world = event.getWorld();
+				screen = new Screen(terminal, this.world);
+			}
+			
+			// only ask for a draw if one isn't already waiting
+			if(repaintPending.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						repaintPending.set(false);
+						repaint();
+					}
+				});
+			}
+			
+			this.subscription.request(1);
+		}
+		
+		@Override
+		public void onError(Throwable error) {
+			System.err.println("Could not generate the world");
+			error.printStackTrace();
+		}
+		
+		@Override
+		public void onComplete() {
+			// the field of view isn't kept up to date from the generating
+			// thread, so it's only added once the world is done
+			final World world = this.world;
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					Screen screen = RoguelikeApplication.this.screen;
+					if(screen != null && world != null) {
+						addFieldOfView(screen, world);
+					}
+					repaint();
+				}
+			});
+		}
+	}
 }
@@ -1,9 +1,22 @@
 package ealanhill;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import ealanhill.events.GenerationEvent;
+import ealanhill.metrics.GenerationMetrics;
+import ealanhill.metrics.GenerationStats;
+import ealanhill.objects.ChunkedWorld;
+import ealanhill.objects.GridRoomIndex;
+import ealanhill.objects.NeighbourMask;
 import ealanhill.objects.Room;
+import ealanhill.objects.RoomGraph;
+import ealanhill.objects.RoomStore;
 import ealanhill.objects.Tile;
 import ealanhill.objects.World;
 
@@ -23,8 +36,49 @@ public class WorldBuilder {
 	private int roomTries = -1;
 	/** the maximum size of a room (either the height or width) */
 	private int maxRoomSize = -1;
+	/** the seed for the random number generator, {@code null} to pick one at random */
+	private Long seed = null;
+	/** the random number generator every random value is drawn from */
+	private SplittableRandom random = null;
+	/** the width and height of a chunk, when building a chunked world */
+	private int chunkSize = -1;
+	/** the number of unchanged chunks to hold at a time, when building a chunked world */
+	private int maxChunks = -1;
+	/** the number of changed chunks to hold at a time, when building a chunked world */
+	private int maxChangedChunks = -1;
+	/** the number of threads to generate with, when building in parallel */
+	private int parallelism = -1;
+	/** the width and height of a region, when building in parallel */
+	private int regionSize = -1;
+	/** whether to only try rooms that fit in the free space of the world */
+	private boolean freeSpaceSampling = false;
+	/** the fraction of the world to cover with rooms before stopping, -1 to use all the room tries */
+	private double targetDensity = -1;
+	/** the floor tiles of the rows a room is being fitted into, used when sampling the free space */
+	private long[] band = null;
+	/** whether to plan the corridors once every room is placed, rather than as each room is placed */
+	private boolean plannedCorridors = false;
+	/** the chance of connecting neighbouring rooms the planned corridors don't already join */
+	private double extraCorridors = 0;
+	/** the corridors waiting to be carved, {@code null} if corridors are carved straight away */
+	private List<int[]> corridorSegments = null;
+	/** whether to record the counters and timers of the generation */
+	private boolean metricsEnabled = true;
+	/** whether the world built keeps the neighbour mask of every tile */
+	private boolean neighbourMasks = false;
+	/** the counters and timers of the last generation, {@code null} if they weren't recorded */
+	private GenerationStats stats = null;
 	/** the world */
 	private World world = null;
+	/** where to send the events of the generation, {@code null} if it isn't being streamed */
+	private volatile GenerationPublisher publisher = null;
+	
+	/** the width and height of a chunked world that hasn't been given a size, effectively unbounded */
+	public static final int UNBOUNDED = 1 << 30;
+	/** the key for the stream deciding where a chunk's corridor crosses its east border */
+	private static final long EAST_BORDER = 1;
+	/** the key for the stream deciding where a chunk's corridor crosses its south border */
+	private static final long SOUTH_BORDER = 2;
 	
 	/**
 	 * Default constructor to set up the class
@@ -39,12 +93,8 @@ public class WorldBuilder {
 	 * @return the {@link WorldBuilder}
 	 */
 	public WorldBuilder fill() {
-		// loop through the x and y coordinates to insert the walls
-		for(int x = 0; x < this.worldWidth; x++) {
-			for(int y = 0; y < this.worldHeight; y++) {
-				this.world.insertTile(x, y, Tile.Wall);
-			}
-		}
+		// fill the whole world with walls in one go
+		this.world.clear(Tile.Wall);
 		
 		return this;
 	}
@@ -127,6 +177,297 @@ public class WorldBuilder {
 		return this;
 	}
 	
+	/**
+	 * Sets the width and height of a chunk, used when building a chunked world.
+	 * A chunk must be larger than the largest room, with a tile to spare
+	 * on each side for the chunk's border.
+	 * 
+	 * @param chunkSize the width and height of a chunk, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setChunkSize(Integer chunkSize) {
+		// we don't want to set the chunkSize to null, as that would
+		// cause a NullPointerException
+		if(chunkSize != null) {
+			// grab the int value
+			this.chunkSize = chunkSize;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the number of unchanged chunks to hold at a time, used when
+	 * building a chunked world.
+	 * 
+	 * @param maxChunks the number of chunks, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setMaxChunks(Integer maxChunks) {
+		// we don't want to set the maxChunks to null, as that would
+		// cause a NullPointerException
+		if(maxChunks != null) {
+			// grab the int value
+			this.maxChunks = maxChunks;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the number of changed chunks to hold at a time, used when building
+	 * a chunked world. The changed chunks beyond it are spilled to disk.
+	 * 
+	 * @param maxChangedChunks the number of chunks, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setMaxChangedChunks(Integer maxChangedChunks) {
+		// we don't want to set the maxChangedChunks to null, as that would
+		// cause a NullPointerException
+		if(maxChangedChunks != null) {
+			// grab the int value
+			this.maxChangedChunks = maxChangedChunks;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads to generate with, used when building
+	 * the world in parallel.
+	 * 
+	 * @param parallelism the number of threads, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setParallelism(Integer parallelism) {
+		// we don't want to set the parallelism to null, as that would
+		// cause a NullPointerException
+		if(parallelism != null) {
+			// grab the int value
+			this.parallelism = parallelism;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the width and height of the regions the world is split into,
+	 * used when building the world in parallel. A region must be larger
+	 * than the largest room.
+	 * 
+	 * @param regionSize the width and height of a region, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setRegionSize(Integer regionSize) {
+		// we don't want to set the regionSize to null, as that would
+		// cause a NullPointerException
+		if(regionSize != null) {
+			// grab the int value
+			this.regionSize = regionSize;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets whether rooms are only tried where they fit in the free space of the
+	 * world, rather than anywhere at random. Each try picks a random size and row,
+	 * then picks at random from the places along that row the room would fit, so
+	 * almost every try places a room.
+	 * 
+	 * @param freeSpaceSampling whether to sample the free space, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setFreeSpaceSampling(Boolean freeSpaceSampling) {
+		// we don't want to set the freeSpaceSampling to null, as that would
+		// cause a NullPointerException
+		if(freeSpaceSampling != null) {
+			// grab the boolean value
+			this.freeSpaceSampling = freeSpaceSampling;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the fraction of the world to cover with rooms, once the rooms cover
+	 * that much of the world no more rooms are tried.
+	 * 
+	 * @param targetDensity the fraction of the world, between 0 and 1, can be
+	 * {@code null} to use all the room tries
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setTargetDensity(Double targetDensity) {
+		// we don't want to set the targetDensity to null, as that would
+		// cause a NullPointerException
+		if(targetDensity != null) {
+			// grab the double value
+			this.targetDensity = targetDensity;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets whether the corridors are planned once every room has been placed.
+	 * Rather than joining each room to the room placed before it, the rooms
+	 * are joined along the minimum spanning tree of a graph of each room's
+	 * nearest neighbours, and the corridors are carved together at the end.
+	 * 
+	 * @param plannedCorridors whether to plan the corridors, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setPlannedCorridors(Boolean plannedCorridors) {
+		// we don't want to set the plannedCorridors to null, as that would
+		// cause a NullPointerException
+		if(plannedCorridors != null) {
+			// grab the boolean value
+			this.plannedCorridors = plannedCorridors;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the chance of joining two neighbouring rooms the planned corridors
+	 * don't already join, which adds loops to the maze. Only used when the
+	 * corridors are planned.
+	 * 
+	 * @param extraCorridors the chance, between 0 and 1, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setExtraCorridors(Double extraCorridors) {
+		// we don't want to set the extraCorridors to null, as that would
+		// cause a NullPointerException
+		if(extraCorridors != null) {
+			// grab the double value
+			this.extraCorridors = extraCorridors;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets whether to record the counters and timers of the generation,
+	 * they're recorded unless turned off.
+	 * 
+	 * @param metricsEnabled whether to record the metrics, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setMetricsEnabled(Boolean metricsEnabled) {
+		// we don't want to set the metricsEnabled to null, as that would
+		// cause a NullPointerException
+		if(metricsEnabled != null) {
+			// grab the boolean value
+			this.metricsEnabled = metricsEnabled;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets whether the world built keeps the {@link NeighbourMask} of every
+	 * tile, so corridors, wall corners and wall glyphs can be looked up
+	 * without checking the tiles around them. The doorways are then found
+	 * from the masks. Not used by chunked worlds, or a world given to the
+	 * builder.
+	 * 
+	 * @param neighbourMasks whether to keep the neighbour masks, can be {@code null}
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setNeighbourMasks(Boolean neighbourMasks) {
+		// we don't want to set the neighbourMasks to null, as that would
+		// cause a NullPointerException
+		if(neighbourMasks != null) {
+			// grab the boolean value
+			this.neighbourMasks = neighbourMasks;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Get the counters and timers of the world that was last built. They're
+	 * also added to the totals published by {@link GenerationMetrics}. Those
+	 * of a chunked world grow as its chunks are generated.
+	 * 
+	 * @return the {@link GenerationStats}, or {@code null} if no world has been
+	 * built or the metrics are turned off
+	 */
+	public GenerationStats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * Sets the seed for the random number generator, so that the same
+	 * settings and seed always build the same world.
+	 * 
+	 * @param seed the seed, can be {@code null} to pick a seed at random
+	 * 
+	 * @return the {@link WorldBuilder}
+	 */
+	public WorldBuilder setSeed(Long seed) {
+		this.seed = seed;
+		return this;
+	}
+	
+	/**
+	 * Get the seed used to build the world, if no seed was set this
+	 * is the seed that was picked once {@link #create()} is called.
+	 * 
+	 * @return the seed, or {@code null} if one hasn't been set or picked yet
+	 */
+	public Long getSeed() {
+		return this.seed;
+	}
+	
+	/**
+	 * Creates a random number generator for an independent stream of the
+	 * builder's seed, the same seed and key always produce the same stream
+	 * regardless of the order streams are created in.
+	 * 
+	 * @param key identifies the stream, e.g. a stage or region number
+	 * 
+	 * @return a {@link SplittableRandom} for the stream
+	 * 
+	 * @throws IllegalStateException if no seed has been set or picked yet
+	 */
+	public SplittableRandom substream(long key) {
+		if(this.seed == null) {
+			throw new IllegalStateException("The seed must be set before creating a substream");
+		}
+		return new SplittableRandom(deriveSeed(this.seed, key));
+	}
+	
+	/**
+	 * Derives a new seed from a seed and a key, mixing the bits so
+	 * nearby keys produce unrelated seeds.
+	 * 
+	 * @param seed the seed to derive from
+	 * @param key the key to mix into the seed
+	 * 
+	 * @return the derived seed
+	 */
+	public static long deriveSeed(long seed, long key) {
+		// mix the key into the seed with the golden ratio, then scramble
+		// the bits using the SplitMix64 finalizer
+		long z = seed + (key + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
 	/**
 	 * Sets the {@link World} for the builder, if desired.
 	 * 
@@ -148,10 +489,18 @@ public class WorldBuilder {
 	 */
 	public WorldBuilder addRoom(Room roomToAdd) {
 		// attempt to insert the room into the world
-		if(this.world.insertRoom(roomToAdd)) {
+		boolean inserted = this.world.insertRoom(roomToAdd);
+		if(inserted) {
+			emit(GenerationEvent.Type.ROOM_PLACED, roomToAdd.x, roomToAdd.y, roomToAdd.width, roomToAdd.height);
+		}
+		if(inserted && !this.plannedCorridors) {
 			// if we successfully add the room, then we
 			// want to grow the maze from that room
+			long start = this.stats == null ? 0 : System.nanoTime();
 			growMaze(roomToAdd);
+			if(this.stats != null) {
+				this.stats.recordCorridors(System.nanoTime() - start);
+			}
 		}
 		
 		return this;
@@ -165,60 +514,576 @@ public class WorldBuilder {
 	 * <li>World Width = 80 characters</li>
 	 * <li>Maximum Room Size = 10 characters</li>
 	 * <li>Room Tries = 10 tries</li>
+	 * <li>Seed = picked at random</li>
 	 * </ul>
 	 * 
 	 * @return a {@link World} created using the provided settings
 	 * or defaults
 	 */
 	public World create() {
-		// check each of the settings and see if we need
-		// to use the default settings
-		if(this.worldHeight == -1) {
-			this.worldHeight = 80;
+		// place the rooms and the corridors between them
+		generateRooms();
+		
+		// add doors to the chosen sides of each room, in one sweep down the world
+		long start = this.stats == null ? 0 : System.nanoTime();
+		insertAllDoors(null);
+		
+		finishStats(start);
+		
+		// return the world we created
+		return this.world;
+	}
+	
+	/**
+	 * Builds the {@link World} the same way as {@link #create()}, but in the
+	 * background once subscribed to, sending an event as the world is filled,
+	 * as each room is placed, as each corridor is carved and as each door is
+	 * inserted. The world in the events can be read, and shown, while it's
+	 * being generated. The generation runs on its own daemon thread and the
+	 * events are sent on another. The builder mustn't be used again until
+	 * the generation is done.
+	 * 
+	 * @return a {@link GenerationPublisher} to subscribe to
+	 */
+	public GenerationPublisher stream() {
+		return stream(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				Thread thread = new Thread(command, "world-generation");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}, GenerationPublisher.DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Builds the {@link World} the same way as {@link #create()}, but in the
+	 * background once subscribed to, sending the events of the generation.
+	 * 
+	 * @param executor the {@link Executor} to run the generation and the sending
+	 * of the events on, they each need a thread of their own
+	 * @param bufferSize the number of events the generation can get ahead of the
+	 * subscriber before it waits for the subscriber
+	 * 
+	 * @return a {@link GenerationPublisher} to subscribe to
+	 * 
+	 * @see #stream()
+	 */
+	public GenerationPublisher stream(Executor executor, int bufferSize) {
+		this.publisher = new GenerationPublisher(this, executor, bufferSize);
+		return this.publisher;
+	}
+	
+	/**
+	 * Builds the {@link World} in parallel by splitting it into square regions.
+	 * The rooms and corridors of each region are generated at the same time on
+	 * a {@link ForkJoinPool}, then the regions are connected to their neighbors
+	 * with corridors, and finally doors are inserted into the rooms in parallel.
+	 * The room tries are shared out between the regions by area. The same
+	 * settings and seed always build the same world, regardless of the number
+	 * of threads. The defaults for {@link #create()} apply along with:
+	 * <ul>
+	 * <li>Parallelism = the number of available processors</li>
+	 * <li>Region Size = 128 characters</li>
+	 * </ul>
+	 * 
+	 * @return a {@link World} created using the provided settings
+	 * or defaults
+	 * 
+	 * @throws IllegalArgumentException if the regions can't fit the largest room
+	 */
+	public World createParallel() {
+		if(this.parallelism == -1) {
+			this.parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		
+		if(this.regionSize == -1) {
+			this.regionSize = 128;
+		}
+		
+		// use the default for any other setting that wasn't provided
+		applyDefaults();
+		
+		// the last row and column of a region are left as walls to keep the
+		// regions apart, and the largest room needs one tile of space to be placed
+		if(this.regionSize - 1 <= this.maxRoomSize + 2) {
+			throw new IllegalArgumentException("The region size must be larger than the maximum room size + 3");
+		}
+		
+		// every random value outside of the regions is drawn from this one generator
+		this.random = new SplittableRandom(this.seed);
+		this.stats = this.metricsEnabled ? new GenerationStats() : null;
+		createWorld();
+		
+		long start = this.stats == null ? 0 : System.nanoTime();
+		fill();
+		if(this.stats != null) {
+			this.stats.recordFill(System.nanoTime() - start);
+			start = System.nanoTime();
+		}
+		
+		int columns = (this.worldWidth + this.regionSize - 1) / this.regionSize;
+		int rows = (this.worldHeight + this.regionSize - 1) / this.regionSize;
+		List<List<Room>> regionRooms = new ArrayList<List<Room>>(columns * rows);
+		for(int i = 0; i < columns * rows; i++) {
+			regionRooms.add(null);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+		try {
+			// generate all the regions at the same time, each region
+			// only writes to its own part of the world
+			pool.invoke(new RegionTask(0, columns * rows, columns, regionRooms));
+			
+			// the regions' corridors are counted as part of placing their rooms
+			if(this.stats != null) {
+				this.stats.recordPlacement(System.nanoTime() - start);
+				start = System.nanoTime();
+			}
+			
+			// add the rooms to the world in region order, so the
+			// order doesn't depend on which region finished first
+			for(List<Room> rooms : regionRooms) {
+				for(Room room : rooms) {
+					this.world.addRoom(room);
+				}
+			}
+			
+			// connect each region to the next regions with rooms to the east and south
+			for(int row = 0; row < rows; row++) {
+				for(int column = 0; column < columns; column++) {
+					List<Room> rooms = regionRooms.get(row * columns + column);
+					if(rooms.isEmpty()) {
+						continue;
+					}
+					
+					for(int east = column + 1; east < columns; east++) {
+						List<Room> eastRooms = regionRooms.get(row * columns + east);
+						if(!eastRooms.isEmpty()) {
+							connectRooms(rooms.get(0), eastRooms.get(0));
+							break;
+						}
+					}
+					
+					for(int south = row + 1; south < rows; south++) {
+						List<Room> southRooms = regionRooms.get(south * columns + column);
+						if(!southRooms.isEmpty()) {
+							connectRooms(rooms.get(0), southRooms.get(0));
+							break;
+						}
+					}
+				}
+			}
+			
+			if(this.stats != null) {
+				this.stats.recordCorridors(System.nanoTime() - start);
+				start = System.nanoTime();
+			}
+			
+			// add doors to the chosen sides of each room, a band of rows per task
+			insertAllDoors(pool);
+		} finally {
+			pool.shutdown();
 		}
 		
+		finishStats(start);
+		
+		// return the world we created
+		return this.world;
+	}
+	
+	/**
+	 * Builds a {@link ChunkedWorld} whose chunks are generated as they are
+	 * needed, each chunk is generated from the seed and its coordinates
+	 * with the room settings applied per chunk, and has corridors leading
+	 * to the chunks beside it. The world is effectively unbounded if a
+	 * width or height hasn't been provided, otherwise the defaults for
+	 * {@link #create()} apply along with:
+	 * <ul>
+	 * <li>Chunk Size = 64 characters</li>
+	 * <li>Maximum Chunks = 64 chunks</li>
+	 * <li>Maximum Changed Chunks = 64 chunks</li>
+	 * </ul>
+	 * 
+	 * @return a {@link ChunkedWorld} created using the provided settings
+	 * or defaults
+	 * 
+	 * @throws IllegalArgumentException if the chunks can't fit the largest room
+	 */
+	public ChunkedWorld createChunked() {
+		// a chunked world is unbounded unless told otherwise
 		if(this.worldWidth == -1) {
-			this.worldWidth = 80;
+			this.worldWidth = UNBOUNDED;
 		}
 		
-		if(this.roomTries == -1) {
-			this.roomTries = 100;
+		if(this.worldHeight == -1) {
+			this.worldHeight = UNBOUNDED;
 		}
 		
-		if(this.maxRoomSize == -1) {
-			this.maxRoomSize = 10;
+		if(this.chunkSize == -1) {
+			this.chunkSize = ChunkedWorld.DEFAULT_CHUNK_SIZE;
 		}
 		
-		// if a world has not been provided, then create one
-		if(this.world == null) {
-			this.world = new World(this.worldWidth, this.worldHeight);
+		if(this.maxChunks == -1) {
+			this.maxChunks = ChunkedWorld.DEFAULT_MAX_CHUNKS;
+		}
+		
+		if(this.maxChangedChunks == -1) {
+			this.maxChangedChunks = ChunkedWorld.DEFAULT_MAX_CHANGED_CHUNKS;
+		}
+		
+		// use the default for any other setting that wasn't provided
+		applyDefaults();
+		
+		// the largest room is maxRoomSize + 2 wide, and needs at least one
+		// tile of space to be placed, inside the chunk's border
+		if(this.chunkSize <= this.maxRoomSize + 4) {
+			throw new IllegalArgumentException("The chunk size must be larger than the maximum room size + 4");
+		}
+		
+		// the chunked world is counted as a single world, and its stats gain
+		// each chunk's as it's generated
+		GenerationStats stats = this.metricsEnabled ? new GenerationStats() : null;
+		if(stats != null) {
+			GenerationMetrics.getInstance().record(stats);
 		}
+		this.stats = stats;
+		
+		ChunkedWorld chunkedWorld = new ChunkedWorld(this.worldWidth, this.worldHeight, this.chunkSize,
+				this.maxChunks, (chunkX, chunkY, chunkSize) -> generateChunk(chunkX, chunkY, chunkSize, stats),
+				this.maxChangedChunks, null);
+		chunkedWorld.setSeed(this.seed);
+		this.world = chunkedWorld;
+		
+		return chunkedWorld;
+	}
+	
+	/**
+	 * Creates the world, if one hasn't been provided, and places the rooms
+	 * and the corridors between them.
+	 * 
+	 * @return the {@link World}
+	 */
+	World generateRooms() {
+		// use the default for any setting that wasn't provided
+		applyDefaults();
+		
+		// every random value is drawn from this one generator
+		this.random = new SplittableRandom(this.seed);
+		this.stats = this.metricsEnabled ? new GenerationStats() : null;
+		
+		createWorld();
 		
 		// fill the world with walls
+		long start = this.stats == null ? 0 : System.nanoTime();
 		fill();
+		if(this.stats != null) {
+			this.stats.recordFill(System.nanoTime() - start);
+			start = System.nanoTime();
+		}
+		emit(GenerationEvent.Type.STARTED, 0, 0, this.world.getWidth(), this.world.getHeight());
 		
 		// rather than create a world with a uniform number of rooms
 		// each time, we create rooms based on the number of attempts,
 		// each room that is created is placed in the world, only if
 		// they do not overlap other rooms or corridors
-		for(int i = 0; i < this.roomTries; i++) {
+		long targetArea = this.targetDensity < 0 ? Long.MAX_VALUE :
+				(long)(this.targetDensity * this.world.getWidth() * this.world.getHeight());
+		long roomArea = 0;
+		for(int i = 0; i < this.roomTries && roomArea < targetArea; i++) {
 			// the room to be added to the world
-			Room roomToAdd = generateRandomRoom();
+			Room roomToAdd = this.freeSpaceSampling ? generateFittingRoom() : generateRandomRoom();
 			
 			// attempt to add the room to the world
+			if(this.stats != null) {
+				this.stats.recordRoomTry();
+			}
+			
+			// there may be no space for the room in the row that was picked
+			if(roomToAdd == null) {
+				continue;
+			}
+			
+			int rooms = this.world.getRooms().size();
 			addRoom(roomToAdd);
+			if(this.world.getRooms().size() > rooms) {
+				roomArea += (long)roomToAdd.width * roomToAdd.height;
+			}
 		}
 		
-		// go through all the rooms in the world
-		// and add doors to each room
-		for(Room room : this.world.getRooms()) {
-			insertDoors(room);
+		// the corridors were timed as they were carved, so take them out of the placement
+		if(this.stats != null) {
+			this.stats.recordPlacement(System.nanoTime() - start - this.stats.getCorridorNanos());
+		}
+		
+		// join the rooms now they've all been placed
+		if(this.plannedCorridors) {
+			start = this.stats == null ? 0 : System.nanoTime();
+			planCorridors();
+			if(this.stats != null) {
+				this.stats.recordCorridors(System.nanoTime() - start);
+			}
 		}
 		
-		// return the world we created
 		return this.world;
 	}
 	
+	/**
+	 * Records the time spent inserting doors, stops the world recording
+	 * into the stats, and adds the stats to the totals.
+	 * 
+	 * @param doorStart when the doors started being inserted, from {@link System#nanoTime()}
+	 */
+	private void finishStats(long doorStart) {
+		if(this.stats == null) {
+			return;
+		}
+		
+		this.stats.recordDoors(System.nanoTime() - doorStart);
+		this.world.setStats(null);
+		GenerationMetrics.getInstance().record(this.stats);
+	}
+	
+	/**
+	 * Creates the world using the settings, if one hasn't been provided.
+	 */
+	private void createWorld() {
+		// if a world has not been provided, then create one
+		if(this.world == null) {
+			this.world = new World(this.worldWidth, this.worldHeight, this.neighbourMasks);
+			// size the index's cells to the largest room we can generate,
+			// so a room only ever touches a handful of cells
+			this.world.setRoomIndex(new GridRoomIndex(this.worldWidth, this.worldHeight, this.maxRoomSize + 2));
+		}
+		
+		// keep the seed with the world, so it can be built again
+		this.world.setSeed(this.seed);
+		this.world.setStats(this.stats);
+	}
+	
+	/**
+	 * Generates the rooms and corridors of a single region of the world,
+	 * and copies them into the world.
+	 * 
+	 * @param region the index of the region, going row by row
+	 * @param columns the number of regions across the world
+	 * 
+	 * @return the rooms placed in the region, in the world's coordinates
+	 */
+	private List<Room> generateRegion(int region, int columns) {
+		int left = (region % columns) * this.regionSize;
+		int top = (region / columns) * this.regionSize;
+		
+		// leave the last row and column as walls, so rooms in
+		// neighboring regions can't touch
+		int width = Math.min(this.regionSize, this.worldWidth - left) - 1;
+		int height = Math.min(this.regionSize, this.worldHeight - top) - 1;
+		
+		// a region at the edge of the world may be too small for a room
+		if(width <= this.maxRoomSize + 2 || height <= this.maxRoomSize + 2) {
+			return new ArrayList<Room>();
+		}
+		
+		// build the region as a world of its own, with its share of
+		// the room tries, seeded by its position
+		long tries = (long)this.roomTries * width * height / ((long)this.worldWidth * this.worldHeight);
+		WorldBuilder regionBuilder = new WorldBuilder()
+				.setWorldWidth(width)
+				.setWorldHeight(height)
+				.setMaxRoomSize(this.maxRoomSize)
+				.setRoomTries((int)tries)
+				.setSeed(deriveSeed(this.seed, region))
+				.setFreeSpaceSampling(this.freeSpaceSampling)
+				.setTargetDensity(this.targetDensity)
+				.setPlannedCorridors(this.plannedCorridors)
+				.setExtraCorridors(this.extraCorridors)
+				.setMetricsEnabled(this.metricsEnabled);
+		World regionWorld = regionBuilder.generateRooms();
+		
+		// the regions are generated at the same time, so take turns adding their counters
+		if(this.stats != null) {
+			synchronized(this.stats) {
+				this.stats.addCounters(regionBuilder.stats);
+			}
+		}
+		
+		// copy the region into the world, a stripe of rows at a time
+		this.world.copyTiles(regionWorld, left, top);
+		
+		// move the rooms into the world's coordinates
+		List<Room> rooms = new ArrayList<Room>(regionWorld.getRooms().size());
+		for(Room room : regionWorld.getRooms()) {
+			rooms.add(new Room(room.x + left, room.y + top, room.width, room.height));
+		}
+		
+		return rooms;
+	}
+	
+	/**
+	 * Sets any of the settings that weren't provided to their defaults.
+	 */
+	private void applyDefaults() {
+		// check each of the settings and see if we need
+		// to use the default settings
+		if(this.worldHeight == -1) {
+			this.worldHeight = 80;
+		}
+		
+		if(this.worldWidth == -1) {
+			this.worldWidth = 80;
+		}
+		
+		if(this.roomTries == -1) {
+			this.roomTries = 100;
+		}
+		
+		if(this.maxRoomSize == -1) {
+			this.maxRoomSize = 10;
+		}
+		
+		// if a seed has not been provided, then pick one, keeping
+		// it so the world can be built again
+		if(this.seed == null) {
+			this.seed = new SplittableRandom().nextLong();
+		}
+	}
+	
+	/**
+	 * Generates a single chunk of a chunked world, as a world of its own.
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * @param chunkSize the width and height of the chunk
+	 * @param stats the {@link GenerationStats} of the chunked world, to add the
+	 * chunk's to, {@code null} if the metrics are turned off
+	 * 
+	 * @return a {@link World} holding the chunk's tiles
+	 */
+	private World generateChunk(int chunkX, int chunkY, int chunkSize, GenerationStats stats) {
+		// build the chunk with our room settings, seeded by its coordinates,
+		// leaving a tile around it so its rooms never touch a neighbouring
+		// chunk's rooms
+		WorldBuilder chunkBuilder = new WorldBuilder()
+				.setWorldWidth(chunkSize - 2)
+				.setWorldHeight(chunkSize - 2)
+				.setMaxRoomSize(this.maxRoomSize)
+				.setRoomTries(this.roomTries)
+				.setSeed(chunkSeed(chunkX, chunkY))
+				.setFreeSpaceSampling(this.freeSpaceSampling)
+				.setTargetDensity(this.targetDensity)
+				.setPlannedCorridors(this.plannedCorridors)
+				.setExtraCorridors(this.extraCorridors)
+				.setMetricsEnabled(this.metricsEnabled);
+		World inside = chunkBuilder.generateRooms();
+		inside.setStats(null);
+		
+		// move the rooms inside the chunk's border, and carry on building the chunk
+		World chunk = new World(chunkSize, chunkSize);
+		chunk.clear(Tile.Wall);
+		chunk.copyTiles(inside, 1, 1);
+		for(Room room : inside.getRooms()) {
+			chunk.addRoom(new Room(room.x + 1, room.y + 1, room.width, room.height));
+		}
+		chunkBuilder.setWorld(chunk);
+		
+		// head to the middle of the first room, or the middle of the
+		// chunk if no rooms could be placed
+		int centerX = chunkSize / 2;
+		int centerY = chunkSize / 2;
+		if(!chunk.getRooms().isEmpty()) {
+			Room room = chunk.getRooms().get(0);
+			centerX = room.getCenterX();
+			centerY = room.getCenterY();
+		}
+		
+		// carve a corridor out to each border, the chunk on the other side
+		// of a border picks the same crossing so the corridors meet
+		chunkBuilder.insertPassage(chunkSize - 1, borderCrossing(chunkX, chunkY, EAST_BORDER, chunkSize), centerX, centerY, true);
+		chunkBuilder.insertPassage(borderCrossing(chunkX, chunkY, SOUTH_BORDER, chunkSize), chunkSize - 1, centerX, centerY, false);
+		
+		// the world's edges have no chunks beyond them
+		if(chunkX > 0) {
+			chunkBuilder.insertPassage(0, borderCrossing(chunkX - 1, chunkY, EAST_BORDER, chunkSize), centerX, centerY, true);
+		}
+		
+		if(chunkY > 0) {
+			chunkBuilder.insertPassage(borderCrossing(chunkX, chunkY - 1, SOUTH_BORDER, chunkSize), 0, centerX, centerY, false);
+		}
+		
+		// the doors go in once the passages are carved, so the passages get
+		// doors where they cross into rooms; the same as create, but the
+		// chunk's stats are added to the chunked world's rather than the
+		// chunk being counted as a world
+		long start = chunkBuilder.stats == null ? 0 : System.nanoTime();
+		chunkBuilder.insertAllDoors(null);
+		if(chunkBuilder.stats != null) {
+			chunkBuilder.stats.recordDoors(System.nanoTime() - start);
+			GenerationMetrics.getInstance().recordPart(chunkBuilder.stats);
+			synchronized(stats) {
+				stats.add(chunkBuilder.stats);
+			}
+		}
+		
+		return chunk;
+	}
+	
+	/**
+	 * Get the seed of a chunk from the world's seed and the chunk's coordinates
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * 
+	 * @return the seed of the chunk
+	 */
+	private long chunkSeed(int chunkX, int chunkY) {
+		return deriveSeed(deriveSeed(this.seed, chunkX), chunkY);
+	}
+	
+	/**
+	 * Determines where the corridor crosses a chunk's east or south border,
+	 * never at the corners of the chunk.
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * @param border either {@link #EAST_BORDER} or {@link #SOUTH_BORDER}
+	 * @param chunkSize the width and height of the chunk
+	 * 
+	 * @return the position along the border the corridor crosses
+	 */
+	private int borderCrossing(int chunkX, int chunkY, long border, int chunkSize) {
+		return 1 + (int)Math.floorMod(deriveSeed(chunkSeed(chunkX, chunkY), border), (long)(chunkSize - 2));
+	}
+	
+	/**
+	 * Inserts an L-shaped passage from the start point to the end point,
+	 * including both points.
+	 * 
+	 * @param startX the x coordinate of the start of the passage
+	 * @param startY the y coordinate of the start of the passage
+	 * @param endX the x coordinate of the end of the passage
+	 * @param endY the y coordinate of the end of the passage
+	 * @param horizontal whether the passage is to start out horizontally
+	 */
+	private void insertPassage(int startX, int startY, int endX, int endY, boolean horizontal) {
+		// the corner is where the passage turns
+		int cornerX = horizontal ? endX : startX;
+		int cornerY = horizontal ? startY : endY;
+		
+		if(horizontal) {
+			insertCorridor(startX, endX, startY, true);
+			insertCorridor(startY, endY, endX, false);
+		} else {
+			insertCorridor(startY, endY, startX, false);
+			insertCorridor(startX, endX, endY, true);
+		}
+		
+		// a corridor stops short of its larger point, so ensure
+		// the ends and the corner are carved out as well
+		this.world.insertTile(startX, startY, Tile.Floor);
+		this.world.insertTile(cornerX, cornerY, Tile.Floor);
+		this.world.insertTile(endX, endY, Tile.Floor);
+	}
+	
 	/**
 	 * Generates a room with random height, width, and coordinate
 	 * in the world.
@@ -228,18 +1093,116 @@ public class WorldBuilder {
 	private Room generateRandomRoom() {
 		// randomly create the width and height based on the maximum room
 		// size, with a minimum size of 3 characters
-		int roomWidth = new Random().nextInt(this.maxRoomSize) + 3;
-		int roomHeight = new Random().nextInt(this.maxRoomSize) + 3;
+		int roomWidth = this.random.nextInt(this.maxRoomSize) + 3;
+		int roomHeight = this.random.nextInt(this.maxRoomSize) + 3;
 		
 		// randomly create the coordinates, ensuring the room will fit
 		// within the bounds of the room
-		int roomX = new Random().nextInt(this.worldWidth - roomWidth);
-		int roomY = new Random().nextInt(this.worldHeight - roomHeight);
+		int roomX = this.random.nextInt(this.worldWidth - roomWidth);
+		int roomY = this.random.nextInt(this.worldHeight - roomHeight);
 		
 		// return a room created from the parameters
 		return new Room(roomX, roomY, roomWidth, roomHeight);
 	}
 	
+	/**
+	 * Generates a room with a random height and width that fits in the free
+	 * space of the world along a randomly picked row. A room fits where it,
+	 * and the tiles around it, have no floor tiles, which rules out both
+	 * overlapping a room and being next to a corridor.
+	 * 
+	 * @return a {@link Room}, or {@code null} if the room doesn't fit anywhere
+	 * along the row
+	 */
+	private Room generateFittingRoom() {
+		int worldWidth = this.world.getWidth();
+		int worldHeight = this.world.getHeight();
+		
+		// randomly create the width and height based on the maximum room
+		// size, with a minimum size of 3 characters
+		int roomWidth = this.random.nextInt(this.maxRoomSize) + 3;
+		int roomHeight = this.random.nextInt(this.maxRoomSize) + 3;
+		int roomY = this.random.nextInt(worldHeight - roomHeight);
+		
+		// find where there's a floor in the rows of the room or either side of it
+		if(this.band == null || this.band.length < (worldWidth + 63) >>> 6) {
+			this.band = new long[(worldWidth + 63) >>> 6];
+		}
+		this.world.combineFloorRows(roomY - 1, roomY + roomHeight + 1, this.band);
+		
+		// count the places the room fits, then pick one of them
+		int places = countFittingPlaces(roomWidth, worldWidth, -1);
+		if(places == 0) {
+			return null;
+		}
+		int roomX = countFittingPlaces(roomWidth, worldWidth, this.random.nextInt(places));
+		
+		// return a room created from the parameters
+		return new Room(roomX, roomY, roomWidth, roomHeight);
+	}
+	
+	/**
+	 * Goes through the runs of the band with no floor tiles, counting the x
+	 * coordinates a room fits at with a wall either side of it, or the edge
+	 * of the world. The room must fit within the same range of x coordinates
+	 * as {@link #generateRandomRoom()} uses.
+	 * 
+	 * @param roomWidth the width of the room
+	 * @param worldWidth the width of the world
+	 * @param pick which of the places to return, or -1 to count them
+	 * 
+	 * @return the number of places, or the x coordinate of the picked place
+	 */
+	private int countFittingPlaces(int roomWidth, int worldWidth, int pick) {
+		int places = 0;
+		int start = nextBit(this.band, 0, worldWidth, false);
+		while(start < worldWidth) {
+			int end = nextBit(this.band, start, worldWidth, true);
+			
+			// keep a wall between the room and the floor either side of the run
+			int first = start == 0 ? 0 : start + 1;
+			int last = Math.min(end == worldWidth ? worldWidth : end - 1, worldWidth - 1) - roomWidth;
+			if(last >= first) {
+				int count = last - first + 1;
+				if(pick >= 0 && pick < places + count) {
+					return first + (pick - places);
+				}
+				places += count;
+			}
+			
+			start = nextBit(this.band, end, worldWidth, false);
+		}
+		
+		return places;
+	}
+	
+	/**
+	 * Finds the next bit, at or after the given bit, that is set or clear.
+	 * 
+	 * @param bits the bits, bit x is in word x / 64
+	 * @param from the first bit to look at
+	 * @param length the number of bits
+	 * @param set whether to look for a set bit or a clear bit
+	 * 
+	 * @return the next matching bit, or the length if there isn't one
+	 */
+	private static int nextBit(long[] bits, int from, int length, boolean set) {
+		if(from >= length) {
+			return length;
+		}
+		
+		int word = from >>> 6;
+		long current = (set ? bits[word] : ~bits[word]) & (-1L << from);
+		while(current == 0) {
+			if(++word >= (length + 63) >>> 6) {
+				return length;
+			}
+			current = set ? bits[word] : ~bits[word];
+		}
+		
+		return Math.min((word << 6) + Long.numberOfTrailingZeros(current), length);
+	}
+	
 	/**
 	 * Creates a passage from the provided {@link Room} to the
 	 * "previous" room in the list of rooms in the world
@@ -254,24 +1217,90 @@ public class WorldBuilder {
 		}
 		
 		// grab the rooms from the world
-		List<Room> rooms = this.world.getRooms();
+		RoomStore rooms = this.world.getRoomStore();
 		
-		// get the center of the room to use that
-		// as the start of the corridor
-		int centerX = (int)room.getCenterX();
-		int centerY = (int)room.getCenterY();
+		// connect the room to the "previous" room in the list of rooms
+		int previous = rooms.size() - 2;
+		connectRooms(room.getCenterX(), room.getCenterY(), rooms.getCenterX(previous), rooms.getCenterY(previous));
+	}
+	
+	/**
+	 * Joins the rooms of the world along the minimum spanning tree of a graph
+	 * of each room's nearest neighbours, plus a random selection of the other
+	 * neighbours for loops. The corridors are collected first, then the
+	 * corridors along the same row or column are merged so overlapping
+	 * corridors are only carved once.
+	 */
+	private void planCorridors() {
+		RoomStore rooms = this.world.getRoomStore();
+		if(rooms.size() < 2) {
+			return;
+		}
 		
-		// get the "previous" room in the list of rooms
-		Room previousRoom = rooms.get(rooms.size() - 2);
+		RoomGraph graph = new RoomGraph(rooms, RoomGraph.DEFAULT_NEIGHBOURS);
 		
-		// get the center of the room to use to end the corridor
-		int previousCenterX = (int)previousRoom.getCenterX();
-		int previousCenterY = (int)previousRoom.getCenterY();
+		// collect the corridors rather than carving them
+		this.corridorSegments = new ArrayList<int[]>();
+		for(int edge = 0; edge < graph.getEdgeCount(); edge++) {
+			// only draw for the extra corridors if there can be any, so the
+			// tree alone doesn't use up random values
+			if(graph.isSpanning(edge) ||
+					(this.extraCorridors > 0 && this.random.nextDouble() < this.extraCorridors)) {
+				int from = graph.getFrom(edge);
+				int to = graph.getTo(edge);
+				connectRooms(rooms.getCenterX(from), rooms.getCenterY(from), rooms.getCenterX(to), rooms.getCenterY(to));
+			}
+		}
+		List<int[]> segments = this.corridorSegments;
+		this.corridorSegments = null;
 		
+		// sort the corridors by direction, then row or column, then start
+		segments.sort(Comparator.<int[]>comparingInt(segment -> segment[0])
+				.thenComparingInt(segment -> segment[1])
+				.thenComparingInt(segment -> segment[2]));
+		
+		// carve each run of overlapping corridors in one go
+		int[] run = null;
+		for(int[] segment : segments) {
+			if(run != null && run[0] == segment[0] && run[1] == segment[1] && segment[2] <= run[3]) {
+				run[3] = Math.max(run[3], segment[3]);
+				continue;
+			}
+			
+			if(run != null) {
+				carveCorridor(run[2], run[3], run[1], run[0] == 1);
+			}
+			run = segment;
+		}
+		if(run != null) {
+			carveCorridor(run[2], run[3], run[1], run[0] == 1);
+		}
+	}
+	
+	/**
+	 * Creates an L-shaped corridor between the centers of two {@link Room}s
+	 * 
+	 * @param room the {@link Room} to create a corridor from
+	 * @param previousRoom the {@link Room} to create a corridor to
+	 */
+	private void connectRooms(Room room, Room previousRoom) {
+		// the centers of the rooms are the start and end of the corridor
+		connectRooms(room.getCenterX(), room.getCenterY(), previousRoom.getCenterX(), previousRoom.getCenterY());
+	}
+	
+	/**
+	 * Creates an L-shaped corridor between the centers of two rooms
+	 * 
+	 * @param centerX the x coordinate of the center of the room to create a corridor from
+	 * @param centerY the y coordinate of the center of the room to create a corridor from
+	 * @param previousCenterX the x coordinate of the center of the room to create a corridor to
+	 * @param previousCenterY the y coordinate of the center of the room to create a corridor to
+	 */
+	private void connectRooms(int centerX, int centerY, int previousCenterX, int previousCenterY) {
 		// randomly determine if the corridor is to start from the horizontal
 		// or vertical position; NOTE: when the random number was between 0 and 2,
 		// the program favored vertical corridors
-		if(new Random().nextInt(99) % 2 == 1) {
+		if(this.random.nextInt(99) % 2 == 1) {
 			// create a corridor starting in the horizontal
 			insertCorridor(centerY, previousCenterY, previousCenterX, false);
 			insertCorridor(centerX, previousCenterX, centerY, true);
@@ -296,73 +1325,280 @@ public class WorldBuilder {
 		int max = Math.max(point1, point2);
 		int min = Math.min(point1, point2);
 		
+		// planned corridors are carved once they've all been collected; they
+		// include the maximum point, as a planned corridor is the only way
+		// between its rooms and would otherwise leave a gap at the corner
+		if(this.corridorSegments != null) {
+			this.corridorSegments.add(new int[] {horizontal ? 1 : 0, constant, min, max + 1});
+			return;
+		}
+		
+		carveCorridor(min, max, constant, horizontal);
+	}
+	
+	/**
+	 * Carves a corridor of floor tiles from the minimum point up to, but not
+	 * including, the maximum point.
+	 * 
+	 * @param min the coordinate value to start at
+	 * @param max the coordinate value to stop before
+	 * @param constant the coordinate value to be held constant
+	 * @param horizontal whether or not the corridor is to be horizontal
+	 */
+	private void carveCorridor(int min, int max, int constant, boolean horizontal) {
+		if(this.stats != null) {
+			this.stats.recordCorridorTiles(max - min);
+		}
+		
 		// starting at the minimum point, insert floor tiles until the maximum point
-		for(int i = min; i < max; i++) {
+		if(horizontal) {
 			// if this is a horizontal corridor, then the y coordinate is held constant
-			if(horizontal) {
-				this.world.insertTile(i, constant, Tile.Floor);
-			} else {
-				// otherwise the x coordinate is held constant
-				this.world.insertTile(constant, i, Tile.Floor);
+			this.world.fillRow(constant, min, max, Tile.Floor);
+			emit(GenerationEvent.Type.CORRIDOR_CARVED, min, constant, max - min, 1);
+		} else {
+			// otherwise the x coordinate is held constant
+			this.world.fillColumn(constant, min, max, Tile.Floor);
+			emit(GenerationEvent.Type.CORRIDOR_CARVED, constant, min, 1, max - min);
+		}
+	}
+	
+	/**
+	 * Inserts closed doors into every room. The sides of each room that get
+	 * doors are decided up front, in room order, and marked in a bitset of
+	 * the world. The world is then swept once, a band of rows at a time,
+	 * finding the doorways from the packed rows and inserting a door into
+	 * each doorway on a marked side. A door only ever replaces a floor tile,
+	 * and only looks for walls around it, so this inserts the same doors as
+	 * going round each room's perimeter in room order would.
+	 * 
+	 * @param pool the {@link ForkJoinPool} to sweep the bands on at the same
+	 * time, {@code null} to sweep them on this thread
+	 */
+	private void insertAllDoors(ForkJoinPool pool) {
+		int width = this.world.getWidth();
+		int height = this.world.getHeight();
+		int words = (width + 63) >>> 6;
+		long[] sides = new long[words * height];
+		
+		// mark the sides of the rooms that get doors, drawing the random
+		// values in the same order as going round each room would
+		RoomStore rooms = this.world.getRoomStore();
+		for(int room = 0; room < rooms.size(); room++) {
+			boolean northSouth = this.random.nextInt(10) % 2 == 1;
+			boolean eastWest = this.random.nextInt(10) % 2 == 1;
+			
+			int roomX = rooms.getX(room);
+			int roomY = rooms.getY(room);
+			int roomWidth = rooms.getWidth(room);
+			int roomHeight = rooms.getHeight(room);
+			int left = Math.max(roomX, 0);
+			int right = Math.min(roomX + roomWidth, width);
+			int top = Math.max(roomY, 0);
+			int bottom = Math.min(roomY + roomHeight, height);
+			if(northSouth && left < right) {
+				int north = roomY - 1;
+				int south = roomY + roomHeight;
+				if(north >= 0) {
+					setBits(sides, north * words, left, right);
+				}
+				if(south < height) {
+					setBits(sides, south * words, left, right);
+				}
+			}
+			if(eastWest) {
+				int east = roomX + roomWidth;
+				int west = roomX - 1;
+				for(int y = top; y < bottom; y++) {
+					if(east < width) {
+						sides[y * words + (east >>> 6)] |= 1L << east;
+					}
+					if(west >= 0) {
+						sides[y * words + (west >>> 6)] |= 1L << west;
+					}
+				}
 			}
 		}
+		
+		long[] doorways = new long[words * height];
+		if(pool == null) {
+			insertDoorBand(0, height, doorways, sides);
+		} else {
+			pool.invoke(new DoorTask(0, height, doorways, sides));
+		}
 	}
 	
 	/**
-	 * Randomly inserts closed doors into the provided room.
+	 * Inserts a door into each doorway of a band of rows that's on a
+	 * marked side of a room.
 	 * 
-	 * @param room the {@link Room} we want to insert doors into
+	 * @param fromY the first row of the band
+	 * @param toY one past the last row of the band
+	 * @param doorways where to find the doorways, a bit per tile row by row
+	 * @param sides the sides of the rooms that get doors, a bit per tile row by row
 	 */
-	private void insertDoors(Room room) {
-		// get the cardinal points of the room since
-		// those are the only locations doors will be
-		int north = room.y - 1;
-		int south = room.y + room.height;
-		int east = room.x + room.width;
-		int west = room.x - 1;
+	private void insertDoorBand(int fromY, int toY, long[] doorways, long[] sides) {
+		this.world.findDoorways(fromY, toY, doorways);
 		
-		// randomly determine if we want to insert a
-		// door on the north or south ends of the room
-		if(new Random().nextInt(10) % 2 == 1) {
-			// go through the upper and lower regions of
-			// the room and attempt to insert a door
-			for(int i = room.x; i < room.x + room.width; i++) {
-				insertDoor(i, north);
-				insertDoor(i, south);
+		int words = (this.world.getWidth() + 63) >>> 6;
+		for(int y = fromY; y < toY; y++) {
+			for(int word = y * words; word < (y + 1) * words; word++) {
+				long doors = doorways[word] & sides[word];
+				while(doors != 0) {
+					int x = ((word - y * words) << 6) + Long.numberOfTrailingZeros(doors);
+					doors &= doors - 1;
+					
+					// insert the closed door
+					this.world.insertTile(x, y, Tile.ClosedDoor);
+					emit(GenerationEvent.Type.DOOR_INSERTED, x, y, 1, 1);
+				}
 			}
 		}
+	}
+	
+	/**
+	 * Sets a span of bits, a word at a time.
+	 * 
+	 * @param bits the bits
+	 * @param offset the index of the word holding the first bit of the row
+	 * @param from the first bit to set
+	 * @param to one past the last bit to set
+	 */
+	private static void setBits(long[] bits, int offset, int from, int to) {
+		int firstWord = offset + (from >>> 6);
+		int lastWord = offset + ((to - 1) >>> 6);
+		// shifts only use the low six bits, so these mask the ends of the span
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
 		
-		// randomly determine if we want to insert a
-		// door on the east or west ends of the room
-		if(new Random().nextInt(10) % 2 == 1) {
-			// go through the left and right regions of
-			// the room and attempt to insert a door
-			for(int i = room.y; i < room.y + room.height; i++) {
-				insertDoor(east, i);
-				insertDoor(west, i);
+		for(int word = firstWord; word <= lastWord; word++) {
+			long mask = -1L;
+			if(word == firstWord) {
+				mask &= firstMask;
+			}
+			if(word == lastWord) {
+				mask &= lastMask;
 			}
+			bits[word] |= mask;
 		}
 	}
 	
 	/**
-	 * Attempts to insert a door into a room.
+	 * Sends an event of the generation to the publisher, if the generation
+	 * is being streamed.
 	 * 
-	 * @param x the x coordinate of the door
-	 * @param y the y coordinate of the door
+	 * @param type what happened
+	 * @param x the left most x coordinate of the tiles changed
+	 * @param y the top most y coordinate of the tiles changed
+	 * @param width how wide the tiles changed are
+	 * @param height how high the tiles changed are
 	 */
-	private void insertDoor(int x, int y) {
-		// first check to see if the tile is a floor tile, that's an opening to the corridor
-		if(this.world.getTile(x, y) == Tile.Floor && (
-				// check to see if there's a wall on the left or right side of the opening, which would
-				// indicate a good corridor
-				(this.world.getTile(x + 1, y) == Tile.Wall && this.world.getTile(x - 1, y) == Tile.Wall) ||
-				// check to see if there's a wall above or below the opening, which would indicate
-				// a good corridor
-				(this.world.getTile(x, y + 1) == Tile.Wall && this.world.getTile(x, y - 1) == Tile.Wall)
-			))
-		{
-			// insert the closed door
-			this.world.insertTile(x, y, Tile.ClosedDoor);
+	private void emit(GenerationEvent.Type type, int x, int y, int width, int height) {
+		GenerationPublisher publisher = this.publisher;
+		if(publisher != null) {
+			publisher.emit(type, this.world, x, y, width, height);
+		}
+	}
+	
+	/**
+	 * Sets where to send the events of the generation.
+	 * 
+	 * @param publisher the {@link GenerationPublisher}, {@code null} to stop sending them
+	 */
+	void setPublisher(GenerationPublisher publisher) {
+		this.publisher = publisher;
+	}
+	
+	/**
+	 * Generates a range of regions, splitting the range in half
+	 * until there's a single region left to generate.
+	 */
+	private class RegionTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** the first region to generate */
+		private int from = 0;
+		/** one past the last region to generate */
+		private int to = 0;
+		/** the number of regions across the world */
+		private int columns = 0;
+		/** the rooms placed in each region, filled in as the regions are generated */
+		private List<List<Room>> regionRooms = null;
+		
+		/**
+		 * Create a task to generate a range of regions.
+		 * 
+		 * @param from the first region to generate
+		 * @param to one past the last region to generate
+		 * @param columns the number of regions across the world
+		 * @param regionRooms the rooms placed in each region
+		 */
+		RegionTask(int from, int to, int columns, List<List<Room>> regionRooms) {
+			this.from = from;
+			this.to = to;
+			this.columns = columns;
+			this.regionRooms = regionRooms;
+		}
+		
+		@Override
+		protected void compute() {
+			if(this.to - this.from == 1) {
+				this.regionRooms.set(this.from, generateRegion(this.from, this.columns));
+				return;
+			}
+			
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new RegionTask(this.from, middle, this.columns, this.regionRooms),
+					  new RegionTask(middle, this.to, this.columns, this.regionRooms));
+		}
+	}
+	
+	/**
+	 * Inserts the doors of a band of rows, splitting the band in half
+	 * until it's few enough rows to insert on its own.
+	 */
+	private class DoorTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** the number of rows to insert doors into without splitting any further */
+		private static final int THRESHOLD = 64;
+		
+		/** the first row of the band */
+		private int fromY = 0;
+		/** one past the last row of the band */
+		private int toY = 0;
+		/** where to find the doorways, a bit per tile row by row */
+		private long[] doorways = null;
+		/** the sides of the rooms that get doors, a bit per tile row by row */
+		private long[] sides = null;
+		
+		/**
+		 * Create a task to insert doors into a band of rows.
+		 * 
+		 * @param fromY the first row of the band
+		 * @param toY one past the last row of the band
+		 * @param doorways where to find the doorways, a bit per tile row by row
+		 * @param sides the sides of the rooms that get doors, a bit per tile row by row
+		 */
+		DoorTask(int fromY, int toY, long[] doorways, long[] sides) {
+			this.fromY = fromY;
+			this.toY = toY;
+			this.doorways = doorways;
+			this.sides = sides;
+		}
+		
+		@Override
+		protected void compute() {
+			if(this.toY - this.fromY <= THRESHOLD) {
+				insertDoorBand(this.fromY, this.toY, this.doorways, this.sides);
+				return;
+			}
+			
+			// split on a multiple of the threshold, so each band is a stripe of the world
+			int middle = this.fromY + (((this.toY - this.fromY) / THRESHOLD + 1) / 2) * THRESHOLD;
+			invokeAll(new DoorTask(this.fromY, middle, this.doorways, this.sides),
+					  new DoorTask(middle, this.toY, this.doorways, this.sides));
 		}
 	}
 }
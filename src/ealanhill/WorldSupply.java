@@ -0,0 +1,501 @@
+package ealanhill;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import ealanhill.objects.World;
+
+/**
+ * Hands out worlds without waiting for them to be generated. Worlds for each
+ * {@link Config} are generated ahead of time on a pool of background threads
+ * into a bounded queue, and every world handed out is kept in a cache by its
+ * configuration and seed, so asking for the same world again doesn't
+ * generate it again. The least recently used worlds are dropped from the
+ * cache once it's full. A world asked for while it's being generated is
+ * waited for rather than generated again.
+ * 
+ * A world is only generated ahead of time to replace one taken from its
+ * queue, so once the queues are full nothing is generated until a world is
+ * taken. Every world handed out is a copy, so it can be changed without
+ * changing the cached world.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class WorldSupply implements AutoCloseable {
+	
+	/** the default number of worlds to generate ahead of time for each configuration */
+	public static final int DEFAULT_QUEUE_SIZE = 4;
+	/** the default number of worlds to keep in the cache */
+	public static final int DEFAULT_CACHE_SIZE = 16;
+	
+	/** generates the worlds ahead of time */
+	private ExecutorService pool = null;
+	/** the number of worlds to generate ahead of time for each configuration */
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	/** the worlds generated ahead of time, by configuration */
+	private Map<Config, Supply> supplies = new ConcurrentHashMap<Config, Supply>();
+	/** the worlds handed out, by configuration and seed, in order of least to most recently used */
+	private LinkedHashMap<Key, World> cache = null;
+	/** the worlds being generated because they were asked for, by configuration and seed */
+	private Map<Key, CompletableFuture<World>> generating = new ConcurrentHashMap<Key, CompletableFuture<World>>();
+	/** picks the seeds of the worlds generated ahead of time */
+	private SplittableRandom seeds = new SplittableRandom();
+	/** the number of worlds handed out without generating them */
+	private LongAdder hits = new LongAdder();
+	/** the number of worlds that had to be generated when they were asked for */
+	private LongAdder misses = new LongAdder();
+	
+	/**
+	 * Create a supply with a thread per processor and the default queue
+	 * and cache sizes.
+	 */
+	public WorldSupply() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Create a supply.
+	 * 
+	 * @param threads the number of threads to generate the worlds on
+	 * @param queueSize the number of worlds to generate ahead of time for each configuration
+	 * @param cacheSize the number of worlds to keep in the cache
+	 */
+	public WorldSupply(int threads, int queueSize, final int cacheSize) {
+		this.queueSize = Math.max(1, queueSize);
+		
+		// an access ordered map, so the eldest entry is the least recently used world
+		this.cache = new LinkedHashMap<Key, World>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, World> eldest) {
+				return size() > Math.max(0, cacheSize);
+			}
+		};
+		
+		// the threads mustn't keep the application running
+		final AtomicInteger count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "world-supply-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Starts generating worlds for a configuration ahead of time, so the
+	 * first world asked for doesn't have to wait.
+	 * 
+	 * @param config the {@link Config} of the worlds
+	 */
+	public void prepare(Config config) {
+		getSupply(config);
+	}
+	
+	/**
+	 * Get a new world for a configuration, taking one generated ahead of time
+	 * if there is one, and generating another to replace it.
+	 * 
+	 * @param config the {@link Config} of the world
+	 * 
+	 * @return a {@link World} of its own
+	 */
+	public World next(Config config) {
+		Supply supply = getSupply(config);
+		World world = supply.queue.poll();
+		if(world != null) {
+			this.hits.increment();
+			supply.refill();
+		} else {
+			this.misses.increment();
+			world = config.generate(nextSeed());
+		}
+		
+		cache(config, world);
+		return new World(world);
+	}
+	
+	/**
+	 * Get the world for a configuration and seed, from the cache if it's
+	 * been handed out recently, otherwise generating it. If the world is
+	 * already being generated for another caller, this waits for it instead.
+	 * 
+	 * @param config the {@link Config} of the world
+	 * @param seed the seed of the world
+	 * 
+	 * @return a {@link World} of its own
+	 */
+	public World get(Config config, long seed) {
+		Key key = new Key(config, seed);
+		World world = getCached(key);
+		if(world != null) {
+			this.hits.increment();
+			return new World(world);
+		}
+		
+		CompletableFuture<World> created = new CompletableFuture<World>();
+		CompletableFuture<World> pending = this.generating.putIfAbsent(key, created);
+		if(pending != null) {
+			// another caller is generating it
+			this.hits.increment();
+			return new World(await(pending));
+		}
+		
+		try {
+			// it may have been cached since it was looked for
+			world = getCached(key);
+			if(world != null) {
+				this.hits.increment();
+			} else {
+				this.misses.increment();
+				world = config.generate(seed);
+				cache(config, world);
+			}
+			created.complete(world);
+		} catch(RuntimeException | Error e) {
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.generating.remove(key, created);
+		}
+		
+		return new World(world);
+	}
+	
+	/**
+	 * Get the number of worlds handed out without generating them
+	 * 
+	 * @return
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+	
+	/**
+	 * Get the number of worlds that had to be generated when they were asked for
+	 * 
+	 * @return
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+	
+	/**
+	 * Get the number of worlds generated ahead of time and waiting for a configuration
+	 * 
+	 * @param config the {@link Config} of the worlds
+	 * 
+	 * @return
+	 */
+	public int getQueueDepth(Config config) {
+		Supply supply = this.supplies.get(config);
+		return supply == null ? 0 : supply.queue.size();
+	}
+	
+	/**
+	 * Get the number of worlds in the cache
+	 * 
+	 * @return
+	 */
+	public int getCachedWorlds() {
+		synchronized(this.cache) {
+			return this.cache.size();
+		}
+	}
+	
+	/**
+	 * Stops generating worlds ahead of time, the worlds being generated are
+	 * abandoned.
+	 */
+	@Override
+	public void close() {
+		this.pool.shutdownNow();
+	}
+	
+	/**
+	 * Get the supply of a configuration, starting it if it hasn't been.
+	 * 
+	 * @param config the {@link Config} of the worlds
+	 * 
+	 * @return the {@link Supply}
+	 */
+	private Supply getSupply(Config config) {
+		Supply supply = this.supplies.get(config);
+		if(supply == null) {
+			Supply created = new Supply(config);
+			supply = this.supplies.putIfAbsent(config, created);
+			if(supply == null) {
+				supply = created;
+				supply.refill();
+			}
+		}
+		return supply;
+	}
+	
+	/**
+	 * Get a world from the cache.
+	 * 
+	 * @param key the {@link Key} of the world
+	 * 
+	 * @return the {@link World}, {@code null} if it isn't cached
+	 */
+	private World getCached(Key key) {
+		synchronized(this.cache) {
+			return this.cache.get(key);
+		}
+	}
+	
+	/**
+	 * Waits for a world being generated for another caller, throwing what
+	 * its generation threw if it failed.
+	 * 
+	 * @param pending the world being generated
+	 * 
+	 * @return the {@link World}
+	 */
+	private static World await(CompletableFuture<World> pending) {
+		try {
+			return pending.join();
+		} catch(CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Adds a world to the cache.
+	 * 
+	 * @param config the {@link Config} of the world
+	 * @param world the {@link World}
+	 */
+	private void cache(Config config, World world) {
+		synchronized(this.cache) {
+			this.cache.put(new Key(config, world.getSeed()), world);
+		}
+	}
+	
+	/**
+	 * Picks the seed of a world.
+	 * 
+	 * @return the seed
+	 */
+	private long nextSeed() {
+		synchronized(this.seeds) {
+			return this.seeds.nextLong();
+		}
+	}
+	
+	/**
+	 * The worlds of a configuration generated ahead of time.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private class Supply {
+		
+		/** the configuration of the worlds */
+		private Config config = null;
+		/** the worlds generated and waiting to be taken */
+		private ArrayBlockingQueue<World> queue = null;
+		/** the number of worlds being generated, or waiting to be */
+		private AtomicInteger pending = new AtomicInteger();
+		
+		/**
+		 * Create the supply of a configuration.
+		 * 
+		 * @param config the {@link Config} of the worlds
+		 */
+		Supply(Config config) {
+			this.config = config;
+			this.queue = new ArrayBlockingQueue<World>(WorldSupply.this.queueSize);
+		}
+		
+		/**
+		 * Generates enough worlds to fill the queue, counting the worlds
+		 * already being generated, so the queue is never overfilled.
+		 */
+		void refill() {
+			while(true) {
+				int pending = this.pending.get();
+				if(this.queue.size() + pending >= WorldSupply.this.queueSize || WorldSupply.this.pool.isShutdown()) {
+					return;
+				}
+				if(this.pending.compareAndSet(pending, pending + 1)) {
+					try {
+						WorldSupply.this.pool.execute(new Runnable() {
+							@Override
+							public void run() {
+								generate();
+							}
+						});
+					} catch(RejectedExecutionException e) {
+						// the supply has been closed
+						this.pending.decrementAndGet();
+						return;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Generates a world into the queue.
+		 */
+		private void generate() {
+			try {
+				this.queue.offer(this.config.generate(nextSeed()));
+			} finally {
+				this.pending.decrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * The settings of the worlds to supply. A setting that's {@code null}
+	 * uses the {@link WorldBuilder} default, and is a different configuration
+	 * to one that sets the default explicitly.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	public static class Config {
+		
+		/** the world's width, {@code null} for the default */
+		private Integer worldWidth = null;
+		/** the world's height, {@code null} for the default */
+		private Integer worldHeight = null;
+		/** the maximum size of a room, {@code null} for the default */
+		private Integer maxRoomSize = null;
+		/** the number of tries to place a room, {@code null} for the default */
+		private Integer roomTries = null;
+		
+		/**
+		 * Create a configuration.
+		 * 
+		 * @param worldWidth the world's width, can be {@code null}
+		 * @param worldHeight the world's height, can be {@code null}
+		 * @param maxRoomSize the maximum size of a room, can be {@code null}
+		 * @param roomTries the number of tries to place a room, can be {@code null}
+		 */
+		public Config(Integer worldWidth, Integer worldHeight, Integer maxRoomSize, Integer roomTries) {
+			this.worldWidth = worldWidth;
+			this.worldHeight = worldHeight;
+			this.maxRoomSize = maxRoomSize;
+			this.roomTries = roomTries;
+		}
+		
+		/**
+		 * Generates a world with these settings.
+		 * 
+		 * @param seed the seed of the world
+		 * 
+		 * @return the {@link World}
+		 */
+		World generate(long seed) {
+			return new WorldBuilder()
+					.setWorldWidth(this.worldWidth)
+					.setWorldHeight(this.worldHeight)
+					.setMaxRoomSize(this.maxRoomSize)
+					.setRoomTries(this.roomTries)
+					.setSeed(seed)
+					.create();
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Config)) {
+				return false;
+			}
+			Config config = (Config)other;
+			return equal(this.worldWidth, config.worldWidth) && equal(this.worldHeight, config.worldHeight) &&
+					equal(this.maxRoomSize, config.maxRoomSize) && equal(this.roomTries, config.roomTries);
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = 17;
+			hash = hash * 31 + (this.worldWidth == null ? 0 : this.worldWidth);
+			hash = hash * 31 + (this.worldHeight == null ? 0 : this.worldHeight);
+			hash = hash * 31 + (this.maxRoomSize == null ? 0 : this.maxRoomSize);
+			hash = hash * 31 + (this.roomTries == null ? 0 : this.roomTries);
+			return hash;
+		}
+		
+		@Override
+		public String toString() {
+			return "worldWidth=" + this.worldWidth + ", worldHeight=" + this.worldHeight +
+					", maxRoomSize=" + this.maxRoomSize + ", roomTries=" + this.roomTries;
+		}
+		
+		/**
+		 * Compares two settings, either of which can be {@code null}.
+		 * 
+		 * @param a one setting
+		 * @param b the other setting
+		 * 
+		 * @return whether the settings are the same
+		 */
+		private static boolean equal(Integer a, Integer b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+	
+	/**
+	 * The key of a world in the cache, its configuration and seed.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private static class Key {
+		
+		/** the configuration of the world */
+		private Config config = null;
+		/** the seed of the world */
+		private long seed = 0;
+		
+		/**
+		 * Create a key.
+		 * 
+		 * @param config the {@link Config} of the world
+		 * @param seed the seed of the world
+		 */
+		Key(Config config, long seed) {
+			this.config = config;
+			this.seed = seed;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key)other;
+			return this.seed == key.seed && this.config.equals(key.config);
+		}
+		
+		@Override
+		public int hashCode() {
+			return this.config.hashCode() * 31 + (int)(this.seed ^ (this.seed >>> 32));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package ealanhill.events;
+
+import ealanhill.objects.World;
+
+/**
+ * Something that happened while a {@link World} was being generated, along
+ * with the rectangle of tiles it changed. The world is the one being
+ * generated, so its tiles can be read as they're generated.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class GenerationEvent {
+	
+	/**
+	 * The things that can happen while a world is being generated.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	public enum Type {
+		/** the world has been filled with walls, the rectangle is the whole world */
+		STARTED,
+		/** a room has been carved, the rectangle is the room */
+		ROOM_PLACED,
+		/** a straight run of corridor has been carved, the rectangle is one tile wide or high */
+		CORRIDOR_CARVED,
+		/** a closed door has been inserted, the rectangle is the door's tile */
+		DOOR_INSERTED
+	}
+	
+	/** what happened */
+	private Type type = null;
+	/** the world being generated */
+	private World world = null;
+	/** the left most x coordinate of the tiles changed */
+	private int x = 0;
+	/** the top most y coordinate of the tiles changed */
+	private int y = 0;
+	/** how wide the tiles changed are */
+	private int width = 0;
+	/** how high the tiles changed are */
+	private int height = 0;
+	
+	/**
+	 * Create an event.
+	 * 
+	 * @param type what happened
+	 * @param world the {@link World} being generated
+	 * @param x the left most x coordinate of the tiles changed
+	 * @param y the top most y coordinate of the tiles changed
+	 * @param width how wide the tiles changed are
+	 * @param height how high the tiles changed are
+	 */
+	public GenerationEvent(Type type, World world, int x, int y, int width, int height) {
+		this.type = type;
+		this.world = world;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Get what happened
+	 * 
+	 * @return
+	 */
+	public Type getType() {
+		return this.type;
+	}
+	
+	/**
+	 * Get the world being generated
+	 * 
+	 * @return
+	 */
+	public World getWorld() {
+		return this.world;
+	}
+	
+	/**
+	 * Get the left most x coordinate of the tiles changed
+	 * 
+	 * @return
+	 */
+	public int getX() {
+		return this.x;
+	}
+	
+	/**
+	 * Get the top most y coordinate of the tiles changed
+	 * 
+	 * @return
+	 */
+	public int getY() {
+		return this.y;
+	}
+	
+	/**
+	 * Get how wide the tiles changed are
+	 * 
+	 * @return
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+	
+	/**
+	 * Get how high the tiles changed are
+	 * 
+	 * @return
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+	
+	@Override
+	public String toString() {
+		return this.type + " " + this.x + "," + this.y + " " + this.width + "x" + this.height;
+	}
+}
@@ -0,0 +1,44 @@
+package ealanhill.events;
+
+/**
+ * Receives the events of a world as it's generated. The methods are called
+ * one at a time, in order, on a thread of the publisher's: first
+ * {@link #onSubscribe(GenerationSubscription)}, then {@link #onNext(GenerationEvent)}
+ * once for each event requested, then either {@link #onComplete()} or
+ * {@link #onError(Throwable)} unless the subscription is cancelled.
+ * 
+ * The methods match those of {@code java.util.concurrent.Flow.Subscriber},
+ * so a subscriber can easily be adapted to one.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface GenerationSubscriber {
+	
+	/**
+	 * Called before any events, no events are sent until they're requested
+	 * from the subscription.
+	 * 
+	 * @param subscription the {@link GenerationSubscription} to request events from
+	 */
+	void onSubscribe(GenerationSubscription subscription);
+	
+	/**
+	 * Called with the next event of the generation.
+	 * 
+	 * @param event the {@link GenerationEvent}
+	 */
+	void onNext(GenerationEvent event);
+	
+	/**
+	 * Called if the generation failed, no more events are sent.
+	 * 
+	 * @param error why the generation failed
+	 */
+	void onError(Throwable error);
+	
+	/**
+	 * Called once the world has been generated and every event has been sent.
+	 */
+	void onComplete();
+}
@@ -0,0 +1,25 @@
+package ealanhill.events;
+
+/**
+ * Controls how many events a {@link GenerationSubscriber} is sent. The
+ * generation only gets a bounded number of events ahead of what has been
+ * requested, after which it waits for the subscriber to catch up.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface GenerationSubscription {
+	
+	/**
+	 * Requests more events, on top of any already requested but not sent.
+	 * 
+	 * @param count the number of events, must be positive, {@link Long#MAX_VALUE}
+	 * for every event
+	 */
+	void request(long count);
+	
+	/**
+	 * Stops sending events and stops the generation.
+	 */
+	void cancel();
+}
@@ -0,0 +1,231 @@
+package ealanhill.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import ealanhill.objects.GridRoomIndex;
+import ealanhill.objects.Room;
+import ealanhill.objects.Tile;
+import ealanhill.objects.World;
+
+/**
+ * A read only world whose tiles are read straight from a memory mapped
+ * {@link WorldFile}, rather than being copied onto the heap. Reading along
+ * a row continues from the last run read, so scanning row by row only
+ * decodes each run once. It can be read from any number of threads at once,
+ * each thread carrying on from the last run it read.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class MappedWorld extends World {
+	
+	/** the most tiles a world can have, as many as fit in an array */
+	private static final long MAX_TILES = Integer.MAX_VALUE - 8;
+	/** the number of kinds of tile, one more than the largest ordinal */
+	private static final int TILE_COUNT = Tile.values().length;
+	
+	/** the mapped file */
+	private ByteBuffer buffer = null;
+	/** the file offset of the row table */
+	private int rowTable = 0;
+	/** the last run read by each thread */
+	private ThreadLocal<Cursor> cursor = ThreadLocal.withInitial(Cursor::new);
+	
+	/**
+	 * Create a world from a mapped {@link WorldFile}, checking the file is a
+	 * world before anything is read from it or allocated for it.
+	 * 
+	 * @param buffer the mapped file
+	 * 
+	 * @return the {@link MappedWorld}
+	 * 
+	 * @throws IOException if the file isn't a world
+	 */
+	static MappedWorld open(ByteBuffer buffer) throws IOException {
+		if(buffer.limit() < WorldFile.HEADER_SIZE || buffer.getInt(0) != WorldFile.MAGIC) {
+			throw new IOException("Not a world file");
+		}
+		
+		if(buffer.getInt(4) != WorldFile.VERSION) {
+			throw new IOException("Unsupported world file version " + buffer.getInt(4));
+		}
+		
+		// the world's tiles must fit in a single array once read onto the heap
+		int width = buffer.getInt(8);
+		int height = buffer.getInt(12);
+		if(width <= 0 || height <= 0 || (long)width * height > MAX_TILES) {
+			throw new IOException("Not a world file, the world can't be " + width + " by " + height);
+		}
+		
+		// the rooms and the row table must be within the file, and every row
+		// must start within it, after the row before
+		int roomCount = buffer.getInt(25);
+		long rowTable = WorldFile.HEADER_SIZE + (long)WorldFile.ROOM_SIZE * roomCount;
+		long tilesStart = rowTable + 4L * (height + 1);
+		if(roomCount < 0 || tilesStart > buffer.limit()) {
+			throw new IOException("Not a world file, it ends before its rooms and rows");
+		}
+		
+		long previous = tilesStart;
+		for(int y = 0; y <= height; y++) {
+			int offset = buffer.getInt((int)rowTable + 4 * y);
+			if(offset < previous || offset > buffer.limit()) {
+				throw new IOException("Not a world file, row " + y + " is outside of the file");
+			}
+			previous = offset;
+		}
+		
+		return new MappedWorld(buffer, width, height, roomCount);
+	}
+	
+	/**
+	 * Create a world from a mapped {@link WorldFile} whose header has been checked.
+	 * 
+	 * @param buffer the mapped file
+	 * @param width the width of the world
+	 * @param height the height of the world
+	 * @param roomCount the number of rooms
+	 */
+	private MappedWorld(ByteBuffer buffer, int width, int height, int roomCount) {
+		super(width, height, new GridRoomIndex(width, height));
+		this.buffer = buffer;
+		
+		if((buffer.get(16) & WorldFile.FLAG_SEED) != 0) {
+			setSeed(buffer.getLong(17));
+		}
+		
+		// the rooms are small, so read them all in now
+		int position = WorldFile.HEADER_SIZE;
+		for(int i = 0; i < roomCount; i++) {
+			addRoom(new Room(buffer.getInt(position), buffer.getInt(position + 4),
+					buffer.getInt(position + 8), buffer.getInt(position + 12)));
+			position += WorldFile.ROOM_SIZE;
+		}
+		this.rowTable = position;
+	}
+	
+	/**
+	 * Get the tile at the given coordinates, decoding the runs of its row
+	 * from the file.
+	 * 
+	 * @throws UncheckedIOException if a run of the row is corrupt
+	 */
+	@Override
+	public Tile getTile(int x, int y) {
+		// ensure the coordinates are within the bounds
+		// of the world
+		if(x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
+			return Tile.Bounds;
+		}
+		
+		// the tile is in the last run read
+		Cursor cursor = this.cursor.get();
+		if(y == cursor.row && x >= cursor.runStart && x < cursor.runEnd) {
+			return cursor.tile;
+		}
+		
+		// carry on from the last run if we're further along the same row,
+		// otherwise start from the beginning of the row
+		int runStart = 0;
+		int position = 0;
+		if(y == cursor.row && x >= cursor.runEnd) {
+			runStart = cursor.runEnd;
+			position = cursor.next;
+		} else {
+			position = this.buffer.getInt(this.rowTable + 4 * y);
+		}
+		
+		// the runs of a row end where the next row starts
+		int rowEnd = this.buffer.getInt(this.rowTable + 4 * (y + 1));
+		while(true) {
+			// decode the varint of the run, which can't go past the row
+			long run = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if(position >= rowEnd || shift > 35) {
+					throw corrupt(y, "ends part way through a run");
+				}
+				b = this.buffer.get(position++);
+				run |= (long)(b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			
+			// a run must cover at least one tile and stay within the row
+			long length = run >>> WorldFile.ORDINAL_BITS;
+			int ordinal = (int)(run & WorldFile.ORDINAL_MASK);
+			if(length == 0 || runStart + length > getWidth()) {
+				throw corrupt(y, "has a run of " + length + " tiles from " + runStart);
+			}
+			if(ordinal >= TILE_COUNT) {
+				throw corrupt(y, "has a tile with ordinal " + ordinal);
+			}
+			
+			int runEnd = runStart + (int)length;
+			if(x < runEnd) {
+				cursor.row = y;
+				cursor.runStart = runStart;
+				cursor.runEnd = runEnd;
+				cursor.tile = Tile.fromOrdinal(ordinal);
+				cursor.next = position;
+				return cursor.tile;
+			}
+			runStart = runEnd;
+		}
+	}
+	
+	/**
+	 * Creates the exception thrown when a row of the file is corrupt.
+	 * 
+	 * @param y the y coordinate of the row
+	 * @param problem what's wrong with the row
+	 * 
+	 * @return the exception
+	 */
+	private static UncheckedIOException corrupt(int y, String problem) {
+		return new UncheckedIOException(new IOException("Not a world file, row " + y + " " + problem));
+	}
+	
+	/**
+	 * A mapped world is read only.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void insertTile(int x, int y, Tile tile) {
+		throw new UnsupportedOperationException("A mapped world is read only");
+	}
+	
+	/**
+	 * A mapped world is read only.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean insertRoom(Room roomToAdd) {
+		throw new UnsupportedOperationException("A mapped world is read only");
+	}
+	
+	/**
+	 * The last run read by a thread. Each thread has its own, so it's
+	 * changed in place rather than replaced.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private static class Cursor {
+		
+		/** the row of the run, -1 if no tile has been read */
+		private int row = -1;
+		/** the x coordinate the run starts at */
+		private int runStart = 0;
+		/** the x coordinate just past the end of the run */
+		private int runEnd = 0;
+		/** the tile of the run */
+		private Tile tile = null;
+		/** the file offset of the run after it */
+		private int next = 0;
+	}
+}
@@ -0,0 +1,45 @@
+package ealanhill.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import ealanhill.objects.World;
+
+/**
+ * Writes a {@link World} as text, one line per row using the
+ * same characters the world is displayed with.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class TextWorldWriter {
+	
+	/**
+	 * Private constructor, the class only has static methods
+	 */
+	private TextWorldWriter() {
+	
+	}
+	
+	/**
+	 * Writes the world, row by row. The writer is not flushed or closed.
+	 * 
+	 * @param world the {@link World} to write
+	 * @param writer the {@link Writer} to write to
+	 * 
+	 * @throws IOException if the world couldn't be written
+	 */
+	public static void write(World world, Writer writer) throws IOException {
+		// build each row up in a buffer so it's written in one go,
+		// with room for the line separator at the end
+		char[] row = new char[world.getWidth() + 1];
+		row[world.getWidth()] = '\n';
+		
+		for(int y = 0; y < world.getHeight(); y++) {
+			for(int x = 0; x < world.getWidth(); x++) {
+				row[x] = world.getTile(x, y).getGlyph();
+			}
+			writer.write(row);
+		}
+	}
+}
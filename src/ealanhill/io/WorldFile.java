@@ -0,0 +1,336 @@
+package ealanhill.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ealanhill.objects.Room;
+import ealanhill.objects.Tile;
+import ealanhill.objects.World;
+
+/**
+ * Reads and writes worlds in a compact binary format. All values are big-endian.
+ * <pre>
+ * int     magic, "RLMZ"
+ * int     version, currently 1
+ * int     width
+ * int     height
+ * byte    flags, bit 0 is set if the world has a seed
+ * long    seed, 0 if the world has no seed
+ * int     number of rooms
+ * int[4]  x, y, width and height of each room
+ * int     file offset of each row's tiles, plus the offset of the end of the last row
+ * varint  runs of tiles, row by row, each run is (length &lt;&lt; 3 | tile ordinal)
+ * </pre>
+ * Each row is run-length encoded on its own, so a single row can be decoded
+ * without reading the rows before it. This is what allows {@link MappedWorld}
+ * to read tiles straight from the file.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class WorldFile {
+	
+	/** identifies the file as a world, "RLMZ" */
+	public static final int MAGIC = 0x524C4D5A;
+	/** the version of the format written */
+	public static final int VERSION = 1;
+	
+	/** the flag set if the world has a seed */
+	static final int FLAG_SEED = 1;
+	/** the number of bits of a run holding the tile ordinal */
+	static final int ORDINAL_BITS = 3;
+	/** the mask of the bits of a run holding the tile ordinal */
+	static final int ORDINAL_MASK = (1 << ORDINAL_BITS) - 1;
+	/** the number of bytes before the rooms */
+	static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 1 + 8 + 4;
+	/** the number of bytes each room takes */
+	static final int ROOM_SIZE = 4 * 4;
+	
+	/**
+	 * Private constructor, the class only has static methods
+	 */
+	private WorldFile() {
+	
+	}
+	
+	/**
+	 * Writes a world to a file, replacing the file if it exists.
+	 * 
+	 * @param world the {@link World} to write
+	 * @param path the file to write to
+	 * 
+	 * @throws IOException if the world couldn't be written, or would be
+	 * too large to map
+	 */
+	public static void write(World world, Path path) throws IOException {
+		int width = world.getWidth();
+		int height = world.getHeight();
+		long rowTableStart = HEADER_SIZE + (long)ROOM_SIZE * world.getRooms().size();
+		long tilesStart = rowTableStart + 4L * (height + 1);
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			// the header and the rooms
+			ByteBuffer header = ByteBuffer.allocate(checkOffset(rowTableStart));
+			putHeader(world, header);
+			header.flip();
+			writeFully(channel, header, 0);
+			
+			// the tiles, remembering where each row starts; a row can't take
+			// more than 5 bytes per tile, the most a varint of a run can take
+			ByteBuffer rowTable = ByteBuffer.allocate(4 * (height + 1));
+			ByteBuffer row = ByteBuffer.allocate(5 * Math.max(1, width));
+			long position = tilesStart;
+			for(int y = 0; y < height; y++) {
+				rowTable.putInt(checkOffset(position));
+				
+				row.clear();
+				putRow(world, y, row);
+				row.flip();
+				position += writeFully(channel, row, position);
+			}
+			rowTable.putInt(checkOffset(position));
+			rowTable.flip();
+			writeFully(channel, rowTable, rowTableStart);
+		}
+	}
+	
+	/**
+	 * Reads a world from a file into memory.
+	 * 
+	 * @param path the file to read from
+	 * 
+	 * @return the {@link World}
+	 * 
+	 * @throws IOException if the file couldn't be read or isn't a world
+	 */
+	public static World read(Path path) throws IOException {
+		return copy(map(path));
+	}
+	
+	/**
+	 * Encodes a world into memory in the same format as {@link #write(World, Path)},
+	 * for holding a world that isn't being used in far less memory than the
+	 * world itself takes.
+	 * 
+	 * @param world the {@link World} to encode
+	 * 
+	 * @return the encoded world
+	 * 
+	 * @throws IOException if the world would be too large to encode
+	 */
+	public static byte[] encode(World world) throws IOException {
+		int width = world.getWidth();
+		int height = world.getHeight();
+		int rowTableStart = checkOffset(HEADER_SIZE + (long)ROOM_SIZE * world.getRooms().size());
+		int tilesStart = checkOffset(rowTableStart + 4L * (height + 1));
+		
+		// the tiles first, as the size of the encoding isn't known until
+		// they're encoded, growing the buffer whenever a row might not fit
+		ByteBuffer rowTable = ByteBuffer.allocate(4 * (height + 1));
+		ByteBuffer rows = ByteBuffer.allocate(Math.max(64, 5 * width));
+		for(int y = 0; y < height; y++) {
+			rowTable.putInt(checkOffset((long)tilesStart + rows.position()));
+			if(rows.remaining() < 5 * width) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(rows.capacity() * 2, rows.position() + 5 * width));
+				rows.flip();
+				grown.put(rows);
+				rows = grown;
+			}
+			putRow(world, y, rows);
+		}
+		rowTable.putInt(checkOffset((long)tilesStart + rows.position()));
+		
+		ByteBuffer encoded = ByteBuffer.allocate(checkOffset((long)tilesStart + rows.position()));
+		putHeader(world, encoded);
+		encoded.put(rowTable.array());
+		encoded.put(rows.array(), 0, rows.position());
+		return encoded.array();
+	}
+	
+	/**
+	 * Decodes a world encoded by {@link #encode(World)}.
+	 * 
+	 * @param encoded the encoded world
+	 * 
+	 * @return the {@link World}
+	 * 
+	 * @throws IOException if the bytes aren't a world
+	 */
+	public static World decode(byte[] encoded) throws IOException {
+		return copy(MappedWorld.open(ByteBuffer.wrap(encoded)));
+	}
+	
+	/**
+	 * Maps a world file into memory, the tiles are read straight from the
+	 * file as they're needed rather than being copied onto the heap.
+	 * 
+	 * @param path the file to map
+	 * 
+	 * @return a read only {@link MappedWorld}
+	 * 
+	 * @throws IOException if the file couldn't be mapped or isn't a world
+	 */
+	public static MappedWorld map(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The world file is too large to map: " + path);
+			}
+			
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return MappedWorld.open(buffer);
+		}
+	}
+	
+	/**
+	 * Copies a mapped world onto the heap, a run of tiles at a time.
+	 * 
+	 * @param mapped the {@link MappedWorld} to copy
+	 * 
+	 * @return the {@link World}
+	 * 
+	 * @throws IOException if a row of the file is corrupt
+	 */
+	private static World copy(MappedWorld mapped) throws IOException {
+		try {
+			return copyTiles(mapped);
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Copies the tiles and rooms of a mapped world onto the heap.
+	 * 
+	 * @param mapped the {@link MappedWorld} to copy
+	 * 
+	 * @return the {@link World}
+	 */
+	private static World copyTiles(MappedWorld mapped) {
+		World world = new World(mapped.getWidth(), mapped.getHeight());
+		for(int y = 0; y < mapped.getHeight(); y++) {
+			int x = 0;
+			while(x < mapped.getWidth()) {
+				// every tile of a new world is a floor, so only the other runs are filled
+				Tile tile = mapped.getTile(x, y);
+				int end = x + 1;
+				while(end < mapped.getWidth() && mapped.getTile(end, y) == tile) {
+					end++;
+				}
+				
+				if(tile != Tile.Floor) {
+					world.fillRow(y, x, end, tile);
+				}
+				x = end;
+			}
+		}
+		
+		for(Room room : mapped.getRooms()) {
+			world.addRoom(room);
+		}
+		world.setSeed(mapped.getSeed());
+		
+		return world;
+	}
+	
+	/**
+	 * Puts the header and the rooms of a world.
+	 * 
+	 * @param world the {@link World} being written
+	 * @param buffer the buffer to put them in
+	 */
+	private static void putHeader(World world, ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(world.getWidth());
+		buffer.putInt(world.getHeight());
+		buffer.put((byte)(world.getSeed() == null ? 0 : FLAG_SEED));
+		buffer.putLong(world.getSeed() == null ? 0 : world.getSeed());
+		buffer.putInt(world.getRooms().size());
+		for(Room room : world.getRooms()) {
+			buffer.putInt(room.x);
+			buffer.putInt(room.y);
+			buffer.putInt(room.width);
+			buffer.putInt(room.height);
+		}
+	}
+	
+	/**
+	 * Puts the runs of tiles of a row, which can take up to 5 bytes per tile.
+	 * 
+	 * @param world the {@link World} being written
+	 * @param y the y coordinate of the row
+	 * @param buffer the buffer to put them in
+	 */
+	private static void putRow(World world, int y, ByteBuffer buffer) {
+		int width = world.getWidth();
+		int x = 0;
+		while(x < width) {
+			// find how far the run of this tile goes
+			Tile tile = world.getTile(x, y);
+			int end = x + 1;
+			while(end < width && world.getTile(end, y) == tile) {
+				end++;
+			}
+			
+			putVarint(buffer, ((long)(end - x) << ORDINAL_BITS) | tile.ordinal());
+			x = end;
+		}
+	}
+	
+	/**
+	 * Writes a varint, seven bits at a time with the high bit set on every
+	 * byte except the last.
+	 * 
+	 * @param buffer the buffer to write to
+	 * @param value the value, which must not be negative
+	 */
+	static void putVarint(ByteBuffer buffer, long value) {
+		while((value & ~0x7FL) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+	
+	/**
+	 * Writes all of a buffer to a channel at the given position.
+	 * 
+	 * @param channel the channel to write to
+	 * @param buffer the buffer to write
+	 * @param position the position in the channel to write at
+	 * 
+	 * @return the number of bytes written
+	 * 
+	 * @throws IOException if the buffer couldn't be written
+	 */
+	private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int written = 0;
+		while(buffer.hasRemaining()) {
+			written += channel.write(buffer, position + written);
+		}
+		return written;
+	}
+	
+	/**
+	 * Ensures a file offset can be stored in the row table.
+	 * 
+	 * @param position the file offset
+	 * 
+	 * @return the file offset as an int
+	 * 
+	 * @throws IOException if the offset is too large to map
+	 */
+	private static int checkOffset(long position) throws IOException {
+		if(position > Integer.MAX_VALUE) {
+			throw new IOException("The world is too large to be written as a single file");
+		}
+		return (int)position;
+	}
+}
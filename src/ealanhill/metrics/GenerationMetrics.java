@@ -0,0 +1,205 @@
+package ealanhill.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The totals of the {@link GenerationStats} of every world generated,
+ * published over JMX as {@value #OBJECT_NAME}. Worlds can be generated on
+ * many threads at once, so the totals are kept in {@link LongAdder}s.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class GenerationMetrics implements GenerationMetricsMBean {
+	
+	/** the name the metrics are registered under */
+	public static final String OBJECT_NAME = "ealanhill:type=GenerationMetrics";
+	
+	/** the metrics, registered the first time they're needed */
+	private static GenerationMetrics instance = null;
+	
+	/** the number of worlds generated */
+	private final LongAdder worldsGenerated = new LongAdder();
+	/** the number of rooms the builders tried to place */
+	private final LongAdder roomTries = new LongAdder();
+	/** the number of rooms placed */
+	private final LongAdder roomsAccepted = new LongAdder();
+	/** the number of rooms rejected because they overlapped another room */
+	private final LongAdder rejectedOverlap = new LongAdder();
+	/** the number of rooms rejected because they were next to a corridor */
+	private final LongAdder rejectedCorridor = new LongAdder();
+	/** the number of times two rooms were compared for a collision */
+	private final LongAdder collisionChecks = new LongAdder();
+	/** the number of corridor tiles carved */
+	private final LongAdder corridorTiles = new LongAdder();
+	/** the time spent filling worlds with walls, in nanoseconds */
+	private final LongAdder fillNanos = new LongAdder();
+	/** the time spent placing rooms, in nanoseconds */
+	private final LongAdder placementNanos = new LongAdder();
+	/** the time spent carving corridors, in nanoseconds */
+	private final LongAdder corridorNanos = new LongAdder();
+	/** the time spent inserting doors, in nanoseconds */
+	private final LongAdder doorNanos = new LongAdder();
+	/** the longest time spent generating a single world, in nanoseconds */
+	private final AtomicLong slowestWorldNanos = new AtomicLong();
+	
+	/**
+	 * Private constructor, use {@link #getInstance()}
+	 */
+	private GenerationMetrics() {
+	
+	}
+	
+	/**
+	 * Get the metrics, registering them with the platform MBean server
+	 * the first time they're needed.
+	 * 
+	 * @return the {@link GenerationMetrics}
+	 */
+	public static synchronized GenerationMetrics getInstance() {
+		if(instance == null) {
+			instance = new GenerationMetrics();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if(!server.isRegistered(name)) {
+					server.registerMBean(instance, name);
+				}
+			} catch(JMException e) {
+				// the metrics still work without JMX, they just can't be seen remotely
+			}
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Adds the stats of a generated world to the totals.
+	 * 
+	 * @param stats the {@link GenerationStats} of the world
+	 */
+	public void record(GenerationStats stats) {
+		this.worldsGenerated.increment();
+		add(stats);
+		
+		long total = stats.getFillNanos() + stats.getPlacementNanos() + stats.getCorridorNanos() + stats.getDoorNanos();
+		this.slowestWorldNanos.accumulateAndGet(total, Math::max);
+	}
+	
+	/**
+	 * Adds the stats of a part of a world that has already been counted, such
+	 * as a chunk of a chunked world, to the totals. The part isn't counted as a
+	 * world, or compared with the slowest world.
+	 * 
+	 * @param stats the {@link GenerationStats} of the part
+	 */
+	public void recordPart(GenerationStats stats) {
+		add(stats);
+	}
+	
+	/**
+	 * Adds the counters and timers of stats to the totals.
+	 * 
+	 * @param stats the {@link GenerationStats} to add
+	 */
+	private void add(GenerationStats stats) {
+		this.roomTries.add(stats.getRoomTries());
+		this.roomsAccepted.add(stats.getRoomsAccepted());
+		this.rejectedOverlap.add(stats.getRejectedOverlap());
+		this.rejectedCorridor.add(stats.getRejectedCorridor());
+		this.collisionChecks.add(stats.getCollisionChecks());
+		this.corridorTiles.add(stats.getCorridorTiles());
+		this.fillNanos.add(stats.getFillNanos());
+		this.placementNanos.add(stats.getPlacementNanos());
+		this.corridorNanos.add(stats.getCorridorNanos());
+		this.doorNanos.add(stats.getDoorNanos());
+	}
+	
+	@Override
+	public long getWorldsGenerated() {
+		return this.worldsGenerated.sum();
+	}
+	
+	@Override
+	public long getRoomTries() {
+		return this.roomTries.sum();
+	}
+	
+	@Override
+	public long getRoomsAccepted() {
+		return this.roomsAccepted.sum();
+	}
+	
+	@Override
+	public long getRejectedOverlap() {
+		return this.rejectedOverlap.sum();
+	}
+	
+	@Override
+	public long getRejectedCorridor() {
+		return this.rejectedCorridor.sum();
+	}
+	
+	@Override
+	public double getAcceptanceRate() {
+		long tries = getRoomTries();
+		return tries == 0 ? 0 : (double)getRoomsAccepted() / tries;
+	}
+	
+	@Override
+	public long getCollisionChecks() {
+		return this.collisionChecks.sum();
+	}
+	
+	@Override
+	public long getCorridorTiles() {
+		return this.corridorTiles.sum();
+	}
+	
+	@Override
+	public double getFillMillis() {
+		return this.fillNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getPlacementMillis() {
+		return this.placementNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getCorridorMillis() {
+		return this.corridorNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getDoorMillis() {
+		return this.doorNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getSlowestWorldMillis() {
+		return this.slowestWorldNanos.get() / 1e6;
+	}
+	
+	@Override
+	public void reset() {
+		this.worldsGenerated.reset();
+		this.roomTries.reset();
+		this.roomsAccepted.reset();
+		this.rejectedOverlap.reset();
+		this.rejectedCorridor.reset();
+		this.collisionChecks.reset();
+		this.corridorTiles.reset();
+		this.fillNanos.reset();
+		this.placementNanos.reset();
+		this.corridorNanos.reset();
+		this.doorNanos.reset();
+		this.slowestWorldNanos.set(0);
+	}
+}
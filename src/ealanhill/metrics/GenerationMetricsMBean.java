@@ -0,0 +1,107 @@
+package ealanhill.metrics;
+
+/**
+ * The management interface of {@link GenerationMetrics}, the totals
+ * across every world generated since the metrics were last reset.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface GenerationMetricsMBean {
+	
+	/**
+	 * Get the number of worlds generated
+	 * 
+	 * @return
+	 */
+	long getWorldsGenerated();
+	
+	/**
+	 * Get the number of rooms the builders tried to place
+	 * 
+	 * @return
+	 */
+	long getRoomTries();
+	
+	/**
+	 * Get the number of rooms placed
+	 * 
+	 * @return
+	 */
+	long getRoomsAccepted();
+	
+	/**
+	 * Get the number of rooms rejected because they overlapped another room
+	 * 
+	 * @return
+	 */
+	long getRejectedOverlap();
+	
+	/**
+	 * Get the number of rooms rejected because they were next to a corridor
+	 * 
+	 * @return
+	 */
+	long getRejectedCorridor();
+	
+	/**
+	 * Get the fraction of room tries that placed a room
+	 * 
+	 * @return
+	 */
+	double getAcceptanceRate();
+	
+	/**
+	 * Get the number of times two rooms were compared for a collision
+	 * 
+	 * @return
+	 */
+	long getCollisionChecks();
+	
+	/**
+	 * Get the number of corridor tiles carved
+	 * 
+	 * @return
+	 */
+	long getCorridorTiles();
+	
+	/**
+	 * Get the time spent filling worlds with walls, in milliseconds
+	 * 
+	 * @return
+	 */
+	double getFillMillis();
+	
+	/**
+	 * Get the time spent placing rooms, in milliseconds
+	 * 
+	 * @return
+	 */
+	double getPlacementMillis();
+	
+	/**
+	 * Get the time spent carving corridors, in milliseconds
+	 * 
+	 * @return
+	 */
+	double getCorridorMillis();
+	
+	/**
+	 * Get the time spent inserting doors, in milliseconds
+	 * 
+	 * @return
+	 */
+	double getDoorMillis();
+	
+	/**
+	 * Get the longest time spent generating a single world, in milliseconds
+	 * 
+	 * @return
+	 */
+	double getSlowestWorldMillis();
+	
+	/**
+	 * Resets all the totals to zero.
+	 */
+	void reset();
+}
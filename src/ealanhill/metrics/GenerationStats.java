@@ -0,0 +1,244 @@
+package ealanhill.metrics;
+
+/**
+ * The counters and phase timers of a single world's generation. A stats
+ * object is only ever updated by the thread building the world, apart from
+ * the stats of a chunked world, which gain each chunk's as it's generated.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class GenerationStats {
+	
+	/** the number of rooms the builder tried to place */
+	private long roomTries = 0;
+	/** the number of rooms placed */
+	private long roomsAccepted = 0;
+	/** the number of rooms rejected because they overlapped another room */
+	private long rejectedOverlap = 0;
+	/** the number of rooms rejected because they were next to a corridor */
+	private long rejectedCorridor = 0;
+	/** the number of times two rooms were compared for a collision */
+	private long collisionChecks = 0;
+	/** the number of corridor tiles carved, counting a tile carved twice twice */
+	private long corridorTiles = 0;
+	/** the time spent filling the world with walls, in nanoseconds */
+	private long fillNanos = 0;
+	/** the time spent placing rooms, not including their corridors, in nanoseconds */
+	private long placementNanos = 0;
+	/** the time spent carving corridors, in nanoseconds */
+	private long corridorNanos = 0;
+	/** the time spent inserting doors, in nanoseconds */
+	private long doorNanos = 0;
+	
+	/**
+	 * Records an attempt to place a room.
+	 */
+	public void recordRoomTry() {
+		this.roomTries++;
+	}
+	
+	/**
+	 * Records a room being placed.
+	 */
+	public void recordAccepted() {
+		this.roomsAccepted++;
+	}
+	
+	/**
+	 * Records a room being rejected because it overlapped another room.
+	 */
+	public void recordRejectedOverlap() {
+		this.rejectedOverlap++;
+	}
+	
+	/**
+	 * Records a room being rejected because it was next to a corridor.
+	 */
+	public void recordRejectedCorridor() {
+		this.rejectedCorridor++;
+	}
+	
+	/**
+	 * Records rooms being compared for collisions.
+	 * 
+	 * @param checks the number of comparisons
+	 */
+	public void recordCollisionChecks(long checks) {
+		this.collisionChecks += checks;
+	}
+	
+	/**
+	 * Records corridor tiles being carved.
+	 * 
+	 * @param tiles the number of tiles
+	 */
+	public void recordCorridorTiles(long tiles) {
+		this.corridorTiles += tiles;
+	}
+	
+	/**
+	 * Records time spent filling the world with walls.
+	 * 
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	public void recordFill(long nanos) {
+		this.fillNanos += nanos;
+	}
+	
+	/**
+	 * Records time spent placing rooms.
+	 * 
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	public void recordPlacement(long nanos) {
+		this.placementNanos += nanos;
+	}
+	
+	/**
+	 * Records time spent carving corridors.
+	 * 
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	public void recordCorridors(long nanos) {
+		this.corridorNanos += nanos;
+	}
+	
+	/**
+	 * Records time spent inserting doors.
+	 * 
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	public void recordDoors(long nanos) {
+		this.doorNanos += nanos;
+	}
+	
+	/**
+	 * Adds the counters of another stats object to this one, the timers
+	 * are left alone since the other generation may have run alongside
+	 * this one.
+	 * 
+	 * @param other the {@link GenerationStats} to add
+	 */
+	public void addCounters(GenerationStats other) {
+		this.roomTries += other.roomTries;
+		this.roomsAccepted += other.roomsAccepted;
+		this.rejectedOverlap += other.rejectedOverlap;
+		this.rejectedCorridor += other.rejectedCorridor;
+		this.collisionChecks += other.collisionChecks;
+		this.corridorTiles += other.corridorTiles;
+	}
+	
+	/**
+	 * Adds the counters and the timers of another stats object to this one,
+	 * for a generation that ran as a part of this one.
+	 * 
+	 * @param other the {@link GenerationStats} to add
+	 */
+	public void add(GenerationStats other) {
+		addCounters(other);
+		this.fillNanos += other.fillNanos;
+		this.placementNanos += other.placementNanos;
+		this.corridorNanos += other.corridorNanos;
+		this.doorNanos += other.doorNanos;
+	}
+	
+	/**
+	 * Get the number of rooms the builder tried to place
+	 * 
+	 * @return
+	 */
+	public long getRoomTries() {
+		return this.roomTries;
+	}
+	
+	/**
+	 * Get the number of rooms placed
+	 * 
+	 * @return
+	 */
+	public long getRoomsAccepted() {
+		return this.roomsAccepted;
+	}
+	
+	/**
+	 * Get the number of rooms rejected because they overlapped another room
+	 * 
+	 * @return
+	 */
+	public long getRejectedOverlap() {
+		return this.rejectedOverlap;
+	}
+	
+	/**
+	 * Get the number of rooms rejected because they were next to a corridor
+	 * 
+	 * @return
+	 */
+	public long getRejectedCorridor() {
+		return this.rejectedCorridor;
+	}
+	
+	/**
+	 * Get the number of times two rooms were compared for a collision
+	 * 
+	 * @return
+	 */
+	public long getCollisionChecks() {
+		return this.collisionChecks;
+	}
+	
+	/**
+	 * Get the number of corridor tiles carved, counting a tile carved twice twice
+	 * 
+	 * @return
+	 */
+	public long getCorridorTiles() {
+		return this.corridorTiles;
+	}
+	
+	/**
+	 * Get the time spent filling the world with walls, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getFillNanos() {
+		return this.fillNanos;
+	}
+	
+	/**
+	 * Get the time spent placing rooms, not including their corridors, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getPlacementNanos() {
+		return this.placementNanos;
+	}
+	
+	/**
+	 * Get the time spent carving corridors, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getCorridorNanos() {
+		return this.corridorNanos;
+	}
+	
+	/**
+	 * Get the time spent inserting doors, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getDoorNanos() {
+		return this.doorNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("roomTries=%d accepted=%d rejectedOverlap=%d rejectedCorridor=%d collisionChecks=%d "
+				+ "corridorTiles=%d fill=%.3fms placement=%.3fms corridors=%.3fms doors=%.3fms",
+				this.roomTries, this.roomsAccepted, this.rejectedOverlap, this.rejectedCorridor, this.collisionChecks,
+				this.corridorTiles,
+				this.fillNanos / 1e6, this.placementNanos / 1e6, this.corridorNanos / 1e6, this.doorNanos / 1e6);
+	}
+}
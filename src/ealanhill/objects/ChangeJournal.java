@@ -0,0 +1,510 @@
+package ealanhill.objects;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the changes made to a {@link World} once it's given the journal
+ * with {@link World#setJournal(ChangeJournal)}, so the changes can be saved,
+ * replayed onto a copy of the world as it was, and undone. Only worlds that
+ * store their own tiles are recorded.
+ * 
+ * The changes are kept as batches of compact deltas, a batch being sealed at
+ * each {@link #checkpoint()}. Each entry of a batch is either a rectangle of
+ * tiles being filled or a room being added:
+ * <pre>
+ * byte    kind, 0 for a fill, 1 for a room
+ * varint  x and y, zigzag encoded as the difference from the entry before
+ * varint  width and height
+ * byte    the tile filled with, fills only
+ * varint  runs of the tiles the fill replaced, row by row, each run is (length &lt;&lt; 3 | tile ordinal), fills only
+ * </pre>
+ * Single tiles inserted one after another along a row are collapsed into a
+ * single fill, and fills that don't change any tile aren't recorded, so the
+ * journal grows with what actually changed rather than the size of the world.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class ChangeJournal {
+	
+	/** identifies the stream as a journal, "RLMJ" */
+	public static final int MAGIC = 0x524C4D4A;
+	/** the version of the format written */
+	public static final int VERSION = 1;
+	
+	/** the kind of an entry filling a rectangle of tiles */
+	private static final int FILL = 0;
+	/** the kind of an entry adding a room */
+	private static final int ROOM = 1;
+	/** the number of bits of a run holding the tile ordinal */
+	private static final int ORDINAL_BITS = 3;
+	/** the mask of the bits of a run holding the tile ordinal */
+	private static final int ORDINAL_MASK = (1 << ORDINAL_BITS) - 1;
+	
+	/** the sealed batches, one per checkpoint */
+	private List<byte[]> batches = new ArrayList<byte[]>();
+	/** the entries recorded since the last checkpoint */
+	private ByteArrayOutputStream open = new ByteArrayOutputStream();
+	/** the x coordinate of the last entry of the open batch */
+	private int lastX = 0;
+	/** the y coordinate of the last entry of the open batch */
+	private int lastY = 0;
+	/** the number of bytes of the sealed batches */
+	private long sealedSize = 0;
+	/** whether there's a fill not yet written to the open batch */
+	private boolean pending = false;
+	/** the left most x coordinate of the pending fill */
+	private int pendingX = 0;
+	/** the top most y coordinate of the pending fill */
+	private int pendingY = 0;
+	/** how wide the pending fill is */
+	private int pendingWidth = 0;
+	/** how high the pending fill is */
+	private int pendingHeight = 0;
+	/** the ordinal of the tile of the pending fill */
+	private byte pendingTile = 0;
+	/** the ordinals of the tiles the pending fill replaced, row by row */
+	private byte[] pendingOld = new byte[64];
+	
+	/**
+	 * Seals the changes recorded since the last checkpoint into a batch,
+	 * which {@link #undo(World)} undoes together.
+	 * 
+	 * @return the number of the checkpoint, which can be given to {@link #replay(World, int)}
+	 */
+	public synchronized int checkpoint() {
+		flush();
+		byte[] batch = this.open.toByteArray();
+		this.batches.add(batch);
+		this.sealedSize += batch.length;
+		this.open.reset();
+		this.lastX = 0;
+		this.lastY = 0;
+		return this.batches.size();
+	}
+	
+	/**
+	 * Get the number of checkpoints
+	 * 
+	 * @return
+	 */
+	public synchronized int getCheckpoints() {
+		return this.batches.size();
+	}
+	
+	/**
+	 * Get the number of bytes the recorded changes take.
+	 * 
+	 * @return the number of bytes
+	 */
+	public synchronized long getSize() {
+		flush();
+		return this.sealedSize + this.open.size();
+	}
+	
+	/**
+	 * Applies every recorded change to a world, which should be the world
+	 * the changes were recorded from as it was when it was given the journal.
+	 * 
+	 * @param world the {@link World} to apply the changes to
+	 */
+	public void replay(World world) {
+		List<byte[]> batches = null;
+		synchronized(this) {
+			flush();
+			batches = new ArrayList<byte[]>(this.batches);
+			batches.add(this.open.toByteArray());
+		}
+		replay(world, batches);
+	}
+	
+	/**
+	 * Applies the changes recorded up to a checkpoint to a world, which should
+	 * be the world the changes were recorded from as it was when it was given
+	 * the journal.
+	 * 
+	 * @param world the {@link World} to apply the changes to
+	 * @param checkpoint the number of the checkpoint, as returned by {@link #checkpoint()}
+	 * 
+	 * @throws IllegalArgumentException if there isn't such a checkpoint
+	 */
+	public void replay(World world, int checkpoint) {
+		List<byte[]> batches = null;
+		synchronized(this) {
+			if(checkpoint < 0 || checkpoint > this.batches.size()) {
+				throw new IllegalArgumentException("The checkpoint must be between 0 and " + this.batches.size() + ", not " + checkpoint);
+			}
+			batches = new ArrayList<byte[]>(this.batches.subList(0, checkpoint));
+		}
+		replay(world, batches);
+	}
+	
+	/**
+	 * Undoes the changes recorded since the last checkpoint, or if there are
+	 * none, the changes between the last two checkpoints and the last
+	 * checkpoint with them. The changes undone are forgotten. The world
+	 * mustn't be changed by anything else while it's being undone.
+	 * 
+	 * @param world the {@link World} the changes were recorded from
+	 * 
+	 * @return {@code true} if anything was undone, {@code false} if there was nothing to undo
+	 */
+	public boolean undo(World world) {
+		byte[] batch = null;
+		synchronized(this) {
+			flush();
+			if(this.open.size() > 0) {
+				batch = this.open.toByteArray();
+				this.open.reset();
+				this.lastX = 0;
+				this.lastY = 0;
+			} else if(!this.batches.isEmpty()) {
+				batch = this.batches.remove(this.batches.size() - 1);
+				this.sealedSize -= batch.length;
+			} else {
+				return false;
+			}
+		}
+		
+		// the undoing mustn't be recorded
+		ChangeJournal journal = world.getJournal();
+		world.setJournal(null);
+		try {
+			List<int[]> entries = decode(batch);
+			int rooms = 0;
+			for(int i = entries.size() - 1; i >= 0; i--) {
+				int[] entry = entries.get(i);
+				if(entry[0] == ROOM) {
+					rooms++;
+					continue;
+				}
+				
+				// put back the runs of tiles the fill replaced, which can go over
+				// the end of a row of the fill onto the next
+				int x = entry[1];
+				int y = entry[2];
+				int width = entry[3];
+				int offset = 0;
+				for(int run = 6; run < entry.length; run++) {
+					Tile tile = Tile.fromOrdinal(entry[run] & ORDINAL_MASK);
+					int length = entry[run] >>> ORDINAL_BITS;
+					while(length > 0) {
+						int column = offset % width;
+						int span = Math.min(length, width - column);
+						world.fillRow(y + offset / width, x + column, x + column + span, tile);
+						offset += span;
+						length -= span;
+					}
+				}
+			}
+			
+			if(rooms > 0) {
+				world.truncateRooms(world.getRooms().size() - rooms);
+			}
+		} finally {
+			world.setJournal(journal);
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the journal to a stream, every batch along with the changes
+	 * recorded since the last checkpoint. The stream isn't closed.
+	 * 
+	 * @param out the stream to write to
+	 * 
+	 * @throws IOException if the journal couldn't be written
+	 */
+	public synchronized void write(OutputStream out) throws IOException {
+		flush();
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(this.batches.size());
+		for(byte[] batch : this.batches) {
+			data.writeInt(batch.length);
+			data.write(batch);
+		}
+		data.writeInt(this.open.size());
+		this.open.writeTo(data);
+		data.flush();
+	}
+	
+	/**
+	 * Reads a journal written by {@link #write(OutputStream)}. The stream isn't closed.
+	 * 
+	 * @param in the stream to read from
+	 * 
+	 * @return the {@link ChangeJournal}
+	 * 
+	 * @throws IOException if the journal couldn't be read or the stream isn't a journal
+	 */
+	public static ChangeJournal read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if(data.readInt() != MAGIC) {
+			throw new IOException("Not a change journal");
+		}
+		
+		int version = data.readInt();
+		if(version != VERSION) {
+			throw new IOException("Unsupported change journal version " + version);
+		}
+		
+		ChangeJournal journal = new ChangeJournal();
+		int count = data.readInt();
+		for(int i = 0; i < count; i++) {
+			byte[] batch = new byte[data.readInt()];
+			data.readFully(batch);
+			journal.batches.add(batch);
+			journal.sealedSize += batch.length;
+		}
+		
+		byte[] open = new byte[data.readInt()];
+		data.readFully(open);
+		journal.open.write(open);
+		
+		// carry on the deltas from the last entry of the open batch
+		List<int[]> entries = decode(open);
+		if(!entries.isEmpty()) {
+			int[] last = entries.get(entries.size() - 1);
+			journal.lastX = last[1];
+			journal.lastY = last[2];
+		}
+		
+		return journal;
+	}
+	
+	/**
+	 * Records a rectangle of tiles about to be filled, called by the world
+	 * while it holds the locks of the rows, before it changes the tiles.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param width how wide the rectangle is
+	 * @param height how high the rectangle is
+	 * @param tile the ordinal of the tile the rectangle is filled with
+	 * @param tiles the packed tiles of the world, row by row
+	 * @param worldWidth the width of the world
+	 */
+	synchronized void tilesChanging(int x, int y, int width, int height, byte tile, byte[] tiles, int worldWidth) {
+		// a span of a row carrying on from the pending span is added to it
+		boolean carriesOn = this.pending && height == 1 && this.pendingHeight == 1 && y == this.pendingY &&
+				x == this.pendingX + this.pendingWidth && tile == this.pendingTile;
+		if(!carriesOn) {
+			flush();
+			this.pending = true;
+			this.pendingX = x;
+			this.pendingY = y;
+			this.pendingWidth = 0;
+			this.pendingHeight = height;
+			this.pendingTile = tile;
+		}
+		
+		int offset = this.pendingWidth * this.pendingHeight;
+		int size = offset + width * height;
+		if(size > this.pendingOld.length) {
+			byte[] grown = new byte[Math.max(size, this.pendingOld.length * 2)];
+			System.arraycopy(this.pendingOld, 0, grown, 0, offset);
+			this.pendingOld = grown;
+		}
+		
+		for(int row = 0; row < height; row++) {
+			System.arraycopy(tiles, (y + row) * worldWidth + x, this.pendingOld, offset + row * width, width);
+		}
+		this.pendingWidth += width;
+	}
+	
+	/**
+	 * Records a room being added to the world.
+	 * 
+	 * @param room the {@link Room} added
+	 */
+	synchronized void roomAdded(Room room) {
+		flush();
+		this.open.write(ROOM);
+		putPosition(room.x, room.y);
+		putVarint(room.width);
+		putVarint(room.height);
+	}
+	
+	/**
+	 * Writes the pending fill to the open batch, unless it didn't change any tile.
+	 */
+	private void flush() {
+		if(!this.pending) {
+			return;
+		}
+		this.pending = false;
+		
+		int size = this.pendingWidth * this.pendingHeight;
+		boolean changed = false;
+		for(int i = 0; i < size && !changed; i++) {
+			changed = this.pendingOld[i] != this.pendingTile;
+		}
+		if(!changed) {
+			return;
+		}
+		
+		this.open.write(FILL);
+		putPosition(this.pendingX, this.pendingY);
+		putVarint(this.pendingWidth);
+		putVarint(this.pendingHeight);
+		this.open.write(this.pendingTile);
+		
+		int i = 0;
+		while(i < size) {
+			// find how far the run of this tile goes
+			byte ordinal = this.pendingOld[i];
+			int end = i + 1;
+			while(end < size && this.pendingOld[end] == ordinal) {
+				end++;
+			}
+			
+			putVarint(((long)(end - i) << ORDINAL_BITS) | ordinal);
+			i = end;
+		}
+	}
+	
+	/**
+	 * Writes the position of an entry as the difference from the last entry.
+	 * 
+	 * @param x the x coordinate of the entry
+	 * @param y the y coordinate of the entry
+	 */
+	private void putPosition(int x, int y) {
+		putVarint(zigzag(x - this.lastX));
+		putVarint(zigzag(y - this.lastY));
+		this.lastX = x;
+		this.lastY = y;
+	}
+	
+	/**
+	 * Writes a varint to the open batch, seven bits at a time with the high
+	 * bit set on every byte except the last.
+	 * 
+	 * @param value the value, which must not be negative
+	 */
+	private void putVarint(long value) {
+		while((value & ~0x7FL) != 0) {
+			this.open.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.open.write((int)value);
+	}
+	
+	/**
+	 * Applies batches of changes to a world, going forwards.
+	 * 
+	 * @param world the {@link World} to apply the changes to
+	 * @param batches the batches
+	 */
+	private static void replay(World world, List<byte[]> batches) {
+		for(byte[] batch : batches) {
+			for(int[] entry : decode(batch)) {
+				if(entry[0] == ROOM) {
+					world.addRoom(new Room(entry[1], entry[2], entry[3], entry[4]));
+				} else {
+					world.fillRect(entry[1], entry[2], entry[3], entry[4], Tile.fromOrdinal(entry[5]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Decodes the entries of a batch. A fill is its kind, x, y, width, height,
+	 * tile and runs, a room is its kind, x, y, width and height.
+	 * 
+	 * @param batch the batch
+	 * 
+	 * @return the entries, in the order they were recorded
+	 */
+	private static List<int[]> decode(byte[] batch) {
+		List<int[]> entries = new ArrayList<int[]>();
+		int[] position = {0};
+		int x = 0;
+		int y = 0;
+		while(position[0] < batch.length) {
+			int kind = batch[position[0]++];
+			x += unzigzag(getVarint(batch, position));
+			y += unzigzag(getVarint(batch, position));
+			int width = (int)getVarint(batch, position);
+			int height = (int)getVarint(batch, position);
+			if(kind == ROOM) {
+				entries.add(new int[] {ROOM, x, y, width, height});
+				continue;
+			}
+			
+			int tile = batch[position[0]++];
+			List<Integer> runs = new ArrayList<Integer>();
+			long remaining = (long)width * height;
+			while(remaining > 0) {
+				long run = getVarint(batch, position);
+				runs.add((int)run);
+				remaining -= run >>> ORDINAL_BITS;
+			}
+			
+			int[] entry = new int[6 + runs.size()];
+			entry[0] = FILL;
+			entry[1] = x;
+			entry[2] = y;
+			entry[3] = width;
+			entry[4] = height;
+			entry[5] = tile;
+			for(int i = 0; i < runs.size(); i++) {
+				entry[6 + i] = runs.get(i);
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+	
+	/**
+	 * Reads a varint.
+	 * 
+	 * @param bytes the bytes to read from
+	 * @param position the position to read from, moved past the varint
+	 * 
+	 * @return the value
+	 */
+	private static long getVarint(byte[] bytes, int[] position) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+		return value;
+	}
+	
+	/**
+	 * Maps a signed value to an unsigned one, so small negative values
+	 * take as few bytes as small positive ones.
+	 * 
+	 * @param value the signed value
+	 * 
+	 * @return the unsigned value
+	 */
+	private static long zigzag(int value) {
+		return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Reverses {@link #zigzag(int)}.
+	 * 
+	 * @param value the unsigned value
+	 * 
+	 * @return the signed value
+	 */
+	private static int unzigzag(long value) {
+		return (int)(value >>> 1) ^ -(int)(value & 1);
+	}
+}
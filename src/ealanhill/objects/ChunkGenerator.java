@@ -0,0 +1,22 @@
+package ealanhill.objects;
+
+/**
+ * Generates the tiles of a single chunk of a {@link ChunkedWorld}.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface ChunkGenerator {
+	
+	/**
+	 * Generates a chunk, the same chunk coordinates must always
+	 * generate the same tiles.
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * @param chunkSize the width and height of the chunk
+	 * 
+	 * @return a {@link World} of the chunk's width and height holding its tiles
+	 */
+	World generateChunk(int chunkX, int chunkY, int chunkSize);
+}
@@ -0,0 +1,381 @@
+package ealanhill.objects;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A world split into square chunks that are generated the first time one
+ * of their tiles is needed. Only a bounded number of chunks are held at a
+ * time, the least recently used chunks are released and generated again
+ * if they are needed later. Chunks that have had tiles inserted into them
+ * are held too, up to a bound of their own, the least recently used being
+ * written to a spill directory and read back when they're needed, so the
+ * changes aren't lost and the memory taken stays the same however much of
+ * the world is changed. The spilled chunks are deleted by {@link #close()}.
+ * 
+ * Reading a tile can generate or release chunks, so the chunks are only
+ * looked up while holding the world's monitor. The tiles of a chunk are
+ * read without it.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class ChunkedWorld extends World implements AutoCloseable {
+	
+	/** the default width and height of a chunk */
+	public static final int DEFAULT_CHUNK_SIZE = 64;
+	/** the default number of unchanged chunks to hold at a time */
+	public static final int DEFAULT_MAX_CHUNKS = 64;
+	/** the default number of changed chunks to hold at a time */
+	public static final int DEFAULT_MAX_CHANGED_CHUNKS = 64;
+	
+	/** the width and height of a chunk */
+	private int chunkSize = 0;
+	/** the number of unchanged chunks to hold at a time */
+	private int maxChunks = 0;
+	/** generates the chunks as they are needed */
+	private ChunkGenerator generator = null;
+	/** the unchanged chunks, in order of least to most recently used */
+	private LinkedHashMap<Long, byte[]> chunks = null;
+	/** the number of changed chunks to hold at a time */
+	private int maxChangedChunks = 0;
+	/** the chunks that have had tiles inserted into them, in order of least to most recently used */
+	private LinkedHashMap<Long, byte[]> changedChunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+	/** where to make the directory the changed chunks are spilled to, {@code null} for the default temporary directory */
+	private Path spillParent = null;
+	/** the directory the changed chunks are spilled to, {@code null} until one is spilled */
+	private Path spillDirectory = null;
+	/** the number of chunks in the spill directory */
+	private int spilledChunks = 0;
+	/** the key of the last chunk used, so scanning a chunk doesn't look it up for every tile */
+	private long lastKey = 0;
+	/** the last chunk used, {@code null} if there isn't one */
+	private byte[] lastChunk = null;
+	
+	/**
+	 * Create a chunked world with the specified height and width.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param chunkSize the width and height of a chunk
+	 * @param maxChunks the number of unchanged chunks to hold at a time
+	 * @param generator the {@link ChunkGenerator} to generate the chunks
+	 */
+	public ChunkedWorld(int width, int height, int chunkSize, int maxChunks, ChunkGenerator generator) {
+		this(width, height, chunkSize, maxChunks, generator, DEFAULT_MAX_CHANGED_CHUNKS, null);
+	}
+	
+	/**
+	 * Create a chunked world with the specified height and width.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param chunkSize the width and height of a chunk
+	 * @param maxChunks the number of unchanged chunks to hold at a time
+	 * @param generator the {@link ChunkGenerator} to generate the chunks
+	 * @param maxChangedChunks the number of changed chunks to hold at a time
+	 * @param spillParent where to make the directory the changed chunks that
+	 * don't fit are spilled to, can be {@code null} for the default temporary directory
+	 */
+	public ChunkedWorld(int width, int height, int chunkSize, int maxChunks, ChunkGenerator generator,
+			int maxChangedChunks, Path spillParent) {
+		super(width, height, (RoomIndex)null);
+		this.chunkSize = chunkSize;
+		this.maxChunks = Math.max(1, maxChunks);
+		this.maxChangedChunks = Math.max(1, maxChangedChunks);
+		this.spillParent = spillParent;
+		this.generator = generator;
+		// an access ordered map, so the eldest entry is the least recently used chunk
+		this.chunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return size() > ChunkedWorld.this.maxChunks;
+			}
+		};
+	}
+	
+	@Override
+	public Tile getTile(int x, int y) {
+		// ensure the coordinates are within the bounds
+		// of the world
+		if(x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
+			return Tile.Bounds;
+		}
+		
+		byte[] chunk = getChunk(x / this.chunkSize, y / this.chunkSize);
+		return Tile.fromOrdinal(chunk[(y % this.chunkSize) * this.chunkSize + (x % this.chunkSize)]);
+	}
+	
+	@Override
+	public void insertTile(int x, int y, Tile tile) {
+		// ensure the values are within the bounds of the world
+		if(x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
+			return;
+		}
+		
+		int chunkX = x / this.chunkSize;
+		int chunkY = y / this.chunkSize;
+		long key = key(chunkX, chunkY);
+		synchronized(this) {
+			checkAttached();
+			byte[] chunk = getChunk(chunkX, chunkY);
+			
+			chunk[(y % this.chunkSize) * this.chunkSize + (x % this.chunkSize)] = (byte)tile.ordinal();
+			
+			// move the chunk to the changed chunks so it's spilled rather than released
+			if(this.changedChunks.get(key) == null) {
+				this.chunks.remove(key);
+				this.changedChunks.put(key, chunk);
+				spillChunks();
+			}
+		}
+		markModified(x, y, 1, 1);
+	}
+	
+	/**
+	 * Detaches the world once any tile being inserted has been inserted.
+	 */
+	@Override
+	public synchronized void detach() {
+		super.detach();
+	}
+	
+	/**
+	 * Rooms are placed by the {@link ChunkGenerator} as each chunk is
+	 * generated, so rooms can't be inserted into a chunked world.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean insertRoom(Room roomToAdd) {
+		throw new UnsupportedOperationException("Rooms can't be inserted into a chunked world");
+	}
+	
+	/**
+	 * Releases the unchanged chunks more than one chunk away from the
+	 * viewed area.
+	 */
+	@Override
+	public synchronized void viewportChanged(int left, int top, int viewWidth, int viewHeight) {
+		// determine the range of chunks to keep, one chunk beyond the viewed area
+		int minChunkX = left / this.chunkSize - 1;
+		int minChunkY = top / this.chunkSize - 1;
+		int maxChunkX = (left + viewWidth) / this.chunkSize + 1;
+		int maxChunkY = (top + viewHeight) / this.chunkSize + 1;
+		
+		Iterator<Long> keys = this.chunks.keySet().iterator();
+		while(keys.hasNext()) {
+			long key = keys.next();
+			int chunkX = (int)(key >> 32);
+			int chunkY = (int)key;
+			if(chunkX < minChunkX || chunkX > maxChunkX || chunkY < minChunkY || chunkY > maxChunkY) {
+				keys.remove();
+			}
+		}
+		
+		// the last chunk may have been released
+		this.lastChunk = null;
+	}
+	
+	/**
+	 * Get the width and height of a chunk
+	 * 
+	 * @return
+	 */
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+	
+	/**
+	 * Get the number of chunks currently held, changed or not
+	 * 
+	 * @return
+	 */
+	public synchronized int getLoadedChunks() {
+		return this.chunks.size() + this.changedChunks.size();
+	}
+	
+	/**
+	 * Get the number of changed chunks written to the spill directory
+	 * 
+	 * @return
+	 */
+	public synchronized int getSpilledChunks() {
+		return this.spilledChunks;
+	}
+	
+	/**
+	 * Deletes the spilled chunks and the spill directory. The changes in the
+	 * spilled chunks are lost, the chunks are generated again if they're needed.
+	 * 
+	 * @throws IOException if the spilled chunks couldn't be deleted
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(this.spillDirectory == null) {
+			return;
+		}
+		
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(this.spillDirectory)) {
+			for(Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(this.spillDirectory);
+		this.spillDirectory = null;
+		this.spilledChunks = 0;
+	}
+	
+	/**
+	 * Get the tiles of a chunk, generating the chunk if it isn't held.
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * 
+	 * @return the packed tiles of the chunk, stored row by row
+	 */
+	private synchronized byte[] getChunk(int chunkX, int chunkY) {
+		long key = key(chunkX, chunkY);
+		
+		// most lookups are for the same chunk as the last one
+		if(this.lastChunk != null && this.lastKey == key) {
+			return this.lastChunk;
+		}
+		
+		byte[] chunk = this.changedChunks.get(key);
+		if(chunk == null) {
+			chunk = this.chunks.get(key);
+		}
+		
+		// read the chunk back if it was changed and spilled, otherwise
+		// generate it if we don't have it
+		if(chunk == null && this.spilledChunks > 0) {
+			chunk = readSpilled(key);
+		}
+		
+		if(chunk == null) {
+			chunk = generate(chunkX, chunkY);
+			this.chunks.put(key, chunk);
+		}
+		
+		this.lastKey = key;
+		this.lastChunk = chunk;
+		return chunk;
+	}
+	
+	/**
+	 * Writes the least recently used changed chunks to the spill directory
+	 * until no more than the maximum are held.
+	 * 
+	 * @throws UncheckedIOException if a chunk couldn't be spilled
+	 */
+	private void spillChunks() {
+		Iterator<Map.Entry<Long, byte[]>> entries = this.changedChunks.entrySet().iterator();
+		while(this.changedChunks.size() > this.maxChangedChunks) {
+			Map.Entry<Long, byte[]> eldest = entries.next();
+			try {
+				if(this.spillDirectory == null) {
+					this.spillDirectory = this.spillParent == null ? Files.createTempDirectory("chunks-") :
+							Files.createTempDirectory(this.spillParent, "chunks-");
+				}
+				Files.write(spillFile(eldest.getKey()), eldest.getValue());
+			} catch(IOException e) {
+				throw new UncheckedIOException("The changed chunk couldn't be spilled", e);
+			}
+			
+			entries.remove();
+			this.spilledChunks++;
+			if(this.lastKey == eldest.getKey()) {
+				this.lastChunk = null;
+			}
+		}
+	}
+	
+	/**
+	 * Reads a changed chunk back from the spill directory, holding it as a
+	 * changed chunk again.
+	 * 
+	 * @param key the key of the chunk
+	 * 
+	 * @return the packed tiles of the chunk, or {@code null} if it wasn't spilled
+	 * 
+	 * @throws UncheckedIOException if the chunk couldn't be read
+	 */
+	private byte[] readSpilled(long key) {
+		Path file = spillFile(key);
+		if(!Files.exists(file)) {
+			return null;
+		}
+		
+		byte[] chunk = null;
+		try {
+			chunk = Files.readAllBytes(file);
+			Files.delete(file);
+		} catch(IOException e) {
+			throw new UncheckedIOException("The spilled chunk couldn't be read", e);
+		}
+		this.spilledChunks--;
+		
+		this.changedChunks.put(key, chunk);
+		spillChunks();
+		return chunk;
+	}
+	
+	/**
+	 * Get the file a changed chunk is spilled to
+	 * 
+	 * @param key the key of the chunk
+	 * 
+	 * @return the file in the spill directory
+	 */
+	private Path spillFile(long key) {
+		return this.spillDirectory.resolve((int)(key >> 32) + "_" + (int)key + ".chunk");
+	}
+	
+	/**
+	 * Generates the tiles of a chunk.
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * 
+	 * @return the packed tiles of the chunk, stored row by row
+	 */
+	private byte[] generate(int chunkX, int chunkY) {
+		World generated = this.generator.generateChunk(chunkX, chunkY, this.chunkSize);
+		
+		// take the generated world's tiles directly if they're packed the way we need
+		byte[] packed = generated.getPackedTiles();
+		if(packed != null && generated.getWidth() == this.chunkSize && generated.getHeight() == this.chunkSize) {
+			return packed;
+		}
+		
+		// otherwise copy the tiles over one at a time
+		byte[] chunk = new byte[this.chunkSize * this.chunkSize];
+		for(int y = 0; y < this.chunkSize; y++) {
+			for(int x = 0; x < this.chunkSize; x++) {
+				chunk[y * this.chunkSize + x] = (byte)generated.getTile(x, y).ordinal();
+			}
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Get the key of a chunk for the chunk maps
+	 * 
+	 * @param chunkX the x coordinate of the chunk, in chunks
+	 * @param chunkY the y coordinate of the chunk, in chunks
+	 * 
+	 * @return the key of the chunk
+	 */
+	private static long key(int chunkX, int chunkY) {
+		return ((long)chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+	}
+}
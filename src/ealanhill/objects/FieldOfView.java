@@ -0,0 +1,380 @@
+package ealanhill.objects;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * What a viewer standing on a tile of a {@link World} can see, found by
+ * recursive shadowcasting, along with every tile that has been seen so far.
+ * Only floor tiles and stairs let light through; walls, closed doors and the bounds of
+ * the world block the view but are seen themselves.
+ * 
+ * Which tiles block the view is cached in bitsets, in square blocks of tiles
+ * that are only built when the view first reaches them, and the tiles that
+ * have been seen are kept in blocks the same way. The visible tiles are kept
+ * in a bitset just big enough for the view. So the cost of working out the
+ * view depends on its radius, not on the size of the world, and unbounded
+ * worlds such as a {@link ChunkedWorld} can be viewed too.
+ * 
+ * The view is only worked out again when the viewer moves or tiles near the
+ * viewer are inserted. The field of view listens to the world until
+ * {@link #detach()} is called.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class FieldOfView implements TileListener {
+	
+	/** the default distance the viewer can see */
+	public static final int DEFAULT_RADIUS = 10;
+	
+	/** the number of bits to shift a coordinate by to get its block */
+	private static final int BLOCK_SHIFT = 6;
+	/** the width and height of a block, one long per row */
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	/** the mask of a coordinate's position within its block */
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+	/** how to turn a row and column of each octant into x and y offsets from the viewer */
+	private static final int[][] OCTANTS = {
+		{ 1,  0,  0, -1, -1,  0,  0,  1},
+		{ 0,  1, -1,  0,  0, -1,  1,  0},
+		{ 0,  1,  1,  0,  0, -1, -1,  0},
+		{ 1,  0,  0,  1, -1,  0,  0, -1}
+	};
+	
+	/** the world being viewed */
+	private World world = null;
+	/** the distance the viewer can see */
+	private int radius = DEFAULT_RADIUS;
+	/** the tiles that block the view, by block, each block has a long per row */
+	private Map<Long, long[]> opaque = new HashMap<Long, long[]>();
+	/** the tiles that have been seen, by block, each block has a long per row */
+	private Map<Long, long[]> explored = new HashMap<Long, long[]>();
+	/** the key of the last block of {@link #opaque} used */
+	private long lastOpaqueKey = 0;
+	/** the last block of {@link #opaque} used, {@code null} if there isn't one */
+	private long[] lastOpaque = null;
+	/** the key of the last block of {@link #explored} used */
+	private long lastExploredKey = 0;
+	/** the last block of {@link #explored} used, {@code null} if there isn't one */
+	private long[] lastExplored = null;
+	/** the visible tiles, row by row, starting at the top left of the view */
+	private long[] visible = null;
+	/** the number of longs of {@link #visible} per row */
+	private int visibleWords = 0;
+	/** the x coordinate of the viewer */
+	private int viewerX = 0;
+	/** the y coordinate of the viewer */
+	private int viewerY = 0;
+	/** whether the view needs to be worked out again */
+	private boolean dirty = true;
+	
+	/**
+	 * Create a field of view over a world.
+	 * 
+	 * @param world the {@link World} to view
+	 */
+	public FieldOfView(World world) {
+		this.world = world;
+		world.addTileListener(this);
+		allocateVisible();
+	}
+	
+	/**
+	 * Sets the distance the viewer can see.
+	 * 
+	 * @param radius the distance, in tiles, can be {@code null}
+	 * 
+	 * @return the {@link FieldOfView}
+	 */
+	public FieldOfView setRadius(Integer radius) {
+		// we don't want to set the radius to null, as that would
+		// cause a NullPointerException
+		if(radius != null) {
+			// grab the int value
+			this.radius = Math.max(0, radius);
+			allocateVisible();
+			this.dirty = true;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Get the distance the viewer can see
+	 * 
+	 * @return
+	 */
+	public int getRadius() {
+		return this.radius;
+	}
+	
+	/**
+	 * Moves the viewer, working out what they can see if they've moved or
+	 * the tiles around them have changed.
+	 * 
+	 * @param viewerX the x coordinate of the viewer
+	 * @param viewerY the y coordinate of the viewer
+	 * 
+	 * @return {@code true} if the view was worked out again, {@code false}
+	 * if it's the same as before
+	 */
+	public boolean update(int viewerX, int viewerY) {
+		if(!this.dirty && viewerX == this.viewerX && viewerY == this.viewerY) {
+			return false;
+		}
+		
+		this.viewerX = viewerX;
+		this.viewerY = viewerY;
+		this.dirty = false;
+		Arrays.fill(this.visible, 0L);
+		
+		// the viewer can always see where they're standing
+		see(viewerX, viewerY);
+		for(int octant = 0; octant < 8; octant++) {
+			castLight(1, 1.0, 0.0, OCTANTS[0][octant], OCTANTS[1][octant], OCTANTS[2][octant], OCTANTS[3][octant]);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get whether the viewer can currently see a tile
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return
+	 */
+	public boolean isVisible(int x, int y) {
+		int column = x - this.viewerX + this.radius;
+		int row = y - this.viewerY + this.radius;
+		if(column < 0 || row < 0 || column > 2 * this.radius || row > 2 * this.radius) {
+			return false;
+		}
+		return (this.visible[row * this.visibleWords + (column >>> 6)] & (1L << column)) != 0;
+	}
+	
+	/**
+	 * Get whether the viewer has ever seen a tile
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return
+	 */
+	public boolean isExplored(int x, int y) {
+		long key = key(x >> BLOCK_SHIFT, y >> BLOCK_SHIFT);
+		long[] block = key == this.lastExploredKey && this.lastExplored != null ?
+				this.lastExplored : this.explored.get(key);
+		return block != null && (block[y & BLOCK_MASK] & (1L << x)) != 0;
+	}
+	
+	/**
+	 * Stops the field of view listening to the world, after which it's no
+	 * longer kept up to date.
+	 */
+	public void detach() {
+		this.world.removeTileListener(this);
+	}
+	
+	/**
+	 * Forgets which of the inserted tiles block the view, and works out the
+	 * view again if any of them are within sight of the viewer.
+	 */
+	@Override
+	public void tilesChanged(World world, int x, int y, int width, int height) {
+		int minBlockX = x >> BLOCK_SHIFT;
+		int minBlockY = y >> BLOCK_SHIFT;
+		int maxBlockX = (x + width - 1) >> BLOCK_SHIFT;
+		int maxBlockY = (y + height - 1) >> BLOCK_SHIFT;
+		
+		// go through whichever is fewer, the blocks the tiles cover or the blocks we have
+		long blocks = (long)(maxBlockX - minBlockX + 1) * (maxBlockY - minBlockY + 1);
+		if(blocks <= this.opaque.size()) {
+			for(int blockY = minBlockY; blockY <= maxBlockY; blockY++) {
+				for(int blockX = minBlockX; blockX <= maxBlockX; blockX++) {
+					this.opaque.remove(key(blockX, blockY));
+				}
+			}
+		} else {
+			Iterator<Long> keys = this.opaque.keySet().iterator();
+			while(keys.hasNext()) {
+				long key = keys.next();
+				int blockX = (int)(key >> 32);
+				int blockY = (int)key;
+				if(blockX >= minBlockX && blockX <= maxBlockX && blockY >= minBlockY && blockY <= maxBlockY) {
+					keys.remove();
+				}
+			}
+		}
+		this.lastOpaque = null;
+		
+		if(x <= this.viewerX + this.radius && x + width > this.viewerX - this.radius &&
+				y <= this.viewerY + this.radius && y + height > this.viewerY - this.radius) {
+			this.dirty = true;
+		}
+	}
+	
+	/**
+	 * Lights the tiles of one octant of the view, a row at a time moving
+	 * away from the viewer. Each row is lit between two slopes; when a tile
+	 * blocks the view, the rows beyond it are lit by a recursive call up to
+	 * the edge of the tile, and this call carries on past the other edge.
+	 * 
+	 * @param row the distance of the first row to light from the viewer
+	 * @param start the slope to start lighting from
+	 * @param end the slope to stop lighting at
+	 * @param xx how a column of the octant moves along x
+	 * @param xy how a row of the octant moves along x
+	 * @param yx how a column of the octant moves along y
+	 * @param yy how a row of the octant moves along y
+	 */
+	private void castLight(int row, double start, double end, int xx, int xy, int yx, int yy) {
+		if(start < end) {
+			return;
+		}
+		
+		int radiusSquared = this.radius * this.radius;
+		double newStart = 0;
+		for(int distance = row; distance <= this.radius; distance++) {
+			boolean blocked = false;
+			int dy = -distance;
+			for(int dx = -distance; dx <= 0; dx++) {
+				int x = this.viewerX + dx * xx + dy * xy;
+				int y = this.viewerY + dx * yx + dy * yy;
+				double leftSlope = (dx - 0.5) / (dy + 0.5);
+				double rightSlope = (dx + 0.5) / (dy - 0.5);
+				
+				if(start < rightSlope) {
+					continue;
+				} else if(end > leftSlope) {
+					break;
+				}
+				
+				// light the tile if it's within the radius
+				if(dx * dx + dy * dy <= radiusSquared) {
+					see(x, y);
+				}
+				
+				boolean opaque = isOpaque(x, y);
+				if(blocked) {
+					// carry on through the tiles blocking the view
+					if(opaque) {
+						newStart = rightSlope;
+						continue;
+					}
+					blocked = false;
+					start = newStart;
+				} else if(opaque && distance < this.radius) {
+					// light the rows beyond, up to this tile
+					blocked = true;
+					castLight(distance + 1, start, leftSlope, xx, xy, yx, yy);
+					newStart = rightSlope;
+				}
+			}
+			
+			if(blocked) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Marks a tile as visible and explored.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 */
+	private void see(int x, int y) {
+		// nothing outside the world can be seen
+		if(x < 0 || x >= this.world.getWidth() || y < 0 || y >= this.world.getHeight()) {
+			return;
+		}
+		
+		int column = x - this.viewerX + this.radius;
+		int row = y - this.viewerY + this.radius;
+		this.visible[row * this.visibleWords + (column >>> 6)] |= 1L << column;
+		
+		long key = key(x >> BLOCK_SHIFT, y >> BLOCK_SHIFT);
+		if(this.lastExplored == null || key != this.lastExploredKey) {
+			this.lastExplored = this.explored.get(key);
+			if(this.lastExplored == null) {
+				this.lastExplored = new long[BLOCK_SIZE];
+				this.explored.put(key, this.lastExplored);
+			}
+			this.lastExploredKey = key;
+		}
+		this.lastExplored[y & BLOCK_MASK] |= 1L << x;
+	}
+	
+	/**
+	 * Get whether a tile blocks the view, building the tile's block of the
+	 * cache if it isn't there.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return
+	 */
+	private boolean isOpaque(int x, int y) {
+		long key = key(x >> BLOCK_SHIFT, y >> BLOCK_SHIFT);
+		if(this.lastOpaque == null || key != this.lastOpaqueKey) {
+			this.lastOpaque = this.opaque.get(key);
+			if(this.lastOpaque == null) {
+				this.lastOpaque = buildOpaqueBlock(x & ~BLOCK_MASK, y & ~BLOCK_MASK);
+				this.opaque.put(key, this.lastOpaque);
+			}
+			this.lastOpaqueKey = key;
+		}
+		return (this.lastOpaque[y & BLOCK_MASK] & (1L << x)) != 0;
+	}
+	
+	/**
+	 * Reads a block of tiles from the world, setting the bits of the tiles
+	 * that can't be seen through.
+	 * 
+	 * @param left the x coordinate of the left of the block
+	 * @param top the y coordinate of the top of the block
+	 * 
+	 * @return the block, a long per row
+	 */
+	private long[] buildOpaqueBlock(int left, int top) {
+		long[] block = new long[BLOCK_SIZE];
+		for(int row = 0; row < BLOCK_SIZE; row++) {
+			long bits = 0;
+			for(int column = 0; column < BLOCK_SIZE; column++) {
+				// stairs are on the floor, so they can be seen past
+				Tile tile = this.world.getTile(left + column, top + row);
+				if(tile != Tile.Floor && tile != Tile.StairsUp && tile != Tile.StairsDown) {
+					bits |= 1L << column;
+				}
+			}
+			block[row] = bits;
+		}
+		return block;
+	}
+	
+	/**
+	 * Sizes the visible tiles to the radius.
+	 */
+	private void allocateVisible() {
+		int size = 2 * this.radius + 1;
+		this.visibleWords = (size + 63) >>> 6;
+		this.visible = new long[size * this.visibleWords];
+	}
+	
+	/**
+	 * Get the key of a block for the block maps
+	 * 
+	 * @param blockX the x coordinate of the block, in blocks
+	 * @param blockY the y coordinate of the block, in blocks
+	 * 
+	 * @return the key of the block
+	 */
+	private static long key(int blockX, int blockY) {
+		return ((long)blockX << 32) | (blockY & 0xFFFFFFFFL);
+	}
+}
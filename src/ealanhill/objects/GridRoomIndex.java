@@ -0,0 +1,155 @@
+package ealanhill.objects;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RoomIndex} that splits the world into a uniform grid of
+ * square cells, each cell holding the rooms that touch it. A collision
+ * check only looks at the rooms in the cells the room touches. A cell holds
+ * the position and size of each room in an array of ints, so checking a
+ * cell reads one array rather than an object per room.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class GridRoomIndex implements RoomIndex {
+	
+	/** the default width and height of a cell */
+	public static final int DEFAULT_CELL_SIZE = 16;
+	
+	/** the width and height of a cell */
+	private int cellSize = 0;
+	/** the number of cells across the world */
+	private int columns = 0;
+	/** the number of cells down the world */
+	private int rows = 0;
+	/** the rooms in each cell, stored row by row as the x, y, width and height of each room; a cell's array is only created once a room touches it */
+	private int[][] cells;
+	/** the number of ints used of each cell's array */
+	private int[] cellSizes;
+	/** the number of times two rooms have been compared */
+	private long comparisons = 0;
+	
+	/**
+	 * Create an index for a world of the given width and height,
+	 * using the default cell size.
+	 * 
+	 * @param width the width of the world
+	 * @param height the height of the world
+	 */
+	public GridRoomIndex(int width, int height) {
+		this(width, height, DEFAULT_CELL_SIZE);
+	}
+	
+	/**
+	 * Create an index for a world of the given width and height.
+	 * 
+	 * @param width the width of the world
+	 * @param height the height of the world
+	 * @param cellSize the width and height of a cell, ideally close to the
+	 * maximum room size
+	 */
+	public GridRoomIndex(int width, int height, int cellSize) {
+		this.cellSize = Math.max(1, cellSize);
+		this.columns = Math.max(1, (width + this.cellSize - 1) / this.cellSize);
+		this.rows = Math.max(1, (height + this.cellSize - 1) / this.cellSize);
+		this.cells = new int[this.columns * this.rows][];
+		this.cellSizes = new int[this.columns * this.rows];
+	}
+	
+	@Override
+	public void add(Room room) {
+		// rooms touching at their edges collide, so the room covers
+		// the cells from its left edge through its right edge inclusive
+		int minColumn = column(room.x);
+		int maxColumn = column(room.x + room.width);
+		int minRow = row(room.y);
+		int maxRow = row(room.y + room.height);
+		
+		for(int row = minRow; row <= maxRow; row++) {
+			for(int column = minColumn; column <= maxColumn; column++) {
+				int index = row * this.columns + column;
+				// create the cell's array the first time a room touches it
+				int[] cell = this.cells[index];
+				int size = this.cellSizes[index];
+				if(cell == null) {
+					cell = new int[16];
+					this.cells[index] = cell;
+				} else if(size == cell.length) {
+					cell = Arrays.copyOf(cell, size * 2);
+					this.cells[index] = cell;
+				}
+				
+				cell[size] = room.x;
+				cell[size + 1] = room.y;
+				cell[size + 2] = room.width;
+				cell[size + 3] = room.height;
+				this.cellSizes[index] = size + 4;
+			}
+		}
+	}
+	
+	@Override
+	public boolean collides(Room room) {
+		int minColumn = column(room.x);
+		int maxColumn = column(room.x + room.width);
+		int minRow = row(room.y);
+		int maxRow = row(room.y + room.height);
+		
+		for(int row = minRow; row <= maxRow; row++) {
+			for(int column = minColumn; column <= maxColumn; column++) {
+				int index = row * this.columns + column;
+				int[] cell = this.cells[index];
+				if(cell == null) {
+					continue;
+				}
+				
+				// stop as soon as we find a collision
+				int size = this.cellSizes[index];
+				for(int i = 0; i < size; i += 4) {
+					this.comparisons++;
+					if(Room.collides(cell[i], cell[i + 1], cell[i + 2], cell[i + 3], room.x, room.y, room.width, room.height)) {
+						return true;
+					}
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public void clear() {
+		for(int i = 0; i < this.cells.length; i++) {
+			this.cells[i] = null;
+			this.cellSizes[i] = 0;
+		}
+	}
+	
+	@Override
+	public long getComparisons() {
+		return this.comparisons;
+	}
+	
+	/**
+	 * Get the column of the cell containing the x coordinate, clamped
+	 * to the grid.
+	 * 
+	 * @param x the x coordinate
+	 * @return the column of the cell
+	 */
+	private int column(int x) {
+		return Math.max(0, Math.min(x / this.cellSize, this.columns - 1));
+	}
+	
+	/**
+	 * Get the row of the cell containing the y coordinate, clamped
+	 * to the grid.
+	 * 
+	 * @param y the y coordinate
+	 * @return the row of the cell
+	 */
+	private int row(int y) {
+		return Math.max(0, Math.min(y / this.cellSize, this.rows - 1));
+	}
+}
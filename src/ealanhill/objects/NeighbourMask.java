@@ -0,0 +1,79 @@
+package ealanhill.objects;
+
+/**
+ * The bits of a neighbour mask, one for each of the eight tiles around a
+ * tile, set if that tile is a wall. Tiles outside of the world are never
+ * walls. The bits go clockwise from north, the order autotiling usually
+ * numbers them in.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public final class NeighbourMask {
+	
+	/** the tile above is a wall */
+	public static final int NORTH = 1;
+	/** the tile above and to the right is a wall */
+	public static final int NORTH_EAST = 1 << 1;
+	/** the tile to the right is a wall */
+	public static final int EAST = 1 << 2;
+	/** the tile below and to the right is a wall */
+	public static final int SOUTH_EAST = 1 << 3;
+	/** the tile below is a wall */
+	public static final int SOUTH = 1 << 4;
+	/** the tile below and to the left is a wall */
+	public static final int SOUTH_WEST = 1 << 5;
+	/** the tile to the left is a wall */
+	public static final int WEST = 1 << 6;
+	/** the tile above and to the left is a wall */
+	public static final int NORTH_WEST = 1 << 7;
+	
+	/** how far along x the neighbour of each bit is */
+	static final int[] STEP_X = {0, 1, 1, 1, 0, -1, -1, -1};
+	/** how far along y the neighbour of each bit is */
+	static final int[] STEP_Y = {-1, -1, 0, 1, 1, 1, 0, -1};
+	
+	/**
+	 * Private constructor, the class only has constants and static methods
+	 */
+	private NeighbourMask() {
+	
+	}
+	
+	/**
+	 * Determines whether a floor tile with this mask is part of a corridor,
+	 * with walls on both sides or both above and below.
+	 * 
+	 * @param mask the neighbour mask of a floor tile
+	 * 
+	 * @return {@code true} if the tile is part of a corridor
+	 */
+	public static boolean isCorridor(int mask) {
+		return (mask & (EAST | WEST)) == (EAST | WEST) || (mask & (NORTH | SOUTH)) == (NORTH | SOUTH);
+	}
+	
+	/**
+	 * Determines whether a wall tile with this mask is a corner, joined to
+	 * another wall above or below and to another wall on one side.
+	 * 
+	 * @param mask the neighbour mask of a wall tile
+	 * 
+	 * @return {@code true} if the wall turns a corner
+	 */
+	public static boolean isCorner(int mask) {
+		return (mask & (NORTH | SOUTH)) != 0 && (mask & (EAST | WEST)) != 0;
+	}
+	
+	/**
+	 * Get which of the four walls beside a wall tile it joins, packed into
+	 * four bits so it can index sixteen wall glyphs: 1 north, 2 east,
+	 * 4 south and 8 west.
+	 * 
+	 * @param mask the neighbour mask of a wall tile
+	 * 
+	 * @return the variant, between 0 and 15
+	 */
+	public static int wallVariant(int mask) {
+		return (mask & NORTH) | ((mask & EAST) >>> 1) | ((mask & SOUTH) >>> 2) | ((mask & WEST) >>> 3);
+	}
+}
@@ -1,18 +1,25 @@
 package ealanhill.objects;
 
-import java.awt.Rectangle;
-
 /**
- * A room in the roguelike maze. Inherits from {@link Rectangle}
- * since a room is generally rectangular in shape
+ * A room in the roguelike maze, a rectangle of floor tiles. The rooms of a
+ * {@link World} are held in its {@link RoomStore}, and a room is a view of
+ * one of them made when it's asked for, so a room can't be changed once
+ * it's made.
  * 
  * @author Alan Hill
- *
+ * 
  */
-public class Room extends Rectangle {
-
-	private static final long serialVersionUID = -1502658617382773639L;
-
+public class Room {
+	
+	/** the left most x coordinate of the room */
+	public final int x;
+	/** the top most y coordinate of the room */
+	public final int y;
+	/** how wide the room is */
+	public final int width;
+	/** how high the room is */
+	public final int height;
+	
 	/**
 	 * Constructs a new Room whose upper-left corner is specified as (x,y)
 	 * and whose width and height are specified by the arguments of the same name.
@@ -23,7 +30,66 @@ public class Room extends Rectangle {
 	 * @param height
 	 */
 	public Room(int x, int y, int width, int height) {
-		super(x, y, width, height);
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Get the left most x coordinate of the room
+	 * 
+	 * @return
+	 */
+	public int getX() {
+		return this.x;
+	}
+	
+	/**
+	 * Get the top most y coordinate of the room
+	 * 
+	 * @return
+	 */
+	public int getY() {
+		return this.y;
+	}
+	
+	/**
+	 * Get how wide the room is
+	 * 
+	 * @return
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+	
+	/**
+	 * Get how high the room is
+	 * 
+	 * @return
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+	
+	/**
+	 * Get the x coordinate of the center of the room, the tile the room's
+	 * corridors start from.
+	 * 
+	 * @return the x coordinate, rounded down
+	 */
+	public int getCenterX() {
+		return this.x + this.width / 2;
+	}
+	
+	/**
+	 * Get the y coordinate of the center of the room, the tile the room's
+	 * corridors start from.
+	 * 
+	 * @return the y coordinate, rounded down
+	 */
+	public int getCenterY() {
+		return this.y + this.height / 2;
 	}
 	
 	/**
@@ -33,12 +99,54 @@ public class Room extends Rectangle {
 	 * @return {@code true} if the rooms collide, {@code false} otherwise
 	 */
 	public boolean collides(Room r) {
+		return collides(this.x, this.y, this.width, this.height, r.x, r.y, r.width, r.height);
+	}
+	
+	/**
+	 * Determines whether or not two rectangles collide, as rooms do.
+	 * 
+	 * @param x the left most x coordinate of one rectangle
+	 * @param y the top most y coordinate of one rectangle
+	 * @param width how wide one rectangle is
+	 * @param height how high one rectangle is
+	 * @param otherX the left most x coordinate of the other rectangle
+	 * @param otherY the top most y coordinate of the other rectangle
+	 * @param otherWidth how wide the other rectangle is
+	 * @param otherHeight how high the other rectangle is
+	 * 
+	 * @return {@code true} if the rectangles collide, {@code false} otherwise
+	 */
+	public static boolean collides(int x, int y, int width, int height, int otherX, int otherY, int otherWidth, int otherHeight) {
 		// the rooms collide if any of their edges
 		// fall within each other
-		return !(this.x > r.x + r.width ||
-				 this.x + this.width < r.x ||
-				 this.y > r.y + r.height ||
-				 this.y + this.height < r.y
+		return !(x > otherX + otherWidth ||
+				 x + width < otherX ||
+				 y > otherY + otherHeight ||
+				 y + height < otherY
 				);
 	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Room)) {
+			return false;
+		}
+		Room room = (Room)other;
+		return this.x == room.x && this.y == room.y && this.width == room.width && this.height == room.height;
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = 17;
+		hash = hash * 31 + this.x;
+		hash = hash * 31 + this.y;
+		hash = hash * 31 + this.width;
+		hash = hash * 31 + this.height;
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return "Room[x=" + this.x + ", y=" + this.y + ", width=" + this.width + ", height=" + this.height + "]";
+	}
 }
@@ -0,0 +1,375 @@
+package ealanhill.objects;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A graph joining each {@link Room} to its nearest neighbouring rooms, by
+ * the distance between their centers. The neighbours are found through a
+ * uniform grid of the centers, so building the graph only looks at the
+ * rooms close to each room rather than every pair of rooms.
+ * 
+ * The edges are sorted from shortest to longest, and the graph always
+ * connects every room, so its minimum spanning tree joins all the rooms
+ * with the least total corridor length.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class RoomGraph {
+	
+	/** the default number of nearest neighbours each room is joined to */
+	public static final int DEFAULT_NEIGHBOURS = 6;
+	
+	/** the x coordinates of the centers of the rooms */
+	private int[] centerX = null;
+	/** the y coordinates of the centers of the rooms */
+	private int[] centerY = null;
+	/** the room each edge starts from, the lower index of the two rooms */
+	private int[] edgeFrom = null;
+	/** the room each edge goes to, the higher index of the two rooms */
+	private int[] edgeTo = null;
+	/** the number of edges */
+	private int edgeCount = 0;
+	/** whether each edge is in the minimum spanning tree */
+	private boolean[] spanning = null;
+	
+	/**
+	 * Create a graph joining each room to its nearest neighbours. If that
+	 * leaves the rooms in separate groups, more neighbours are joined until
+	 * every room is connected.
+	 * 
+	 * @param rooms the {@link Room}s to join
+	 * @param neighbours the number of nearest neighbours to join each room to
+	 */
+	public RoomGraph(List<Room> rooms, int neighbours) {
+		int count = rooms.size();
+		this.centerX = new int[count];
+		this.centerY = new int[count];
+		for(int i = 0; i < count; i++) {
+			// the same centers the corridors are carved between
+			Room room = rooms.get(i);
+			this.centerX[i] = room.getCenterX();
+			this.centerY[i] = room.getCenterY();
+		}
+		
+		join(neighbours);
+	}
+	
+	/**
+	 * Create a graph joining each room of a store to its nearest neighbours,
+	 * the rooms being known by their ids.
+	 * 
+	 * @param rooms the {@link RoomStore} of the rooms to join
+	 * @param neighbours the number of nearest neighbours to join each room to
+	 * 
+	 * @see #RoomGraph(List, int)
+	 */
+	public RoomGraph(RoomStore rooms, int neighbours) {
+		int count = rooms.size();
+		this.centerX = new int[count];
+		this.centerY = new int[count];
+		for(int i = 0; i < count; i++) {
+			this.centerX[i] = rooms.getCenterX(i);
+			this.centerY[i] = rooms.getCenterY(i);
+		}
+		
+		join(neighbours);
+	}
+	
+	/**
+	 * Joins each room to its nearest neighbours, joining more neighbours
+	 * until every room is connected.
+	 * 
+	 * @param neighbours the number of nearest neighbours to join each room to
+	 */
+	private void join(int neighbours) {
+		int count = this.centerX.length;
+		
+		// groups of rooms far from the rest can leave the graph split, in
+		// which case join more neighbours, up to every other room
+		int k = Math.max(1, neighbours);
+		while(true) {
+			findNeighbours(Math.min(k, count - 1));
+			if(findSpanningTree() || k >= count - 1) {
+				break;
+			}
+			k *= 2;
+		}
+	}
+	
+	/**
+	 * Get the number of edges in the graph
+	 * 
+	 * @return
+	 */
+	public int getEdgeCount() {
+		return this.edgeCount;
+	}
+	
+	/**
+	 * Get the index of the room an edge starts from
+	 * 
+	 * @param edge the index of the edge, edges are sorted from shortest to longest
+	 * 
+	 * @return
+	 */
+	public int getFrom(int edge) {
+		return this.edgeFrom[edge];
+	}
+	
+	/**
+	 * Get the index of the room an edge goes to
+	 * 
+	 * @param edge the index of the edge, edges are sorted from shortest to longest
+	 * 
+	 * @return
+	 */
+	public int getTo(int edge) {
+		return this.edgeTo[edge];
+	}
+	
+	/**
+	 * Get whether an edge is part of the minimum spanning tree of the graph
+	 * 
+	 * @param edge the index of the edge
+	 * 
+	 * @return
+	 */
+	public boolean isSpanning(int edge) {
+		return this.spanning[edge];
+	}
+	
+	/**
+	 * Finds the nearest neighbours of every room, replacing the edges of the
+	 * graph. The centers are bucketed into a grid with about one room per cell,
+	 * then each room searches rings of cells outwards until no closer room can
+	 * be found.
+	 * 
+	 * @param neighbours the number of nearest neighbours to join each room to
+	 */
+	private void findNeighbours(int neighbours) {
+		int count = this.centerX.length;
+		this.edgeCount = 0;
+		if(count < 2 || neighbours < 1) {
+			this.edgeFrom = new int[0];
+			this.edgeTo = new int[0];
+			return;
+		}
+		
+		// the bounds of the centers
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for(int i = 0; i < count; i++) {
+			minX = Math.min(minX, this.centerX[i]);
+			minY = Math.min(minY, this.centerY[i]);
+			maxX = Math.max(maxX, this.centerX[i]);
+			maxY = Math.max(maxY, this.centerY[i]);
+		}
+		
+		// size the cells so there's about one room in each
+		long area = (long)(maxX - minX + 1) * (maxY - minY + 1);
+		int cellSize = (int)Math.max(1, Math.ceil(Math.sqrt((double)area / count)));
+		int columns = (maxX - minX) / cellSize + 1;
+		int rows = (maxY - minY) / cellSize + 1;
+		
+		// bucket the rooms by cell, the rooms of cell c are
+		// cellRooms[cellStart[c]] up to cellRooms[cellStart[c + 1]]
+		int[] cellStart = new int[columns * rows + 1];
+		int[] cells = new int[count];
+		for(int i = 0; i < count; i++) {
+			cells[i] = ((this.centerY[i] - minY) / cellSize) * columns + (this.centerX[i] - minX) / cellSize;
+			cellStart[cells[i] + 1]++;
+		}
+		for(int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] cellRooms = new int[count];
+		int[] filled = Arrays.copyOf(cellStart, columns * rows);
+		for(int i = 0; i < count; i++) {
+			cellRooms[filled[cells[i]]++] = i;
+		}
+		
+		// the nearest rooms to each room, and their squared distances
+		int[] nearest = new int[count * neighbours];
+		long[] nearestDistance = new long[count * neighbours];
+		int[] nearestCount = new int[count];
+		for(int i = 0; i < count; i++) {
+			int offset = i * neighbours;
+			int found = 0;
+			int cellX = cells[i] % columns;
+			int cellY = cells[i] / columns;
+			int maxRing = Math.max(Math.max(cellX, columns - 1 - cellX), Math.max(cellY, rows - 1 - cellY));
+			
+			for(int ring = 0; ring <= maxRing; ring++) {
+				// go around the cells at this distance from the room's cell
+				for(int y = cellY - ring; y <= cellY + ring; y++) {
+					if(y < 0 || y >= rows) {
+						continue;
+					}
+					boolean edgeRow = y == cellY - ring || y == cellY + ring;
+					for(int x = cellX - ring; x <= cellX + ring; x += edgeRow ? 1 : 2 * ring) {
+						if(x >= 0 && x < columns) {
+							int cell = y * columns + x;
+							for(int r = cellStart[cell]; r < cellStart[cell + 1]; r++) {
+								found = offerNeighbour(i, cellRooms[r], nearest, nearestDistance, offset, neighbours, found);
+							}
+						}
+					}
+				}
+				
+				// rooms in the next ring are at least this far away
+				long reach = (long)ring * cellSize;
+				if(found == neighbours && nearestDistance[offset + found - 1] <= reach * reach) {
+					break;
+				}
+			}
+			nearestCount[i] = found;
+		}
+		
+		// each edge is packed as its squared length then its index, so sorting
+		// the packed edges sorts them by length; a pair of rooms that are each
+		// other's neighbours only becomes one edge
+		int[] from = new int[count * neighbours];
+		int[] to = new int[count * neighbours];
+		long[] packed = new long[count * neighbours];
+		for(int i = 0; i < count; i++) {
+			for(int n = 0; n < nearestCount[i]; n++) {
+				int other = nearest[i * neighbours + n];
+				if(other < i && contains(nearest, other * neighbours, nearestCount[other], i)) {
+					continue;
+				}
+				
+				// rooms this far apart only happen in very sparse worlds, their
+				// edges are still sorted after the shorter ones
+				long length = Math.min(nearestDistance[i * neighbours + n], Integer.MAX_VALUE);
+				from[this.edgeCount] = Math.min(i, other);
+				to[this.edgeCount] = Math.max(i, other);
+				packed[this.edgeCount] = (length << 32) | this.edgeCount;
+				this.edgeCount++;
+			}
+		}
+		Arrays.sort(packed, 0, this.edgeCount);
+		
+		this.edgeFrom = new int[this.edgeCount];
+		this.edgeTo = new int[this.edgeCount];
+		for(int e = 0; e < this.edgeCount; e++) {
+			int edge = (int)packed[e];
+			this.edgeFrom[e] = from[edge];
+			this.edgeTo[e] = to[edge];
+		}
+	}
+	
+	/**
+	 * Checks whether a room is one of the nearest rooms to another.
+	 * 
+	 * @param nearest the nearest rooms of every room
+	 * @param offset where the other room's nearest rooms start
+	 * @param found the number of nearest rooms the other room has
+	 * @param room the room to look for
+	 * 
+	 * @return whether the room is one of the nearest
+	 */
+	private static boolean contains(int[] nearest, int offset, int found, int room) {
+		for(int n = 0; n < found; n++) {
+			if(nearest[offset + n] == room) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Offers a room as one of the nearest neighbours of another, keeping the
+	 * nearest neighbours sorted from nearest to farthest.
+	 * 
+	 * @param room the room whose neighbours are being found
+	 * @param other the room being offered
+	 * @param nearest the nearest rooms of every room
+	 * @param nearestDistance the squared distances to the nearest rooms
+	 * @param offset where the room's nearest rooms start
+	 * @param neighbours the number of nearest rooms to keep
+	 * @param found the number of nearest rooms found so far
+	 * 
+	 * @return the number of nearest rooms found
+	 */
+	private int offerNeighbour(int room, int other, int[] nearest, long[] nearestDistance,
+			int offset, int neighbours, int found) {
+		if(other == room) {
+			return found;
+		}
+		
+		long dx = this.centerX[room] - this.centerX[other];
+		long dy = this.centerY[room] - this.centerY[other];
+		long distance = dx * dx + dy * dy;
+		
+		// ties go to the lower room, so the graph doesn't depend on the order of the cells
+		int position = found;
+		while(position > 0 && (nearestDistance[offset + position - 1] > distance ||
+				(nearestDistance[offset + position - 1] == distance && nearest[offset + position - 1] > other))) {
+			position--;
+		}
+		if(position == neighbours) {
+			return found;
+		}
+		
+		// shift the farther rooms along, dropping the farthest if we're full
+		int last = Math.min(found, neighbours - 1);
+		System.arraycopy(nearest, offset + position, nearest, offset + position + 1, last - position);
+		System.arraycopy(nearestDistance, offset + position, nearestDistance, offset + position + 1, last - position);
+		nearest[offset + position] = other;
+		nearestDistance[offset + position] = distance;
+		
+		return Math.min(found + 1, neighbours);
+	}
+	
+	/**
+	 * Finds the minimum spanning tree of the graph using Kruskal's algorithm,
+	 * going through the edges from shortest to longest and keeping those that
+	 * join two rooms not yet connected.
+	 * 
+	 * @return whether the tree connects every room
+	 */
+	private boolean findSpanningTree() {
+		int count = this.centerX.length;
+		this.spanning = new boolean[this.edgeCount];
+		
+		// each room starts in a group of its own
+		int[] parent = new int[count];
+		for(int i = 0; i < count; i++) {
+			parent[i] = i;
+		}
+		
+		int groups = count;
+		for(int e = 0; e < this.edgeCount && groups > 1; e++) {
+			int from = find(parent, this.edgeFrom[e]);
+			int to = find(parent, this.edgeTo[e]);
+			if(from != to) {
+				parent[from] = to;
+				this.spanning[e] = true;
+				groups--;
+			}
+		}
+		
+		return groups <= 1;
+	}
+	
+	/**
+	 * Finds the group a room is in, shortening the path to the group's
+	 * root along the way.
+	 * 
+	 * @param parent the parent of each room, a root is its own parent
+	 * @param room the room
+	 * 
+	 * @return the root of the room's group
+	 */
+	private static int find(int[] parent, int room) {
+		while(parent[room] != room) {
+			parent[room] = parent[parent[room]];
+			room = parent[room];
+		}
+		return room;
+	}
+}
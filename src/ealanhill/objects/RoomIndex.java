@@ -0,0 +1,41 @@
+package ealanhill.objects;
+
+/**
+ * A spatial index of the rooms in a {@link World}, used to quickly
+ * determine if a room collides with any of the rooms already placed.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface RoomIndex {
+	
+	/**
+	 * Adds a room to the index.
+	 * 
+	 * @param room the {@link Room} to be added
+	 */
+	void add(Room room);
+	
+	/**
+	 * Determines whether or not the room collides with any of the
+	 * rooms in the index, as determined by {@link Room#collides(Room)}.
+	 * 
+	 * @param room the {@link Room} to check
+	 * @return {@code true} if the room collides with a room in the index,
+	 * {@code false} otherwise
+	 */
+	boolean collides(Room room);
+	
+	/**
+	 * Removes all the rooms from the index.
+	 */
+	void clear();
+	
+	/**
+	 * Get the number of times two rooms have been compared for a
+	 * collision since the index was created.
+	 * 
+	 * @return the number of comparisons
+	 */
+	long getComparisons();
+}
@@ -0,0 +1,278 @@
+package ealanhill.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The rooms of a {@link World}, held as parallel arrays of their x and y
+ * coordinates, widths and heights rather than as an object per room. A room
+ * is known by its id, the order it was added in, and a {@link Room} is only
+ * made for it when one is asked for, so a world with a great many rooms
+ * takes little memory and its rooms can be gone through without following
+ * a reference per room.
+ * 
+ * Rooms are only ever added, by one thread at a time, apart from undoing
+ * them with a {@link ChangeJournal}, and can be read from any thread while
+ * they're being added. The arrays are stored before the
+ * size is increased, and the size is volatile, so a thread that reads the
+ * size sees every room up to it without locking.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class RoomStore {
+	
+	/** the arrays of the rooms, replaced by bigger copies when full */
+	private volatile Columns columns = new Columns(16);
+	/** the number of rooms */
+	private volatile int size = 0;
+	/** the rooms as a list */
+	private List<Room> list = new RoomList();
+	
+	/**
+	 * Adds a room to the end of the store.
+	 * 
+	 * @param x the left most x coordinate of the room
+	 * @param y the top most y coordinate of the room
+	 * @param width how wide the room is
+	 * @param height how high the room is
+	 * 
+	 * @return the id of the room
+	 */
+	public int add(int x, int y, int width, int height) {
+		Columns current = this.columns;
+		int id = this.size;
+		if(id == current.x.length) {
+			current = new Columns(current, current.x.length * 2);
+			this.columns = current;
+		}
+		
+		current.x[id] = x;
+		current.y[id] = y;
+		current.width[id] = width;
+		current.height[id] = height;
+		this.size = id + 1;
+		return id;
+	}
+	
+	/**
+	 * Adds a room to the end of the store.
+	 * 
+	 * @param room the {@link Room} to add
+	 * 
+	 * @return the id of the room
+	 */
+	public int add(Room room) {
+		return add(room.x, room.y, room.width, room.height);
+	}
+	
+	/**
+	 * Get the number of rooms, the ids of the rooms go from 0 up to it
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Get the left most x coordinate of a room
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return
+	 */
+	public int getX(int id) {
+		return columns(id).x[id];
+	}
+	
+	/**
+	 * Get the top most y coordinate of a room
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return
+	 */
+	public int getY(int id) {
+		return columns(id).y[id];
+	}
+	
+	/**
+	 * Get how wide a room is
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return
+	 */
+	public int getWidth(int id) {
+		return columns(id).width[id];
+	}
+	
+	/**
+	 * Get how high a room is
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return
+	 */
+	public int getHeight(int id) {
+		return columns(id).height[id];
+	}
+	
+	/**
+	 * Get the x coordinate of the center of a room, the tile the room's
+	 * corridors start from.
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return the x coordinate, rounded down
+	 */
+	public int getCenterX(int id) {
+		Columns columns = columns(id);
+		return columns.x[id] + columns.width[id] / 2;
+	}
+	
+	/**
+	 * Get the y coordinate of the center of a room, the tile the room's
+	 * corridors start from.
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return the y coordinate, rounded down
+	 */
+	public int getCenterY(int id) {
+		Columns columns = columns(id);
+		return columns.y[id] + columns.height[id] / 2;
+	}
+	
+	/**
+	 * Determines whether a room collides with a rectangle, the same way
+	 * as {@link Room#collides(Room)}, rooms that touch collide.
+	 * 
+	 * @param id the id of the room
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param width how wide the rectangle is
+	 * @param height how high the rectangle is
+	 * 
+	 * @return {@code true} if they collide, {@code false} otherwise
+	 */
+	public boolean collides(int id, int x, int y, int width, int height) {
+		Columns columns = columns(id);
+		return Room.collides(columns.x[id], columns.y[id], columns.width[id], columns.height[id], x, y, width, height);
+	}
+	
+	/**
+	 * Get a room as a {@link Room}, made when asked for.
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return the {@link Room}
+	 */
+	public Room get(int id) {
+		Columns columns = columns(id);
+		return new Room(columns.x[id], columns.y[id], columns.width[id], columns.height[id]);
+	}
+	
+	/**
+	 * Get the rooms as a list that can't be changed, and grows as rooms are
+	 * added. Each {@link Room} is made as it's read from the list.
+	 * 
+	 * @return a {@link List} of the {@link Room}s
+	 */
+	public List<Room> asList() {
+		return this.list;
+	}
+	
+	/**
+	 * Removes the rooms added last, keeping the given number of rooms.
+	 * 
+	 * @param count the number of rooms to keep
+	 */
+	void truncate(int count) {
+		this.size = Math.max(0, Math.min(count, this.size));
+	}
+	
+	/**
+	 * Get the arrays holding a room, checking the room is in the store.
+	 * 
+	 * @param id the id of the room
+	 * 
+	 * @return the {@link Columns}
+	 * 
+	 * @throws IndexOutOfBoundsException if there isn't a room with the id
+	 */
+	private Columns columns(int id) {
+		// read the size first, so the arrays are at least that long
+		int size = this.size;
+		if(id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Index: " + id + ", Size: " + size);
+		}
+		return this.columns;
+	}
+	
+	/**
+	 * The arrays of the rooms, replaced together so a reader never sees
+	 * arrays of different lengths.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private static class Columns {
+		
+		/** the left most x coordinate of each room */
+		private final int[] x;
+		/** the top most y coordinate of each room */
+		private final int[] y;
+		/** how wide each room is */
+		private final int[] width;
+		/** how high each room is */
+		private final int[] height;
+		
+		/**
+		 * Create empty arrays.
+		 * 
+		 * @param capacity the number of rooms the arrays can hold
+		 */
+		Columns(int capacity) {
+			this.x = new int[capacity];
+			this.y = new int[capacity];
+			this.width = new int[capacity];
+			this.height = new int[capacity];
+		}
+		
+		/**
+		 * Create bigger copies of arrays.
+		 * 
+		 * @param columns the {@link Columns} to copy
+		 * @param capacity the number of rooms the copies can hold
+		 */
+		Columns(Columns columns, int capacity) {
+			this.x = Arrays.copyOf(columns.x, capacity);
+			this.y = Arrays.copyOf(columns.y, capacity);
+			this.width = Arrays.copyOf(columns.width, capacity);
+			this.height = Arrays.copyOf(columns.height, capacity);
+		}
+	}
+	
+	/**
+	 * The rooms of the store as a list.
+	 * 
+	 * @author Alan Hill
+	 * 
+	 */
+	private class RoomList extends AbstractList<Room> implements RandomAccess {
+		
+		@Override
+		public Room get(int index) {
+			return RoomStore.this.get(index);
+		}
+		
+		@Override
+		public int size() {
+			return RoomStore.this.size;
+		}
+	}
+}
@@ -11,28 +11,35 @@ import java.awt.Color;
 public enum Tile {
 
 	/** The floor of a room or corridor, a user can walk on it*/
-	Floor(' ', Color.BLACK),
+	Floor(' ', 0x000000),
 	/** A wall to bound the world */
-	Wall('#', Color.WHITE),
+	Wall('#', 0xFFFFFF),
 	/** A closed door to the user */
-	ClosedDoor('X', Color.RED),
+	ClosedDoor('X', 0xFF0000),
 	/** Indicates the boundary of the world */
-	Bounds('.', Color.BLUE);
+	Bounds('.', 0x0000FF),
+	/** Stairs leading up to the level above, a user can walk on them */
+	StairsUp('<', 0xFFFF00),
+	/** Stairs leading down to the level below, a user can walk on them */
+	StairsDown('>', 0xFFFF00);
+	
+	/** a cached copy of the values, so looking up a tile by ordinal doesn't allocate */
+	private static final Tile[] VALUES = values();
 	
 	/** the character to be displayed to indicate the tile to the user */
 	private char glyph;
-	/** the color of the character */
-	private Color color;
+	/** the color of the character, as RGB, so tiles can be used without loading AWT */
+	private int rgb;
 	
 	/**
 	 * Construct a tile with the given character and color
 	 * 
 	 * @param glyph the character to represent the tile
-	 * @param color the color of the tile
+	 * @param rgb the color of the tile, as RGB
 	 */
-	private Tile(char glyph, Color color) {
+	private Tile(char glyph, int rgb) {
 		this.glyph = glyph;
-		this.color = color;
+		this.rgb = rgb;
 	}
 	
 	/**
@@ -50,6 +57,33 @@ public enum Tile {
 	 * @return
 	 */
 	public Color getColor() {
-		return this.color;
+		return Colors.COLORS[ordinal()];
+	}
+	
+	/**
+	 * Retrieve the tile with the given ordinal, used when tiles are
+	 * stored in a packed form rather than as references
+	 * 
+	 * @param ordinal the ordinal of the tile
+	 * @return the {@link Tile} with the given ordinal
+	 */
+	public static Tile fromOrdinal(int ordinal) {
+		return VALUES[ordinal];
+	}
+	
+	/**
+	 * Holds the colors of the tiles, created the first time a color is
+	 * needed so generating worlds without displaying them never loads AWT.
+	 */
+	private static class Colors {
+		
+		/** the color of each tile, by ordinal */
+		private static final Color[] COLORS = new Color[VALUES.length];
+		
+		static {
+			for(Tile tile : VALUES) {
+				COLORS[tile.ordinal()] = new Color(tile.rgb);
+			}
+		}
 	}
 }
@@ -0,0 +1,23 @@
+package ealanhill.objects;
+
+/**
+ * Listens for tiles being inserted into a {@link World}, so anything built
+ * from the tiles can be kept up to date without rebuilding it from scratch.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public interface TileListener {
+	
+	/**
+	 * Called after a rectangle of tiles has been inserted into the world.
+	 * The tiles may have been set to what they already were.
+	 * 
+	 * @param world the {@link World} the tiles were inserted into
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param width how wide the rectangle is
+	 * @param height how high the rectangle is
+	 */
+	void tilesChanged(World world, int x, int y, int width, int height);
+}
@@ -1,25 +1,76 @@
 package ealanhill.objects;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import ealanhill.metrics.GenerationStats;
 
 /**
  * The world the maze is to be displayed in and the
  * user is to be able to explore.
  * 
+ * The world can be read while it's being written, e.g. drawn while it's
+ * being generated. The rows are split into stripes of 64 rows, each with a
+ * {@link StampedLock} that writers hold while they insert tiles. Readers
+ * never take the locks unless a writer keeps getting in their way;
+ * {@link #readTiles(int, int, int, int, byte[])} copies a rectangle of tiles
+ * optimistically and only copies it again if a stripe was written to in the
+ * meantime, so the copy is always consistent. Rooms are only ever added, and
+ * {@link #getRooms()} always sees every room added before it was called.
+ * 
+ * A world can also keep a {@link NeighbourMask} for every tile, recording
+ * which of the eight tiles around it are walls, so questions like whether a
+ * tile is part of a corridor or which glyph a wall should be drawn with
+ * don't have to look at the tiles around it. The masks are kept up to date
+ * as tiles are inserted, under the same locks as the tiles.
+ * 
  * @author Alan Hill
  *
  */
 public class World {
 
-	/** a 2d array to hold the tiles */
-	private Tile[][] tiles;
+	/** the number of bits to shift a y coordinate by to get its stripe */
+	private static final int STRIPE_SHIFT = 6;
+	/** the number of times to try reading tiles without taking the locks */
+	private static final int OPTIMISTIC_READS = 3;
+
+	/** the ordinals of the tiles, stored row by row (index = y * width + x) */
+	private byte[] tiles;
 	/** the height of the world */
 	private int height = 0;
 	/** the width of the world */
 	private int width = 0;
-	/** a list of all the rooms in the world */
-	private List<Room> rooms = new ArrayList<Room>();
+	/** one bit per tile set if the tile is a floor, row by row, so a span of a row can be checked a word at a time */
+	private long[] floorRows;
+	/** one bit per tile set if the tile is a floor, column by column, so a span of a column can be checked a word at a time */
+	private long[] floorColumns;
+	/** the number of words of {@link #floorRows} per row */
+	private int rowWords = 0;
+	/** the number of words of {@link #floorColumns} per column */
+	private int columnWords = 0;
+	/** all the rooms in the world */
+	private RoomStore rooms = new RoomStore();
+	/** the spatial index of the rooms, used to check for collisions */
+	private RoomIndex roomIndex = null;
+	/** the seed the world was generated from, {@code null} if it's not known */
+	private Long seed = null;
+	/** where to record why rooms were accepted or rejected, {@code null} to not record them */
+	private GenerationStats stats = null;
+	/** the number of times a tile has been inserted, so viewers can tell if anything changed */
+	private AtomicLong modificationCount = new AtomicLong();
+	/** the listeners told when tiles are inserted, copied when changed so they can be told from any thread */
+	private List<TileListener> listeners = new CopyOnWriteArrayList<TileListener>();
+	/** the lock of each stripe of rows, held while its tiles and floor bits are written */
+	private StampedLock[] stripes = null;
+	/** the {@link NeighbourMask} of each tile, row by row, {@code null} if the world doesn't keep them */
+	private byte[] neighbourMasks = null;
+	/** records the changes to the tiles and rooms, {@code null} if they're not recorded */
+	private volatile ChangeJournal journal = null;
+	/** whether the world has been detached, after which its tiles and rooms can't be changed */
+	private volatile boolean detached = false;
 	
 	/**
 	 * Create a world with the specified height and width
@@ -30,21 +81,122 @@ public class World {
 	public World(int width, int height) {
 		this.height = height;
 		this.width = width;
-		this.tiles = new Tile[width][height];
+		this.tiles = new byte[width * height];
+		this.roomIndex = new GridRoomIndex(width, height);
+		
+		// every tile starts out as a floor
+		this.rowWords = (width + 63) >>> 6;
+		this.columnWords = (height + 63) >>> 6;
+		this.floorRows = new long[this.rowWords * height];
+		this.floorColumns = new long[this.columnWords * width];
+		Arrays.fill(this.floorRows, -1L);
+		Arrays.fill(this.floorColumns, -1L);
+		
+		// a stripe is as high as a word of the floor columns, so
+		// writers in different stripes never share a word
+		this.stripes = new StampedLock[(height + (1 << STRIPE_SHIFT) - 1) >>> STRIPE_SHIFT];
+		for(int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new StampedLock();
+		}
+	}
+	
+	/**
+	 * Create a world with the specified height and width, that keeps the
+	 * {@link NeighbourMask} of every tile if asked to. Keeping the masks
+	 * costs a byte per tile, and makes inserting tiles a little slower.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param neighbourMasks whether to keep the neighbour masks
+	 */
+	public World(int width, int height, boolean neighbourMasks) {
+		this(width, height);
+		
+		// every tile starts out as a floor, so no tile has a wall beside it
+		if(neighbourMasks) {
+			this.neighbourMasks = new byte[width * height];
+		}
+	}
+	
+	/**
+	 * Create a copy of a world, with its own tiles so changing one world
+	 * doesn't change the other. The rooms are shared, as they're never
+	 * changed once they're in a world. The copy has no listeners, and
+	 * doesn't keep neighbour masks.
+	 * 
+	 * @param world the {@link World} to copy, must store its own tiles
+	 * 
+	 * @throws IllegalArgumentException if the world stores its tiles elsewhere
+	 */
+	public World(World world) {
+		this(world.width, world.height, (RoomIndex)null);
+		if(world.tiles == null) {
+			throw new IllegalArgumentException("Only a world that stores its own tiles can be copied");
+		}
+		
+		this.rowWords = world.rowWords;
+		this.columnWords = world.columnWords;
+		this.stripes = new StampedLock[world.stripes.length];
+		for(int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new StampedLock();
+		}
+		
+		// copy a consistent view of the tiles, along with their floor bits
+		this.tiles = new byte[world.tiles.length];
+		world.readTiles(0, 0, this.width, this.height, this.tiles);
+		this.floorRows = new long[world.floorRows.length];
+		this.floorColumns = new long[world.floorColumns.length];
+		for(int y = 0; y < this.height; y++) {
+			for(int x = 0; x < this.width; x++) {
+				setFloor(x, y, this.tiles[y * this.width + x] == Tile.Floor.ordinal());
+			}
+		}
+		
+		this.roomIndex = new GridRoomIndex(this.width, this.height);
+		for(Room room : world.getRooms()) {
+			addRoom(room);
+		}
+		this.seed = world.seed;
+	}
+	
+	/**
+	 * Create a world with the specified height and width that doesn't
+	 * allocate storage for its tiles, for worlds that store their tiles
+	 * elsewhere and override {@link #getTile(int, int)} and
+	 * {@link #insertTile(int, int, Tile)}.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param roomIndex the spatial index of the rooms, can be {@code null}
+	 * if the world doesn't support {@link #insertRoom(Room)}
+	 */
+	protected World(int width, int height, RoomIndex roomIndex) {
+		this.height = height;
+		this.width = width;
+		this.roomIndex = roomIndex;
 	}
 	
 	/**
 	 * Create a world with the specified height and width and 
-	 * the given set of tiles.
+	 * the given set of tiles, indexed by x then y. The tiles are
+	 * copied into the world, any missing tiles are treated as walls.
 	 * 
 	 * @param width
 	 * @param height
 	 * @param tiles
 	 */
 	public World(int width, int height, Tile[][] tiles) {
-		this.height = height;
-		this.width = width;
-		this.tiles = tiles;
+		this(width, height);
+		
+		// copy the tiles into our packed storage a row at a time
+		for(int y = 0; y < height; y++) {
+			int row = y * width;
+			for(int x = 0; x < width; x++) {
+				Tile tile = tiles[x][y];
+				this.tiles[row + x] = (byte)(tile == null ? Tile.Wall : tile).ordinal();
+				setFloor(x, y, tile == Tile.Floor);
+			}
+		}
 	}
 	
 	/**
@@ -61,7 +213,84 @@ public class World {
 			return Tile.Bounds;
 		}
 		
-		return this.tiles[x][y];
+		return Tile.fromOrdinal(this.tiles[y * width + x]);
+	}
+	
+	/**
+	 * Copies the ordinals of a rectangle of tiles, as they were at a single
+	 * moment even if tiles are being inserted at the same time. Any part of
+	 * the rectangle outside of the world is copied as {@link Tile#Bounds}.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 * @param into where to copy the ordinals, row by row (index = row * rectWidth + column),
+	 * at least rectWidth * rectHeight long
+	 */
+	public void readTiles(int x, int y, int rectWidth, int rectHeight, byte[] into) {
+		Arrays.fill(into, 0, rectWidth * rectHeight, (byte)Tile.Bounds.ordinal());
+		
+		// clip the rectangle to the world once, rather than checking every tile
+		int minX = Math.max(x, 0);
+		int minY = Math.max(y, 0);
+		int maxX = (int)Math.min((long)x + rectWidth, this.width);
+		int maxY = (int)Math.min((long)y + rectHeight, this.height);
+		if(minX >= maxX || minY >= maxY) {
+			return;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null) {
+			for(int row = minY; row < maxY; row++) {
+				for(int column = minX; column < maxX; column++) {
+					into[(row - y) * rectWidth + column - x] = (byte)getTile(column, row).ordinal();
+				}
+			}
+			return;
+		}
+		
+		// copy without locking, and keep the copy if no stripe was written to
+		int firstStripe = minY >>> STRIPE_SHIFT;
+		int lastStripe = (maxY - 1) >>> STRIPE_SHIFT;
+		if(firstStripe == lastStripe) {
+			readStripe(this.stripes[firstStripe], x, y, rectWidth, minX, minY, maxX, maxY, into);
+			return;
+		}
+		
+		long[] stamps = new long[lastStripe - firstStripe + 1];
+		for(int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+			boolean valid = true;
+			for(int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+				stamps[stripe - firstStripe] = this.stripes[stripe].tryOptimisticRead();
+				valid &= stamps[stripe - firstStripe] != 0;
+			}
+			if(!valid) {
+				continue;
+			}
+			
+			copyRows(x, y, rectWidth, minX, minY, maxX, maxY, into);
+			for(int stripe = firstStripe; stripe <= lastStripe && valid; stripe++) {
+				valid = this.stripes[stripe].validate(stamps[stripe - firstStripe]);
+			}
+			if(valid) {
+				return;
+			}
+		}
+		
+		// the writers keep getting in the way, so wait for them to finish the
+		// stripes and keep them out while copying, in order so this can't
+		// deadlock with another reader or writer
+		for(int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+			stamps[stripe - firstStripe] = this.stripes[stripe].readLock();
+		}
+		try {
+			copyRows(x, y, rectWidth, minX, minY, maxX, maxY, into);
+		} finally {
+			for(int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+				this.stripes[stripe].unlockRead(stamps[stripe - firstStripe]);
+			}
+		}
 	}
 	
 	/**
@@ -71,14 +300,606 @@ public class World {
 	 * @param x
 	 * @param y
 	 * @param tile 
+	 * 
+	 * @throws IllegalStateException if the world has been detached
 	 */
 	public void insertTile(int x, int y, Tile tile) {
-		// ensure the values are within the bounds of the world
-		if(x > 0 || x < width || y > 0 || y < height) {
-			this.tiles[x][y] = tile;
+		// ensure the values are within the bounds of the world, since
+		// the tiles are packed an x outside the world would otherwise
+		// spill over into the next row
+		if(x >= 0 && x < width && y >= 0 && y < height) {
+			if(this.neighbourMasks != null) {
+				// the masks of the rows either side change too
+				int minY = Math.max(y - 1, 0);
+				int maxY = Math.min(y + 2, this.height);
+				long[] stamps = lockStripes(minY, maxY);
+				try {
+					checkAttached();
+					record(x, y, 1, 1, tile);
+					this.tiles[y * width + x] = (byte)tile.ordinal();
+					setFloor(x, y, tile == Tile.Floor);
+					updateNeighbourMasks(x, y, x + 1, y + 1, tile == Tile.Wall);
+				} finally {
+					unlockStripes(minY, maxY, stamps);
+				}
+				markModified(x, y, 1, 1);
+				return;
+			}
+			
+			StampedLock stripe = this.stripes[y >>> STRIPE_SHIFT];
+			long stamp = stripe.writeLock();
+			try {
+				checkAttached();
+				record(x, y, 1, 1, tile);
+				this.tiles[y * width + x] = (byte)tile.ordinal();
+				setFloor(x, y, tile == Tile.Floor);
+			} finally {
+				stripe.unlockWrite(stamp);
+			}
+			markModified(x, y, 1, 1);
+		}
+	}
+	
+	/**
+	 * Fills every tile of the world with the given tile.
+	 * 
+	 * @param tile the {@link Tile} to fill the world with
+	 */
+	public void clear(Tile tile) {
+		fillRect(0, 0, this.width, this.height, tile);
+	}
+	
+	/**
+	 * Fills a rectangle of the world with the given tile, any part of
+	 * the rectangle outside of the world is ignored.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 * @param tile the {@link Tile} to fill the rectangle with
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	public void fillRect(int x, int y, int rectWidth, int rectHeight, Tile tile) {
+		// clip the rectangle to the world once, rather than checking every tile
+		int minX = Math.max(x, 0);
+		int minY = Math.max(y, 0);
+		int maxX = (int)Math.min((long)x + rectWidth, this.width);
+		int maxY = (int)Math.min((long)y + rectHeight, this.height);
+		if(minX >= maxX || minY >= maxY) {
+			return;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null) {
+			for(int row = minY; row < maxY; row++) {
+				for(int column = minX; column < maxX; column++) {
+					insertTile(column, row, tile);
+				}
+			}
+			return;
+		}
+		
+		fillClipped(minX, minY, maxX, maxY, tile, null);
+	}
+	
+	/**
+	 * Fills a rectangle of the world that's already been clipped to the
+	 * world, adding a room along with it if given one. The room is added
+	 * while the stripes are locked, so a {@link #detach()} either sees both
+	 * the room and its tiles or neither.
+	 * 
+	 * @param minX the left most x coordinate of the rectangle
+	 * @param minY the top most y coordinate of the rectangle
+	 * @param maxX one past the right most x coordinate of the rectangle
+	 * @param maxY one past the bottom most y coordinate of the rectangle
+	 * @param tile the {@link Tile} to fill the rectangle with
+	 * @param room the {@link Room} to add, can be {@code null}
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	private void fillClipped(int minX, int minY, int maxX, int maxY, Tile tile, Room room) {
+		// the masks of the rows either side of the rectangle change too
+		int lockMinY = this.neighbourMasks == null ? minY : Math.max(minY - 1, 0);
+		int lockMaxY = this.neighbourMasks == null ? maxY : Math.min(maxY + 1, this.height);
+		long[] stamps = lockStripes(lockMinY, lockMaxY);
+		try {
+			checkAttached();
+			if(room != null) {
+				registerRoom(room);
+			}
+			record(minX, minY, maxX - minX, maxY - minY, tile);
+			
+			// keep the floor bits up to date, a word at a time along the rows
+			// and a word at a time down the columns
+			boolean floor = tile == Tile.Floor;
+			for(int row = minY; row < maxY; row++) {
+				setBits(this.floorRows, row * this.rowWords, minX, maxX, floor);
+			}
+			for(int column = minX; column < maxX; column++) {
+				setBits(this.floorColumns, column * this.columnWords, minY, maxY, floor);
+			}
+			
+			byte ordinal = (byte)tile.ordinal();
+			if(minX == 0 && maxX == this.width) {
+				// the rows are whole, so they're one block in the tiles
+				Arrays.fill(this.tiles, minY * this.width, maxY * this.width, ordinal);
+			} else {
+				for(int row = minY; row < maxY; row++) {
+					Arrays.fill(this.tiles, row * this.width + minX, row * this.width + maxX, ordinal);
+				}
+			}
+			
+			if(this.neighbourMasks != null) {
+				updateNeighbourMasks(minX, minY, maxX, maxY, tile == Tile.Wall);
+			}
+		} finally {
+			unlockStripes(lockMinY, lockMaxY, stamps);
+		}
+		markModified(minX, minY, maxX - minX, maxY - minY);
+	}
+	
+	/**
+	 * Converts a rectangle of the world to floor tiles, any part of
+	 * the rectangle outside of the world is ignored.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 */
+	public void carveRect(int x, int y, int rectWidth, int rectHeight) {
+		fillRect(x, y, rectWidth, rectHeight, Tile.Floor);
+	}
+	
+	/**
+	 * Fills part of a row of the world with the given tile, any part
+	 * outside of the world is ignored.
+	 * 
+	 * @param y the y coordinate of the row
+	 * @param fromX the first x coordinate to fill
+	 * @param toX one past the last x coordinate to fill
+	 * @param tile the {@link Tile} to fill the row with
+	 */
+	public void fillRow(int y, int fromX, int toX, Tile tile) {
+		fillRect(fromX, y, toX - fromX, 1, tile);
+	}
+	
+	/**
+	 * Fills part of a column of the world with the given tile, any part
+	 * outside of the world is ignored.
+	 * 
+	 * @param x the x coordinate of the column
+	 * @param fromY the first y coordinate to fill
+	 * @param toY one past the last y coordinate to fill
+	 * @param tile the {@link Tile} to fill the column with
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	public void fillColumn(int x, int fromY, int toY, Tile tile) {
+		// clip the column to the world once, rather than checking every tile
+		int minY = Math.max(fromY, 0);
+		int maxY = Math.min(toY, this.height);
+		if(x < 0 || x >= this.width || minY >= maxY) {
+			return;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null) {
+			for(int row = minY; row < maxY; row++) {
+				insertTile(x, row, tile);
+			}
+			return;
+		}
+		
+		// the masks of the rows either side of the column change too
+		int lockMinY = this.neighbourMasks == null ? minY : Math.max(minY - 1, 0);
+		int lockMaxY = this.neighbourMasks == null ? maxY : Math.min(maxY + 1, this.height);
+		long[] stamps = lockStripes(lockMinY, lockMaxY);
+		try {
+			checkAttached();
+			record(x, minY, 1, maxY - minY, tile);
+			
+			// the tiles of a column are a row's width apart
+			byte ordinal = (byte)tile.ordinal();
+			int end = maxY * this.width + x;
+			for(int index = minY * this.width + x; index < end; index += this.width) {
+				this.tiles[index] = ordinal;
+			}
+			
+			// keep the floor bits up to date
+			boolean floor = tile == Tile.Floor;
+			for(int row = minY; row < maxY; row++) {
+				setFloor(x, row, floor);
+			}
+			
+			if(this.neighbourMasks != null) {
+				updateNeighbourMasks(x, minY, x + 1, maxY, tile == Tile.Wall);
+			}
+		} finally {
+			unlockStripes(lockMinY, lockMaxY, stamps);
+		}
+		markModified(x, minY, 1, maxY - minY);
+	}
+	
+	/**
+	 * Copies all of another world's tiles into this world, with the top left
+	 * of the other world at the given coordinates. Any part outside of this
+	 * world is ignored. The rows are copied a stripe at a time, taking each
+	 * stripe's lock once, and the listeners are told once for the whole copy.
+	 * 
+	 * @param source the {@link World} to copy the tiles of
+	 * @param x the x coordinate to copy the left most column to
+	 * @param y the y coordinate to copy the top row to
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	public void copyTiles(World source, int x, int y) {
+		// clip the copy to the world once, rather than checking every tile
+		int minX = Math.max(x, 0);
+		int minY = Math.max(y, 0);
+		int maxX = (int)Math.min((long)x + source.width, this.width);
+		int maxY = (int)Math.min((long)y + source.height, this.height);
+		if(minX >= maxX || minY >= maxY) {
+			return;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null || source.tiles == null) {
+			for(int row = minY; row < maxY; row++) {
+				for(int column = minX; column < maxX; column++) {
+					insertTile(column, row, source.getTile(column - x, row - y));
+				}
+			}
+			return;
+		}
+		
+		int bandEnd = 0;
+		for(int bandStart = minY; bandStart < maxY; bandStart = bandEnd) {
+			bandEnd = Math.min(((bandStart >>> STRIPE_SHIFT) + 1) << STRIPE_SHIFT, maxY);
+			
+			// the masks of the rows either side of the band change too
+			int lockMinY = this.neighbourMasks == null ? bandStart : Math.max(bandStart - 1, 0);
+			int lockMaxY = this.neighbourMasks == null ? bandEnd : Math.min(bandEnd + 1, this.height);
+			long[] stamps = lockStripes(lockMinY, lockMaxY);
+			try {
+				checkAttached();
+				for(int column = minX; column < maxX; column++) {
+					setBits(this.floorColumns, column * this.columnWords, bandStart, bandEnd, false);
+				}
+				for(int row = bandStart; row < bandEnd; row++) {
+					copyRow(source, (row - y) * source.width + (minX - x), row, minX, maxX);
+				}
+				
+				if(this.neighbourMasks != null) {
+					computeNeighbourMasks(minX, bandStart, maxX, bandEnd);
+				}
+			} finally {
+				unlockStripes(lockMinY, lockMaxY, stamps);
+			}
+		}
+		markModified(minX, minY, maxX - minX, maxY - minY);
+	}
+	
+	/**
+	 * Copies part of a row of another world's tiles into a row of this world,
+	 * along with their floor bits, once the stripe of the row is locked and
+	 * the floor bits of the columns have been cleared.
+	 * 
+	 * @param source the {@link World} to copy the tiles of
+	 * @param from the index of the first tile to copy in the other world's tiles
+	 * @param y the y coordinate of the row
+	 * @param minX the first x coordinate to copy to
+	 * @param maxX one past the last x coordinate to copy to
+	 */
+	private void copyRow(World source, int from, int y, int minX, int maxX) {
+		int to = y * this.width + minX;
+		int length = maxX - minX;
+		
+		// the journal records a fill for each run of the same tile
+		if(this.journal != null) {
+			int start = 0;
+			while(start < length) {
+				int end = start + 1;
+				while(end < length && source.tiles[from + end] == source.tiles[from + start]) {
+					end++;
+				}
+				record(minX + start, y, end - start, 1, Tile.fromOrdinal(source.tiles[from + start]));
+				start = end;
+			}
+		}
+		
+		System.arraycopy(source.tiles, from, this.tiles, to, length);
+		
+		// keep the floor bits up to date, clearing the span of the row a
+		// word at a time and setting the bit of each floor tile
+		setBits(this.floorRows, y * this.rowWords, minX, maxX, false);
+		byte floor = (byte)Tile.Floor.ordinal();
+		for(int i = 0; i < length; i++) {
+			if(this.tiles[to + i] == floor) {
+				int x = minX + i;
+				this.floorRows[y * this.rowWords + (x >>> 6)] |= 1L << x;
+				this.floorColumns[x * this.columnWords + (y >>> 6)] |= 1L << y;
+			}
+		}
+	}
+	
+	/**
+	 * Determines whether there's a floor tile anywhere along part of a row,
+	 * a word of tiles at a time.
+	 * 
+	 * @param y the y coordinate of the row
+	 * @param fromX the first x coordinate to check
+	 * @param toX one past the last x coordinate to check
+	 * 
+	 * @return {@code true} if there's a floor tile in the span, {@code false} otherwise
+	 */
+	public boolean hasFloorInRow(int y, int fromX, int toX) {
+		int minX = Math.max(fromX, 0);
+		int maxX = Math.min(toX, this.width);
+		if(y < 0 || y >= this.height || minX >= maxX) {
+			return false;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null) {
+			for(int x = minX; x < maxX; x++) {
+				if(getTile(x, y) == Tile.Floor) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		return anyBits(this.floorRows, y * this.rowWords, minX, maxX);
+	}
+	
+	/**
+	 * Determines whether there's a floor tile anywhere along part of a column,
+	 * a word of tiles at a time.
+	 * 
+	 * @param x the x coordinate of the column
+	 * @param fromY the first y coordinate to check
+	 * @param toY one past the last y coordinate to check
+	 * 
+	 * @return {@code true} if there's a floor tile in the span, {@code false} otherwise
+	 */
+	public boolean hasFloorInColumn(int x, int fromY, int toY) {
+		int minY = Math.max(fromY, 0);
+		int maxY = Math.min(toY, this.height);
+		if(x < 0 || x >= this.width || minY >= maxY) {
+			return false;
+		}
+		
+		// worlds that store their tiles elsewhere go a tile at a time
+		if(this.tiles == null) {
+			for(int y = minY; y < maxY; y++) {
+				if(getTile(x, y) == Tile.Floor) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		return anyBits(this.floorColumns, x * this.columnWords, minY, maxY);
+	}
+	
+	/**
+	 * Combines the floor tiles of a range of rows, setting bit x of the
+	 * result if any of the rows has a floor tile at x. Bit x is held in
+	 * word x / 64 of the result, at bit x % 64.
+	 * 
+	 * @param fromY the first row to combine
+	 * @param toY one past the last row to combine
+	 * @param into where to put the result, at least (width + 63) / 64 words long
+	 */
+	public void combineFloorRows(int fromY, int toY, long[] into) {
+		int words = (this.width + 63) >>> 6;
+		Arrays.fill(into, 0, words, 0L);
+		
+		int minY = Math.max(fromY, 0);
+		int maxY = Math.min(toY, this.height);
+		for(int y = minY; y < maxY; y++) {
+			// worlds that store their tiles elsewhere go a tile at a time
+			if(this.tiles == null) {
+				for(int x = 0; x < this.width; x++) {
+					if(getTile(x, y) == Tile.Floor) {
+						into[x >>> 6] |= 1L << x;
+					}
+				}
+				continue;
+			}
+			
+			int offset = y * this.rowWords;
+			for(int word = 0; word < words; word++) {
+				into[word] |= this.floorRows[offset + word];
+			}
+		}
+	}
+	
+	/**
+	 * Finds the doorways of a band of rows, the floor tiles with a wall on
+	 * both sides or both above and below, setting bit x of row y if the tile
+	 * at x and y is one. Bit x of row y is held in word y * words + x / 64
+	 * of the result, at bit x % 64, where words is (width + 63) / 64. The
+	 * walls of each row are packed into bits once, and the doorways of a
+	 * row are then found a word of tiles at a time. If the world keeps the
+	 * neighbour masks, only the floor tiles are looked at, each with a
+	 * single lookup of its mask.
+	 * 
+	 * @param fromY the first row to find the doorways of
+	 * @param toY one past the last row to find the doorways of
+	 * @param into where to put the result, the words of the other rows aren't touched
+	 */
+	public void findDoorways(int fromY, int toY, long[] into) {
+		int words = (this.width + 63) >>> 6;
+		int minY = Math.max(fromY, 0);
+		int maxY = Math.min(toY, this.height);
+		if(minY >= maxY) {
+			return;
+		}
+		
+		if(this.neighbourMasks != null) {
+			findDoorwaysByMask(minY, maxY, words, into);
+			return;
+		}
+		
+		// the walls of the rows above, at and below the row being checked,
+		// with a spare word either side so the shifts don't need bounds checks
+		long[] above = new long[words + 2];
+		long[] row = new long[words + 2];
+		long[] below = new long[words + 2];
+		packWalls(minY - 1, above);
+		packWalls(minY, row);
+		
+		// the bits past the right edge of the world are never doorways
+		long lastMask = -1L >>> -this.width;
+		
+		for(int y = minY; y < maxY; y++) {
+			packWalls(y + 1, below);
+			
+			int offset = y * words;
+			for(int word = 0; word < words; word++) {
+				// the walls one tile to the east and west of each tile
+				long east = (row[word + 1] >>> 1) | (row[word + 2] << 63);
+				long west = (row[word + 1] << 1) | (row[word] >>> 63);
+				long walls = (east & west) | (above[word + 1] & below[word + 1]);
+				long floor = this.tiles == null ? packFloors(y, word) : this.floorRows[y * this.rowWords + word];
+				into[offset + word] = floor & walls & (word == words - 1 ? lastMask : -1L);
+			}
+			
+			// move down a row, reusing the oldest row for the next one below
+			long[] swap = above;
+			above = row;
+			row = below;
+			below = swap;
+		}
+	}
+	
+	/**
+	 * Finds the doorways of a band of rows from the neighbour masks, going
+	 * through the floor tiles of each word and checking the mask of each.
+	 * 
+	 * @param minY the first row to find the doorways of
+	 * @param maxY one past the last row to find the doorways of
+	 * @param words the number of words in a row of the result
+	 * @param into where to put the result
+	 */
+	private void findDoorwaysByMask(int minY, int maxY, int words, long[] into) {
+		// the bits past the right edge of the world are never doorways
+		long lastMask = -1L >>> -this.width;
+		
+		for(int y = minY; y < maxY; y++) {
+			int offset = y * words;
+			for(int word = 0; word < words; word++) {
+				long floor = this.tiles == null ? packFloors(y, word) : this.floorRows[y * this.rowWords + word];
+				floor &= word == words - 1 ? lastMask : -1L;
+				
+				long doorways = 0;
+				while(floor != 0) {
+					int bit = Long.numberOfTrailingZeros(floor);
+					floor &= floor - 1;
+					if(NeighbourMask.isCorridor(this.neighbourMasks[y * this.width + (word << 6) + bit] & 0xFF)) {
+						doorways |= 1L << bit;
+					}
+				}
+				into[offset + word] = doorways;
+			}
 		}
 	}
 	
+	/**
+	 * Get the {@link NeighbourMask} of a tile, which of the eight tiles
+	 * around it are walls. If the world keeps the masks this is a single
+	 * lookup, otherwise the tiles around it are checked.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the mask, 0 for a tile outside of the world
+	 */
+	public int getNeighbourMask(int x, int y) {
+		if(x < 0 || x >= this.width || y < 0 || y >= this.height) {
+			return 0;
+		}
+		
+		if(this.neighbourMasks != null) {
+			return this.neighbourMasks[y * this.width + x] & 0xFF;
+		}
+		
+		int mask = 0;
+		for(int direction = 0; direction < 8; direction++) {
+			if(getTile(x + NeighbourMask.STEP_X[direction], y + NeighbourMask.STEP_Y[direction]) == Tile.Wall) {
+				mask |= 1 << direction;
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Determines whether a tile is part of a corridor, a floor tile with
+	 * a wall on both sides or both above and below. If the world doesn't keep
+	 * the neighbour masks, only as many of the tiles around it are checked
+	 * as are needed to tell.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return {@code true} if the tile is part of a corridor, {@code false} otherwise
+	 */
+	public boolean isCorridor(int x, int y) {
+		if(getTile(x, y) != Tile.Floor) {
+			return false;
+		}
+		
+		if(this.neighbourMasks != null) {
+			return NeighbourMask.isCorridor(this.neighbourMasks[y * this.width + x] & 0xFF);
+		}
+		
+		// a wall on the left and right side, or above and below
+		return (getTile(x + 1, y) == Tile.Wall && getTile(x - 1, y) == Tile.Wall) ||
+				(getTile(x, y + 1) == Tile.Wall && getTile(x, y - 1) == Tile.Wall);
+	}
+	
+	/**
+	 * Determines whether a tile is the corner of a wall, a wall tile joined to
+	 * another wall above or below it and to another wall on one side.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return {@code true} if the tile is a wall corner, {@code false} otherwise
+	 */
+	public boolean isWallCorner(int x, int y) {
+		return getTile(x, y) == Tile.Wall && NeighbourMask.isCorner(getNeighbourMask(x, y));
+	}
+	
+	/**
+	 * Get which glyph a wall tile should be drawn with, from the walls it joins.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the variant, between 0 and 15, see {@link NeighbourMask#wallVariant(int)},
+	 * or -1 if the tile isn't a wall
+	 */
+	public int getWallVariant(int x, int y) {
+		if(getTile(x, y) != Tile.Wall) {
+			return -1;
+		}
+		return NeighbourMask.wallVariant(getNeighbourMask(x, y));
+	}
+	
+	/**
+	 * Determines whether the world keeps the neighbour mask of every tile.
+	 * 
+	 * @return {@code true} if it does, {@code false} if they're worked out when asked for
+	 */
+	public boolean hasNeighbourMasks() {
+		return this.neighbourMasks != null;
+	}
+	
 	/**
 	 * Attempts to insert a room into the world, if it doesn't
 	 * overlap another room or a corridor.
@@ -86,20 +907,30 @@ public class World {
 	 * @param roomToAdd the {@link Room} to be added into the world
 	 * 
 	 * @return {@code true} if the room was added, {@code false} if not
+	 * 
+	 * @throws IllegalStateException if the world has been detached
 	 */
 	public boolean insertRoom(Room roomToAdd) {
-		// check to see if the room is safe to add
-		boolean safeToAdd = true;
+		checkAttached();
 		
-		// go through all the rooms and see if they
-		// collide with the room we want to add
-		for(Room room : this.rooms) {
-			if(room.collides(roomToAdd)) {
-				// if so, it's not safe to add the room
-				safeToAdd = false;
+		// check to see if the room collides with any of the nearby
+		// rooms, if so it's not safe to add the room
+		long comparisons = this.stats == null ? 0 : this.roomIndex.getComparisons();
+		boolean collides = this.roomIndex.collides(roomToAdd);
+		if(this.stats != null) {
+			this.stats.recordCollisionChecks(this.roomIndex.getComparisons() - comparisons);
+		}
+		
+		if(collides) {
+			if(this.stats != null) {
+				this.stats.recordRejectedOverlap();
 			}
+			return false;
 		}
 		
+		// check to see if the room is safe to add
+		boolean safeToAdd = true;
+		
 		// get the cardinal points of the room, to see if there's
 		// a corridor along the side of the room
 		int north = roomToAdd.y - 1;
@@ -109,27 +940,27 @@ public class World {
 		
 		// ensure the cardinal values are within the bounds of the world
 		if(north >= 0 && east < this.width && south < this.height && west >= 0) {
-			// go along the top and bottom of the room and see if there's a corridor
-			for(int i = roomToAdd.x; i < roomToAdd.x + roomToAdd.width; i++) {
-				if(this.tiles[i][north] == Tile.Floor || this.tiles[i][south] == Tile.Floor) {
-					// if there is, then it's not safe to add the room
-					safeToAdd = false;
-				}
+			// check along the top, bottom and sides of the room for a corridor,
+			// if there is one, then it's not safe to add the room
+			int right = roomToAdd.x + roomToAdd.width;
+			int bottom = roomToAdd.y + roomToAdd.height;
+			if(hasFloorInRow(north, roomToAdd.x, right) || hasFloorInRow(south, roomToAdd.x, right) ||
+					hasFloorInColumn(east, roomToAdd.y, bottom) || hasFloorInColumn(west, roomToAdd.y, bottom)) {
+				safeToAdd = false;
 			}
-			
-			// go along the sides of the room and see if there's a corridor
-			for(int i = roomToAdd.y; i < roomToAdd.y + roomToAdd.height; i++) {
-				if(this.tiles[east][i] == Tile.Floor || this.tiles[west][i] == Tile.Floor) {
-					// if there is, then it's not safe to add the room
-					safeToAdd = false;
-				}
+		}
+		
+		if(this.stats != null) {
+			if(safeToAdd) {
+				this.stats.recordAccepted();
+			} else {
+				this.stats.recordRejectedCorridor();
 			}
 		}
 		
 		// if the room is safe to be added, then add it,
 		// and carve out the room from the tiles
 		if(safeToAdd) {
-			this.rooms.add(roomToAdd);
 			carveRoom(roomToAdd);
 		}
 		
@@ -137,6 +968,36 @@ public class World {
 		return safeToAdd;
 	}
 	
+	/**
+	 * Adds a room that has already been carved out of the world, without
+	 * checking whether it's safe to add.
+	 * 
+	 * @param room the {@link Room} to be added into the world
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	public void addRoom(Room room) {
+		checkAttached();
+		this.rooms.add(room);
+		if(this.roomIndex != null) {
+			this.roomIndex.add(room);
+		}
+		recordRoom(room);
+	}
+	
+	/**
+	 * Removes the rooms added last, keeping the given number of rooms. The
+	 * tiles of the rooms aren't changed. Used to undo adding rooms.
+	 * 
+	 * @param count the number of rooms to keep
+	 */
+	void truncateRooms(int count) {
+		this.rooms.truncate(Math.max(0, count));
+		if(this.roomIndex != null) {
+			setRoomIndex(this.roomIndex);
+		}
+	}
+	
 	/**
 	 * Get the height of the world
 	 * @return
@@ -154,24 +1015,553 @@ public class World {
 	}
 	
 	/**
-	 * Get all the rooms within the room
+	 * Sets where to record why rooms were accepted or rejected
+	 * by {@link #insertRoom(Room)}.
+	 * 
+	 * @param stats the {@link GenerationStats}, can be {@code null} to stop recording
+	 */
+	public void setStats(GenerationStats stats) {
+		this.stats = stats;
+	}
+	
+	/**
+	 * Get the number of times a tile has been inserted into the world. If the
+	 * count hasn't changed, none of the tiles have changed.
+	 * 
+	 * @return the modification count
+	 */
+	public long getModificationCount() {
+		return this.modificationCount.get();
+	}
+	
+	/**
+	 * Adds a listener to be told when tiles are inserted into the world.
+	 * 
+	 * @param listener the {@link TileListener} to add
+	 */
+	public void addTileListener(TileListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener added by {@link #addTileListener(TileListener)}.
+	 * 
+	 * @param listener the {@link TileListener} to remove
+	 */
+	public void removeTileListener(TileListener listener) {
+		this.listeners.remove(listener);
+	}
+	
+	/**
+	 * Records that a rectangle of tiles has been inserted and tells the
+	 * listeners, worlds that override {@link #insertTile(int, int, Tile)}
+	 * must call this for every tile they insert. The listeners are told on
+	 * the thread that inserted the tiles, once the tiles can be read.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 */
+	protected void markModified(int x, int y, int rectWidth, int rectHeight) {
+		this.modificationCount.incrementAndGet();
+		
+		// not a for each, so inserting a tile doesn't allocate an iterator
+		for(int i = 0; i < this.listeners.size(); i++) {
+			this.listeners.get(i).tilesChanged(this, x, y, rectWidth, rectHeight);
+		}
+	}
+	
+	/**
+	 * Sets the journal to record the changes to the world's tiles and rooms
+	 * in. Only worlds that store their own tiles are recorded.
+	 * 
+	 * @param journal the {@link ChangeJournal}, can be {@code null} to stop recording
+	 */
+	public void setJournal(ChangeJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * Get the journal recording the changes to the world
+	 * 
+	 * @return the {@link ChangeJournal}, or {@code null} if the changes aren't recorded
+	 */
+	public ChangeJournal getJournal() {
+		return this.journal;
+	}
+	
+	/**
+	 * Detaches the world from whatever holds it, once its tiles and rooms
+	 * have been copied elsewhere. Any change started before this returns is
+	 * finished first, and every change after it throws, so no change is
+	 * made to the world once the copy has been taken. The world can still
+	 * be read.
+	 * 
+	 * Worlds that store their tiles elsewhere have no stripes to lock, so
+	 * they must override this to take the lock their changes are made under
+	 * before calling it, and call {@link #checkAttached()} under that lock
+	 * in {@link #insertTile(int, int, Tile)}.
+	 */
+	public void detach() {
+		if(this.stripes == null) {
+			this.detached = true;
+			return;
+		}
+		
+		long[] stamps = lockStripes(0, this.height);
+		try {
+			this.detached = true;
+		} finally {
+			unlockStripes(0, this.height, stamps);
+		}
+	}
+	
+	/**
+	 * Determines whether the world has been detached by {@link #detach()}.
+	 * 
+	 * @return {@code true} if it has, {@code false} if it can still be changed
+	 */
+	public boolean isDetached() {
+		return this.detached;
+	}
+	
+	/**
+	 * Get the seed the world was generated from
+	 * 
+	 * @return the seed, or {@code null} if it's not known
+	 */
+	public Long getSeed() {
+		return this.seed;
+	}
+	
+	/**
+	 * Sets the seed the world was generated from
+	 * 
+	 * @param seed the seed, can be {@code null} if it's not known
+	 */
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Get all the rooms within the room. The list can't be changed, and
+	 * grows as rooms are added to the world, so it can be read from any
+	 * thread while rooms are being added.
 	 * 
 	 * @return a {@link List} of {@link Room}s in the world
 	 */
 	public List<Room> getRooms() {
+		return this.rooms.asList();
+	}
+	
+	/**
+	 * Get the rooms of the world by id, without making a {@link Room} for each.
+	 * 
+	 * @return the {@link RoomStore}
+	 */
+	public RoomStore getRoomStore() {
 		return this.rooms;
 	}
 	
 	/**
-	 * Converts the wall tiles to floor tiles in the world.
+	 * Notifies the world of the area currently being viewed, so worlds
+	 * that load their tiles on demand can release the tiles far from it.
+	 * By default this does nothing.
+	 * 
+	 * @param left the left most x coordinate being viewed
+	 * @param top the top most y coordinate being viewed
+	 * @param viewWidth how wide the viewed area is
+	 * @param viewHeight how high the viewed area is
+	 */
+	public void viewportChanged(int left, int top, int viewWidth, int viewHeight) {
+		
+	}
+	
+	/**
+	 * Sets the spatial index used to check rooms for collisions, any
+	 * rooms already in the world are added to the new index.
+	 * 
+	 * @param roomIndex the {@link RoomIndex} to use
+	 */
+	public void setRoomIndex(RoomIndex roomIndex) {
+		roomIndex.clear();
+		for(Room room : this.rooms.asList()) {
+			roomIndex.add(room);
+		}
+		this.roomIndex = roomIndex;
+	}
+	
+	/**
+	 * Get the packed tile ordinals of the world, stored row by row. This
+	 * is the world's own storage, not a copy.
+	 * 
+	 * @return the packed tiles
+	 */
+	byte[] getPackedTiles() {
+		return this.tiles;
+	}
+	
+	/**
+	 * Records a rectangle of tiles about to be filled in the journal, if
+	 * there is one. Called while holding the locks of the rows.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 * @param tile the {@link Tile} the rectangle is being filled with
+	 */
+	private void record(int x, int y, int rectWidth, int rectHeight, Tile tile) {
+		ChangeJournal journal = this.journal;
+		if(journal != null) {
+			journal.tilesChanging(x, y, rectWidth, rectHeight, (byte)tile.ordinal(), this.tiles, this.width);
+		}
+	}
+	
+	/**
+	 * Records a room being added in the journal, if there is one.
+	 * 
+	 * @param room the {@link Room} added
+	 */
+	private void recordRoom(Room room) {
+		ChangeJournal journal = this.journal;
+		if(journal != null) {
+			journal.roomAdded(room);
+		}
+	}
+	
+	/**
+	 * Ensures the world can still be changed.
+	 * 
+	 * @throws IllegalStateException if the world has been detached
+	 */
+	protected void checkAttached() {
+		if(this.detached) {
+			throw new IllegalStateException("The world has been detached, a change to it would be lost");
+		}
+	}
+	
+	/**
+	 * Takes the write locks of the stripes covering a range of rows, in
+	 * order so writers can't deadlock.
+	 * 
+	 * @param minY the first row
+	 * @param maxY one past the last row
+	 * 
+	 * @return the stamps of the locks, to unlock them with
+	 */
+	private long[] lockStripes(int minY, int maxY) {
+		int firstStripe = minY >>> STRIPE_SHIFT;
+		int lastStripe = (maxY - 1) >>> STRIPE_SHIFT;
+		long[] stamps = new long[lastStripe - firstStripe + 1];
+		for(int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+			stamps[stripe - firstStripe] = this.stripes[stripe].writeLock();
+		}
+		return stamps;
+	}
+	
+	/**
+	 * Releases the write locks taken by {@link #lockStripes(int, int)}.
+	 * 
+	 * @param minY the first row
+	 * @param maxY one past the last row
+	 * @param stamps the stamps of the locks
+	 */
+	private void unlockStripes(int minY, int maxY, long[] stamps) {
+		int firstStripe = minY >>> STRIPE_SHIFT;
+		int lastStripe = (maxY - 1) >>> STRIPE_SHIFT;
+		for(int stripe = lastStripe; stripe >= firstStripe; stripe--) {
+			this.stripes[stripe].unlockWrite(stamps[stripe - firstStripe]);
+		}
+	}
+	
+	/**
+	 * Packs the walls of a row into bits, bit x of the row going into word
+	 * x / 64 + 1 so there's a spare word either side. A row outside of the
+	 * world has no walls, as its tiles are the bounds.
+	 * 
+	 * @param y the y coordinate of the row
+	 * @param into where to pack the walls, (width + 63) / 64 + 2 words long
+	 */
+	private void packWalls(int y, long[] into) {
+		Arrays.fill(into, 0L);
+		if(y < 0 || y >= this.height) {
+			return;
+		}
+		
+		byte wall = (byte)Tile.Wall.ordinal();
+		for(int x = 0; x < this.width; x++) {
+			if((this.tiles == null ? getTile(x, y) == Tile.Wall : this.tiles[y * this.width + x] == wall)) {
+				into[(x >>> 6) + 1] |= 1L << x;
+			}
+		}
+	}
+	
+	/**
+	 * Packs the floors of a word of a row into bits, for worlds that store
+	 * their tiles elsewhere.
+	 * 
+	 * @param y the y coordinate of the row
+	 * @param word the word of the row, holding x coordinates word * 64 onwards
+	 * 
+	 * @return the floors of the word
+	 */
+	private long packFloors(int y, int word) {
+		long bits = 0;
+		int end = Math.min((word + 1) << 6, this.width);
+		for(int x = word << 6; x < end; x++) {
+			if(getTile(x, y) == Tile.Floor) {
+				bits |= 1L << x;
+			}
+		}
+		return bits;
+	}
+	
+	/**
+	 * Copies the ordinals of a rectangle of tiles that's all in one stripe,
+	 * the same as {@link #readTiles(int, int, int, int, byte[])} but with a
+	 * single stamp, as most rectangles read are.
+	 * 
+	 * @param stripe the lock of the stripe
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param minX the left most x coordinate inside the world
+	 * @param minY the top most y coordinate inside the world
+	 * @param maxX one past the right most x coordinate inside the world
+	 * @param maxY one past the bottom most y coordinate inside the world
+	 * @param into where to copy the ordinals, row by row
+	 */
+	private void readStripe(StampedLock stripe, int x, int y, int rectWidth,
+			int minX, int minY, int maxX, int maxY, byte[] into) {
+		for(int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+			long stamp = stripe.tryOptimisticRead();
+			if(stamp != 0) {
+				copyRows(x, y, rectWidth, minX, minY, maxX, maxY, into);
+				if(stripe.validate(stamp)) {
+					return;
+				}
+			}
+		}
+		
+		long stamp = stripe.readLock();
+		try {
+			copyRows(x, y, rectWidth, minX, minY, maxX, maxY, into);
+		} finally {
+			stripe.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * Copies the ordinals of the part of a rectangle of tiles inside the world.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param minX the left most x coordinate inside the world
+	 * @param minY the top most y coordinate inside the world
+	 * @param maxX one past the right most x coordinate inside the world
+	 * @param maxY one past the bottom most y coordinate inside the world
+	 * @param into where to copy the ordinals, row by row
+	 */
+	private void copyRows(int x, int y, int rectWidth, int minX, int minY, int maxX, int maxY, byte[] into) {
+		for(int row = minY; row < maxY; row++) {
+			System.arraycopy(this.tiles, row * this.width + minX, into, (row - y) * rectWidth + minX - x, maxX - minX);
+		}
+	}
+	
+	/**
+	 * Updates the neighbour masks of the tiles around a rectangle that's just
+	 * been filled, setting or clearing the bits of the directions that point
+	 * into the rectangle. The caller holds the locks of the rows either side.
+	 * 
+	 * @param minX the left most x coordinate of the rectangle
+	 * @param minY the top most y coordinate of the rectangle
+	 * @param maxX one past the right most x coordinate of the rectangle
+	 * @param maxY one past the bottom most y coordinate of the rectangle
+	 * @param wall whether the rectangle was filled with walls
+	 */
+	private void updateNeighbourMasks(int minX, int minY, int maxX, int maxY, boolean wall) {
+		int fromX = Math.max(minX - 1, 0);
+		int fromY = Math.max(minY - 1, 0);
+		int toX = Math.min(maxX + 1, this.width);
+		int toY = Math.min(maxY + 1, this.height);
+		
+		for(int y = fromY; y < toY; y++) {
+			for(int x = fromX; x < toX; x++) {
+				// the directions from this tile that lead into the rectangle,
+				// every direction for a tile well inside it
+				int inside = 0;
+				if(x > minX && x < maxX - 1 && y > minY && y < maxY - 1) {
+					inside = 0xFF;
+				} else {
+					for(int direction = 0; direction < 8; direction++) {
+						int neighbourX = x + NeighbourMask.STEP_X[direction];
+						int neighbourY = y + NeighbourMask.STEP_Y[direction];
+						if(neighbourX >= minX && neighbourX < maxX && neighbourY >= minY && neighbourY < maxY) {
+							inside |= 1 << direction;
+						}
+					}
+				}
+				
+				int index = y * this.width + x;
+				int mask = (this.neighbourMasks[index] & ~inside) | (wall ? inside : 0);
+				this.neighbourMasks[index] = (byte)mask;
+			}
+		}
+	}
+	
+	/**
+	 * Works out the neighbour masks of a rectangle of tiles, and of the
+	 * tiles around it, from the tiles themselves.
+	 * 
+	 * @param minX the left most x coordinate of the rectangle
+	 * @param minY the top most y coordinate of the rectangle
+	 * @param maxX one past the right most x coordinate of the rectangle
+	 * @param maxY one past the bottom most y coordinate of the rectangle
+	 */
+	private void computeNeighbourMasks(int minX, int minY, int maxX, int maxY) {
+		int fromX = Math.max(minX - 1, 0);
+		int fromY = Math.max(minY - 1, 0);
+		int toX = Math.min(maxX + 1, this.width);
+		int toY = Math.min(maxY + 1, this.height);
+		byte wall = (byte)Tile.Wall.ordinal();
+		
+		for(int y = fromY; y < toY; y++) {
+			for(int x = fromX; x < toX; x++) {
+				int mask = 0;
+				for(int direction = 0; direction < 8; direction++) {
+					int neighbourX = x + NeighbourMask.STEP_X[direction];
+					int neighbourY = y + NeighbourMask.STEP_Y[direction];
+					if(neighbourX >= 0 && neighbourX < this.width && neighbourY >= 0 && neighbourY < this.height &&
+							this.tiles[neighbourY * this.width + neighbourX] == wall) {
+						mask |= 1 << direction;
+					}
+				}
+				this.neighbourMasks[y * this.width + x] = (byte)mask;
+			}
+		}
+	}
+	
+	/**
+	 * Sets or clears the floor bits of a single tile.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * @param floor whether the tile is a floor
+	 */
+	private void setFloor(int x, int y, boolean floor) {
+		int rowWord = y * this.rowWords + (x >>> 6);
+		int columnWord = x * this.columnWords + (y >>> 6);
+		if(floor) {
+			this.floorRows[rowWord] |= 1L << x;
+			this.floorColumns[columnWord] |= 1L << y;
+		} else {
+			this.floorRows[rowWord] &= ~(1L << x);
+			this.floorColumns[columnWord] &= ~(1L << y);
+		}
+	}
+	
+	/**
+	 * Sets or clears a span of bits, a word at a time.
+	 * 
+	 * @param bits the bits
+	 * @param offset the index of the word holding the first bit of the row or column
+	 * @param from the first bit to set or clear
+	 * @param to one past the last bit to set or clear
+	 * @param set whether to set or clear the bits
+	 */
+	private static void setBits(long[] bits, int offset, int from, int to, boolean set) {
+		int firstWord = offset + (from >>> 6);
+		int lastWord = offset + ((to - 1) >>> 6);
+		// shifts only use the low six bits, so these mask the ends of the span
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		
+		for(int word = firstWord; word <= lastWord; word++) {
+			long mask = -1L;
+			if(word == firstWord) {
+				mask &= firstMask;
+			}
+			if(word == lastWord) {
+				mask &= lastMask;
+			}
+			
+			if(set) {
+				bits[word] |= mask;
+			} else {
+				bits[word] &= ~mask;
+			}
+		}
+	}
+	
+	/**
+	 * Determines whether any bit in a span is set, a word at a time.
+	 * 
+	 * @param bits the bits
+	 * @param offset the index of the word holding the first bit of the row or column
+	 * @param from the first bit to check
+	 * @param to one past the last bit to check
+	 * 
+	 * @return {@code true} if any of the bits are set, {@code false} otherwise
+	 */
+	private static boolean anyBits(long[] bits, int offset, int from, int to) {
+		int firstWord = offset + (from >>> 6);
+		int lastWord = offset + ((to - 1) >>> 6);
+		// shifts only use the low six bits, so these mask the ends of the span
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		
+		if(firstWord == lastWord) {
+			return (bits[firstWord] & firstMask & lastMask) != 0;
+		}
+		
+		if((bits[firstWord] & firstMask) != 0 || (bits[lastWord] & lastMask) != 0) {
+			return true;
+		}
+		
+		for(int word = firstWord + 1; word < lastWord; word++) {
+			if(bits[word] != 0) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Converts the wall tiles to floor tiles in the world, and adds the room.
+	 * The room is only added once it's been carved, so a room is never added
+	 * without its tiles.
 	 * 
 	 * @param roomToCarve the {@link Room} to be carved
+	 * 
+	 * @throws IllegalStateException if the world has been detached
 	 */
 	private void carveRoom(Room roomToCarve) {
-		for(int x = roomToCarve.x; x < (roomToCarve.x + roomToCarve.width); x++) {
-			for(int y = roomToCarve.y; y < (roomToCarve.y + roomToCarve.height); y++) {
-				insertTile(x, y, Tile.Floor);
-			}
+		int minX = Math.max(roomToCarve.x, 0);
+		int minY = Math.max(roomToCarve.y, 0);
+		int maxX = (int)Math.min((long)roomToCarve.x + roomToCarve.width, this.width);
+		int maxY = (int)Math.min((long)roomToCarve.y + roomToCarve.height, this.height);
+		if(this.tiles == null || minX >= maxX || minY >= maxY) {
+			carveRect(roomToCarve.x, roomToCarve.y, roomToCarve.width, roomToCarve.height);
+			checkAttached();
+			registerRoom(roomToCarve);
+			return;
 		}
+		
+		fillClipped(minX, minY, maxX, maxY, Tile.Floor, roomToCarve);
+	}
+	
+	/**
+	 * Adds a room to the rooms, the spatial index and the journal.
+	 * 
+	 * @param room the {@link Room} to add
+	 */
+	private void registerRoom(Room room) {
+		this.rooms.add(room);
+		this.roomIndex.add(room);
+		recordRoom(room);
 	}
 }
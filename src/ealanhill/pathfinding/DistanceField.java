@@ -0,0 +1,442 @@
+package ealanhill.pathfinding;
+
+import java.util.Arrays;
+
+import ealanhill.objects.TileListener;
+import ealanhill.objects.World;
+
+/**
+ * The cost of the cheapest path from every tile of a {@link World} to the
+ * nearest of a set of goals, such as the player, the doors, or the centers
+ * of the rooms, along with the direction to step to follow that path. Any
+ * number of agents can follow the field to the goals, each reading its next
+ * step in constant time, rather than each searching for its own path.
+ * 
+ * Moves and costs are the same as a {@link PathFinder}'s. The distances and
+ * directions are kept in primitive arrays indexed by tile, y * width + x.
+ * The field listens to the world, and when tiles are inserted it only
+ * recomputes the tiles whose paths went through the inserted tiles, and the
+ * tiles the inserted tiles give a cheaper path to.
+ * 
+ * The field is updated on the thread inserting the tiles, so it must only be
+ * read from other threads while the world isn't being changed.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class DistanceField implements TileListener {
+	
+	/** the distance of a tile that can't reach a goal */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+	
+	/** the direction of a tile that is a goal, or can't reach a goal */
+	private static final byte NONE = 0;
+	/** the direction of a tile whose next step is to the east */
+	private static final byte EAST = 1;
+	/** the direction of a tile whose next step is to the west */
+	private static final byte WEST = 2;
+	/** the direction of a tile whose next step is to the south */
+	private static final byte SOUTH = 3;
+	/** the direction of a tile whose next step is to the north */
+	private static final byte NORTH = 4;
+	/** the change in x coordinate of a step in each direction */
+	private static final int[] STEP_X = {0, 1, -1, 0, 0};
+	/** the change in y coordinate of a step in each direction */
+	private static final int[] STEP_Y = {0, 0, 0, 1, -1};
+	
+	/** the world the field covers */
+	private World world = null;
+	/** the width of the world */
+	private int width = 0;
+	/** the height of the world */
+	private int height = 0;
+	/** the cost of entering each tile, by ordinal, {@link PathFinder#BLOCKED} if it can't be entered */
+	private int[] tileCosts = null;
+	/** the cost of the cheapest path from each tile to a goal */
+	private int[] distance = null;
+	/** the direction of each tile's next step towards a goal */
+	private byte[] direction = null;
+	/** the goals, one bit a tile */
+	private long[] goals = null;
+	/** the tiles being recomputed, one bit a tile */
+	private long[] invalid = null;
+	/** the tiles being recomputed, in the order they were found */
+	private int[] queue = null;
+	/** the tiles to spread cheaper paths from, by distance */
+	private TileHeap heap = new TileHeap();
+	/** the number of times the last update set the distance of a tile */
+	private int updatedTiles = 0;
+	
+	/**
+	 * Create a field over a world, with no goals. The field listens to the
+	 * world until {@link #detach()} is called.
+	 * 
+	 * @param world the {@link World} the field covers
+	 * 
+	 * @throws IllegalArgumentException if the world has too many tiles to index with an int
+	 */
+	public DistanceField(World world) {
+		if((long)world.getWidth() * world.getHeight() > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The world is too large for a distance field");
+		}
+		
+		this.world = world;
+		this.width = world.getWidth();
+		this.height = world.getHeight();
+		this.tileCosts = PathFinder.tileCosts(PathFinder.DEFAULT_DOOR_COST);
+		
+		int tiles = this.width * this.height;
+		this.distance = new int[tiles];
+		this.direction = new byte[tiles];
+		this.goals = new long[(tiles + 63) >>> 6];
+		this.invalid = new long[(tiles + 63) >>> 6];
+		this.queue = new int[tiles];
+		Arrays.fill(this.distance, UNREACHABLE);
+		
+		world.addTileListener(this);
+	}
+	
+	/**
+	 * Sets the cost of entering a closed door, the cost of entering a floor
+	 * tile is 1. The whole field is recomputed.
+	 * 
+	 * @param doorCost the cost of entering a closed door, can be {@code null}
+	 * 
+	 * @return the {@link DistanceField}
+	 * 
+	 * @throws IllegalArgumentException if the cost is less than 1
+	 */
+	public DistanceField setDoorCost(Integer doorCost) {
+		// we don't want to set the doorCost to null, as that would
+		// cause a NullPointerException
+		if(doorCost != null) {
+			if(doorCost < 1) {
+				throw new IllegalArgumentException("The door cost must be at least 1");
+			}
+			
+			// grab the int value
+			this.tileCosts = PathFinder.tileCosts(doorCost);
+			compute();
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Adds a goal, spreading the paths to it out from the goal until they're
+	 * no cheaper than the paths to the other goals.
+	 * 
+	 * @param x the x coordinate of the goal
+	 * @param y the y coordinate of the goal
+	 */
+	public void addGoal(int x, int y) {
+		if(!inside(x, y)) {
+			return;
+		}
+		
+		int tile = y * this.width + x;
+		this.goals[tile >>> 6] |= 1L << tile;
+		this.updatedTiles = 0;
+		if(cost(x, y) != PathFinder.BLOCKED && this.distance[tile] != 0) {
+			this.distance[tile] = 0;
+			this.direction[tile] = NONE;
+			this.heap.clear();
+			this.heap.push(0, tile);
+			spread();
+		}
+	}
+	
+	/**
+	 * Removes a goal, recomputing the tiles whose cheapest path led to it.
+	 * 
+	 * @param x the x coordinate of the goal
+	 * @param y the y coordinate of the goal
+	 */
+	public void removeGoal(int x, int y) {
+		if(!inside(x, y)) {
+			return;
+		}
+		
+		int tile = y * this.width + x;
+		this.goals[tile >>> 6] &= ~(1L << tile);
+		repair(x, y, 1, 1);
+	}
+	
+	/**
+	 * Removes every goal, leaving every tile unreachable.
+	 */
+	public void clearGoals() {
+		Arrays.fill(this.goals, 0L);
+		Arrays.fill(this.distance, UNREACHABLE);
+		Arrays.fill(this.direction, NONE);
+	}
+	
+	/**
+	 * Recomputes the whole field from the goals.
+	 */
+	public void compute() {
+		Arrays.fill(this.distance, UNREACHABLE);
+		Arrays.fill(this.direction, NONE);
+		
+		// spread out from every goal at once
+		this.heap.clear();
+		this.updatedTiles = 0;
+		for(int word = 0; word < this.goals.length; word++) {
+			long bits = this.goals[word];
+			while(bits != 0) {
+				int tile = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if(cost(tile % this.width, tile / this.width) != PathFinder.BLOCKED) {
+					this.distance[tile] = 0;
+					this.heap.push(0, tile);
+				}
+			}
+		}
+		spread();
+	}
+	
+	/**
+	 * Get the cost of the cheapest path from a tile to a goal
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the cost, or {@link #UNREACHABLE} if no goal can be reached
+	 */
+	public int getDistance(int x, int y) {
+		return inside(x, y) ? this.distance[y * this.width + x] : UNREACHABLE;
+	}
+	
+	/**
+	 * Get the x coordinate of the next step from a tile towards a goal
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the x coordinate of the next tile, or the tile's own if it's
+	 * a goal or can't reach a goal
+	 */
+	public int getNextX(int x, int y) {
+		return inside(x, y) ? x + STEP_X[this.direction[y * this.width + x]] : x;
+	}
+	
+	/**
+	 * Get the y coordinate of the next step from a tile towards a goal
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the y coordinate of the next tile, or the tile's own if it's
+	 * a goal or can't reach a goal
+	 */
+	public int getNextY(int x, int y) {
+		return inside(x, y) ? y + STEP_Y[this.direction[y * this.width + x]] : y;
+	}
+	
+	/**
+	 * Get the number of times the last update set the distance of a tile,
+	 * a measure of how much of the field the update had to recompute
+	 * 
+	 * @return
+	 */
+	public int getUpdatedTiles() {
+		return this.updatedTiles;
+	}
+	
+	/**
+	 * Stops the field listening to the world, after which it's no longer
+	 * kept up to date.
+	 */
+	public void detach() {
+		this.world.removeTileListener(this);
+	}
+	
+	@Override
+	public void tilesChanged(World world, int x, int y, int width, int height) {
+		repair(x, y, width, height);
+	}
+	
+	/**
+	 * Recomputes the field after a rectangle of tiles has changed. The tiles
+	 * in the rectangle, and every tile whose cheapest path went through one
+	 * of them, are forgotten; they're then given the cheapest path through
+	 * the tiles around them that weren't forgotten, and any cheaper paths
+	 * are spread out from them.
+	 * 
+	 * @param x the left most x coordinate of the rectangle
+	 * @param y the top most y coordinate of the rectangle
+	 * @param rectWidth how wide the rectangle is
+	 * @param rectHeight how high the rectangle is
+	 */
+	private void repair(int x, int y, int rectWidth, int rectHeight) {
+		int minX = Math.max(x, 0);
+		int minY = Math.max(y, 0);
+		int maxX = (int)Math.min((long)x + rectWidth, this.width);
+		int maxY = (int)Math.min((long)y + rectHeight, this.height);
+		
+		// the changed tiles
+		int count = 0;
+		for(int row = minY; row < maxY; row++) {
+			for(int column = minX; column < maxX; column++) {
+				int tile = row * this.width + column;
+				this.invalid[tile >>> 6] |= 1L << tile;
+				this.queue[count++] = tile;
+			}
+		}
+		
+		// the tiles whose next step leads to a forgotten tile
+		for(int i = 0; i < count; i++) {
+			int tile = this.queue[i];
+			int tileX = tile % this.width;
+			int tileY = tile / this.width;
+			count = forgetDependent(tileX + 1, tileY, WEST, count);
+			count = forgetDependent(tileX - 1, tileY, EAST, count);
+			count = forgetDependent(tileX, tileY + 1, NORTH, count);
+			count = forgetDependent(tileX, tileY - 1, SOUTH, count);
+		}
+		
+		for(int i = 0; i < count; i++) {
+			int tile = this.queue[i];
+			this.distance[tile] = UNREACHABLE;
+			this.direction[tile] = NONE;
+		}
+		
+		// give each forgotten tile the cheapest path through its neighbours
+		this.heap.clear();
+		for(int i = 0; i < count; i++) {
+			int tile = this.queue[i];
+			this.invalid[tile >>> 6] &= ~(1L << tile);
+			
+			int tileX = tile % this.width;
+			int tileY = tile / this.width;
+			int cost = cost(tileX, tileY);
+			if(cost == PathFinder.BLOCKED) {
+				continue;
+			}
+			
+			if((this.goals[tile >>> 6] & (1L << tile)) != 0) {
+				this.distance[tile] = 0;
+				this.heap.push(0, tile);
+				continue;
+			}
+			
+			// stepping onto the neighbour costs the neighbour's cost
+			for(byte step = EAST; step <= NORTH; step++) {
+				int neighbourX = tileX + STEP_X[step];
+				int neighbourY = tileY + STEP_Y[step];
+				int neighbourCost = cost(neighbourX, neighbourY);
+				if(neighbourCost != PathFinder.BLOCKED) {
+					int through = this.distance[neighbourY * this.width + neighbourX];
+					if(through != UNREACHABLE && through + neighbourCost < this.distance[tile]) {
+						this.distance[tile] = through + neighbourCost;
+						this.direction[tile] = step;
+					}
+				}
+			}
+			if(this.distance[tile] != UNREACHABLE) {
+				this.heap.push(this.distance[tile], tile);
+			}
+		}
+		
+		this.updatedTiles = count;
+		spread();
+	}
+	
+	/**
+	 * Forgets a tile if its next step leads to a forgotten tile.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * @param towards the direction of the forgotten tile from the tile
+	 * @param count the number of tiles forgotten so far
+	 * 
+	 * @return the number of tiles forgotten
+	 */
+	private int forgetDependent(int x, int y, byte towards, int count) {
+		if(!inside(x, y)) {
+			return count;
+		}
+		
+		int tile = y * this.width + x;
+		if(this.direction[tile] == towards && (this.invalid[tile >>> 6] & (1L << tile)) == 0) {
+			this.invalid[tile >>> 6] |= 1L << tile;
+			this.queue[count++] = tile;
+		}
+		return count;
+	}
+	
+	/**
+	 * Spreads cheaper paths out from the tiles in the heap, in order of
+	 * distance, until no tile's path can be made any cheaper.
+	 */
+	private void spread() {
+		while(!this.heap.isEmpty()) {
+			long entry = this.heap.pop();
+			int tile = TileHeap.tile(entry);
+			int tileDistance = TileHeap.priority(entry);
+			
+			// the tile has been given a cheaper path since this entry was added
+			if(tileDistance != this.distance[tile]) {
+				continue;
+			}
+			
+			// a neighbour's path steps onto this tile, paying this tile's cost
+			int tileX = tile % this.width;
+			int tileY = tile / this.width;
+			int through = tileDistance + cost(tileX, tileY);
+			spreadTo(tileX + 1, tileY, WEST, through);
+			spreadTo(tileX - 1, tileY, EAST, through);
+			spreadTo(tileX, tileY + 1, NORTH, through);
+			spreadTo(tileX, tileY - 1, SOUTH, through);
+		}
+	}
+	
+	/**
+	 * Gives a tile the path through its neighbour, if that's cheaper.
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * @param towards the direction of the neighbour from the tile
+	 * @param through the cost of the path through the neighbour
+	 */
+	private void spreadTo(int x, int y, byte towards, int through) {
+		if(cost(x, y) == PathFinder.BLOCKED) {
+			return;
+		}
+		
+		int tile = y * this.width + x;
+		if(through < this.distance[tile]) {
+			this.distance[tile] = through;
+			this.direction[tile] = towards;
+			this.heap.push(through, tile);
+			this.updatedTiles++;
+		}
+	}
+	
+	/**
+	 * Get the cost of entering a tile
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the cost, or {@link PathFinder#BLOCKED} if the tile can't be entered
+	 */
+	private int cost(int x, int y) {
+		if(!inside(x, y)) {
+			return PathFinder.BLOCKED;
+		}
+		return this.tileCosts[this.world.getTile(x, y).ordinal()];
+	}
+	
+	/**
+	 * Get whether a tile is within the world
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return
+	 */
+	private boolean inside(int x, int y) {
+		return x >= 0 && x < this.width && y >= 0 && y < this.height;
+	}
+}
@@ -0,0 +1,128 @@
+package ealanhill.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A path through a world found by a {@link PathFinder}, from the start tile
+ * to the goal tile inclusive. A path can be passed back to the finder to be
+ * filled in again, so repeated queries don't need a new path each time.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class Path {
+	
+	/** the width of the world the path is in, used to unpack the tiles */
+	private int worldWidth = 0;
+	/** the tiles of the path, each packed as y * width + x */
+	private int[] tiles = new int[16];
+	/** the number of tiles in the path */
+	private int length = 0;
+	/** the cost of following the path, 0 if no path was found */
+	private int cost = 0;
+	/** whether a path was found */
+	private boolean found = false;
+	/** the number of tiles the search expanded */
+	int expanded = 0;
+	
+	/**
+	 * Get whether a path was found, the rest of the path is empty if not
+	 * 
+	 * @return
+	 */
+	public boolean isFound() {
+		return this.found;
+	}
+	
+	/**
+	 * Get the number of tiles in the path, including the start and goal
+	 * 
+	 * @return
+	 */
+	public int getLength() {
+		return this.length;
+	}
+	
+	/**
+	 * Get the cost of following the path, the cost of every tile entered
+	 * after the start
+	 * 
+	 * @return
+	 */
+	public int getCost() {
+		return this.cost;
+	}
+	
+	/**
+	 * Get the number of tiles the search expanded to find the path, a
+	 * measure of how much work the search did
+	 * 
+	 * @return
+	 */
+	public int getExpanded() {
+		return this.expanded;
+	}
+	
+	/**
+	 * Get the x coordinate of a tile of the path
+	 * 
+	 * @param index the index of the tile, 0 is the start
+	 * 
+	 * @return
+	 */
+	public int getX(int index) {
+		return this.tiles[index] % this.worldWidth;
+	}
+	
+	/**
+	 * Get the y coordinate of a tile of the path
+	 * 
+	 * @param index the index of the tile, 0 is the start
+	 * 
+	 * @return
+	 */
+	public int getY(int index) {
+		return this.tiles[index] / this.worldWidth;
+	}
+	
+	/**
+	 * Empties the path, ready to be filled in.
+	 * 
+	 * @param worldWidth the width of the world the path is in
+	 */
+	void reset(int worldWidth) {
+		this.worldWidth = worldWidth;
+		this.length = 0;
+		this.cost = 0;
+		this.found = false;
+		this.expanded = 0;
+	}
+	
+	/**
+	 * Adds a tile to the end of the path.
+	 * 
+	 * @param tile the tile, packed as y * width + x
+	 */
+	void add(int tile) {
+		if(this.length == this.tiles.length) {
+			this.tiles = Arrays.copyOf(this.tiles, this.length * 2);
+		}
+		this.tiles[this.length++] = tile;
+	}
+	
+	/**
+	 * Reverses the tiles of the path, which are found from the goal back to
+	 * the start, and marks the path as found.
+	 * 
+	 * @param cost the cost of following the path
+	 */
+	void finish(int cost) {
+		for(int i = 0, j = this.length - 1; i < j; i++, j--) {
+			int tile = this.tiles[i];
+			this.tiles[i] = this.tiles[j];
+			this.tiles[j] = tile;
+		}
+		this.cost = cost;
+		this.found = true;
+	}
+}
@@ -0,0 +1,783 @@
+package ealanhill.pathfinding;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ealanhill.objects.Tile;
+import ealanhill.objects.World;
+
+/**
+ * Finds the shortest paths between tiles of a {@link World}, moving one tile
+ * north, south, east or west at a time. Walls and the bounds of the world
+ * block movement, entering a floor tile costs 1, and entering a closed door
+ * costs the door cost.
+ * 
+ * Every search works on primitive arrays indexed by tile, y * width + x, and
+ * an open heap of packed longs. The arrays belong to the thread running the
+ * search and are reused by its next search without being cleared, so after
+ * the first search on a thread, a search only allocates if its open heap or
+ * path outgrows the last one. Batches of paths are found on a pool kept by
+ * the finder, so its threads keep their arrays from one batch to the next.
+ * 
+ * The world is read as the search goes, so it mustn't be changed while
+ * paths are being found, and a world that changes itself as it's read,
+ * such as a {@link ealanhill.objects.ChunkedWorld}, can only be searched
+ * from one thread at a time.
+ * 
+ * @author Alan Hill
+ * 
+ */
+public class PathFinder {
+	
+	/** the default cost of entering a closed door, a turn to open it and a turn to step through it */
+	public static final int DEFAULT_DOOR_COST = 2;
+	
+	/** the cost of a tile that can't be entered */
+	static final int BLOCKED = -1;
+	
+	/** the world to find paths through */
+	private World world = null;
+	/** the width of the world */
+	private int width = 0;
+	/** the height of the world */
+	private int height = 0;
+	/** the number of tiles in the world */
+	private int tiles = 0;
+	/** the cost of entering each tile, by ordinal, {@link #BLOCKED} if it can't be entered */
+	private int[] tileCosts = null;
+	/** the arrays used by the searches of each thread */
+	private ThreadLocal<Scratch> scratch = null;
+	/** the pool batches of paths are found on, {@code null} until a batch is found */
+	private ForkJoinPool pool = null;
+	
+	/**
+	 * Create a path finder over a world.
+	 * 
+	 * @param world the {@link World} to find paths through
+	 * 
+	 * @throws IllegalArgumentException if the world has too many tiles to index with an int
+	 */
+	public PathFinder(World world) {
+		long tiles = (long)world.getWidth() * world.getHeight();
+		if(tiles > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The world is too large to find paths through");
+		}
+		
+		this.world = world;
+		this.width = world.getWidth();
+		this.height = world.getHeight();
+		this.tiles = (int)tiles;
+		this.scratch = ThreadLocal.withInitial(() -> new Scratch(this.tiles));
+		setDoorCost(DEFAULT_DOOR_COST);
+	}
+	
+	/**
+	 * Sets the cost of entering a closed door, the cost of entering
+	 * a floor tile is 1.
+	 * 
+	 * @param doorCost the cost of entering a closed door, can be {@code null}
+	 * 
+	 * @return the {@link PathFinder}
+	 * 
+	 * @throws IllegalArgumentException if the cost is less than 1
+	 */
+	public PathFinder setDoorCost(Integer doorCost) {
+		// we don't want to set the doorCost to null, as that would
+		// cause a NullPointerException
+		if(doorCost != null) {
+			// the distance to the goal is only a lower bound on the cost
+			// if no tile costs less than a floor tile
+			if(doorCost < 1) {
+				throw new IllegalArgumentException("The door cost must be at least 1");
+			}
+			
+			// grab the int value
+			this.tileCosts = tileCosts(doorCost);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Finds the cheapest path between two tiles using A*.
+	 * 
+	 * @param startX the x coordinate of the start
+	 * @param startY the y coordinate of the start
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * 
+	 * @return the {@link Path}, which isn't found if the goal can't be reached
+	 */
+	public Path findPath(int startX, int startY, int goalX, int goalY) {
+		return findPath(startX, startY, goalX, goalY, new Path());
+	}
+	
+	/**
+	 * Finds the cheapest path between two tiles using A*, filling in the
+	 * given path rather than creating a new one.
+	 * 
+	 * @param startX the x coordinate of the start
+	 * @param startY the y coordinate of the start
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * @param path the {@link Path} to fill in
+	 * 
+	 * @return the {@link Path}, which isn't found if the goal can't be reached
+	 */
+	public Path findPath(int startX, int startY, int goalX, int goalY, Path path) {
+		return search(startX, startY, goalX, goalY, path, false);
+	}
+	
+	/**
+	 * Finds the shortest path between two tiles using Jump Point Search.
+	 * Rather than adding every tile to the open heap, the search jumps along
+	 * rows and columns and only stops at tiles where the path could turn,
+	 * which skips most of the open floor of the rooms.
+	 * 
+	 * Closed doors are always stopped at, so their cost is counted, but the
+	 * jumps assume every tile costs the same. When there are routes of the
+	 * same length, one through a door and one not, the path may go through
+	 * the door; use {@link #findPath(int, int, int, int)} if the door cost
+	 * must always be avoided.
+	 * 
+	 * @param startX the x coordinate of the start
+	 * @param startY the y coordinate of the start
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * 
+	 * @return the {@link Path}, which isn't found if the goal can't be reached
+	 */
+	public Path findJumpPath(int startX, int startY, int goalX, int goalY) {
+		return findJumpPath(startX, startY, goalX, goalY, new Path());
+	}
+	
+	/**
+	 * Finds the shortest path between two tiles using Jump Point Search,
+	 * filling in the given path rather than creating a new one.
+	 * 
+	 * @param startX the x coordinate of the start
+	 * @param startY the y coordinate of the start
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * @param path the {@link Path} to fill in
+	 * 
+	 * @return the {@link Path}, which isn't found if the goal can't be reached
+	 * 
+	 * @see #findJumpPath(int, int, int, int)
+	 */
+	public Path findJumpPath(int startX, int startY, int goalX, int goalY, Path path) {
+		return search(startX, startY, goalX, goalY, path, true);
+	}
+	
+	/**
+	 * Finds a batch of paths at the same time on a {@link ForkJoinPool}.
+	 * 
+	 * @param queries the start and goal of each path, four values a path:
+	 * start x, start y, goal x, goal y
+	 * @param jumpPoints whether to use Jump Point Search rather than A*
+	 * @param parallelism the number of threads to find the paths on
+	 * 
+	 * @return the {@link Path} of each query, in the order of the queries
+	 */
+	public Path[] findPaths(int[] queries, boolean jumpPoints, int parallelism) {
+		return findPaths(queries, jumpPoints, parallelism, new Path[queries.length / 4]);
+	}
+	
+	/**
+	 * Finds a batch of paths at the same time on a {@link ForkJoinPool},
+	 * filling in the given paths rather than creating new ones. The pool is
+	 * kept for the next batch with the same number of threads, and its
+	 * threads let go of their arrays once they've been idle for a while.
+	 * Each thread needs a bit per tile of the world, so the number of
+	 * threads is capped to keep them to a quarter of the maximum heap.
+	 * 
+	 * @param queries the start and goal of each path, four values a path:
+	 * start x, start y, goal x, goal y
+	 * @param jumpPoints whether to use Jump Point Search rather than A*
+	 * @param parallelism the number of threads to find the paths on
+	 * @param paths the {@link Path} to fill in for each query, a path is
+	 * created for any that are {@code null}
+	 * 
+	 * @return the paths, in the order of the queries
+	 * 
+	 * @throws IllegalArgumentException if there are fewer paths than queries
+	 */
+	public Path[] findPaths(int[] queries, boolean jumpPoints, int parallelism, Path[] paths) {
+		int count = queries.length / 4;
+		if(paths.length < count) {
+			throw new IllegalArgumentException("There are " + count + " queries but only " + paths.length + " paths");
+		}
+		
+		pool(Math.max(1, Math.min(parallelism, maxParallelism()))).invoke(new PathTask(0, count, queries, jumpPoints, paths));
+		return paths;
+	}
+	
+	/**
+	 * Get the most threads a batch can be found on, as many as have room
+	 * for their arrays in a quarter of the maximum heap.
+	 * 
+	 * @return the number of threads, at least one
+	 */
+	private int maxParallelism() {
+		long perThread = Scratch.estimateSize(this.tiles);
+		return (int)Math.max(1, Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / perThread));
+	}
+	
+	/**
+	 * Get the pool to find a batch of paths on, replacing the pool kept if
+	 * it has a different number of threads.
+	 * 
+	 * @param parallelism the number of threads
+	 * 
+	 * @return the {@link ForkJoinPool}
+	 */
+	private synchronized ForkJoinPool pool(int parallelism) {
+		if(this.pool == null || this.pool.getParallelism() != parallelism) {
+			// a batch still running on the old pool is allowed to finish
+			if(this.pool != null) {
+				this.pool.shutdown();
+			}
+			this.pool = new ForkJoinPool(parallelism);
+		}
+		return this.pool;
+	}
+	
+	/**
+	 * Finds the cheapest path between two tiles.
+	 * 
+	 * @param startX the x coordinate of the start
+	 * @param startY the y coordinate of the start
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * @param path the {@link Path} to fill in
+	 * @param jumpPoints whether to use Jump Point Search rather than A*
+	 * 
+	 * @return the {@link Path}
+	 */
+	private Path search(int startX, int startY, int goalX, int goalY, Path path, boolean jumpPoints) {
+		path.reset(this.width);
+		
+		// there's no path if either end can't be stood on
+		if(cost(startX, startY) == BLOCKED || cost(goalX, goalY) == BLOCKED) {
+			return path;
+		}
+		
+		Scratch scratch = this.scratch.get();
+		scratch.begin();
+		
+		int start = startY * this.width + startX;
+		int goal = goalY * this.width + goalX;
+		scratch.open(start, 0, start, distance(startX, startY, goalX, goalY));
+		
+		while(!scratch.heap.isEmpty()) {
+			int tile = TileHeap.tile(scratch.heap.pop());
+			
+			// the heap may hold older, more expensive copies of a tile
+			if(scratch.isClosed(tile)) {
+				continue;
+			}
+			scratch.close(tile);
+			path.expanded++;
+			
+			if(tile == goal) {
+				buildPath(scratch, start, goal, path);
+				return path;
+			}
+			
+			int x = tile % this.width;
+			int y = tile / this.width;
+			if(jumpPoints) {
+				expandJumpPoints(scratch, tile, x, y, goalX, goalY);
+			} else {
+				expandNeighbours(scratch, tile, x, y, goalX, goalY);
+			}
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * Opens the four tiles next to a tile, for A*.
+	 * 
+	 * @param scratch the arrays of the search
+	 * @param tile the tile being expanded
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 */
+	private void expandNeighbours(Scratch scratch, int tile, int x, int y, int goalX, int goalY) {
+		relax(scratch, tile, x + 1, y, goalX, goalY);
+		relax(scratch, tile, x - 1, y, goalX, goalY);
+		relax(scratch, tile, x, y + 1, goalX, goalY);
+		relax(scratch, tile, x, y - 1, goalX, goalY);
+	}
+	
+	/**
+	 * Opens the next tile of a path, if it can be entered and the path to it
+	 * is cheaper than any found so far.
+	 * 
+	 * @param scratch the arrays of the search
+	 * @param from the tile the path comes from
+	 * @param x the x coordinate of the next tile
+	 * @param y the y coordinate of the next tile
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 */
+	private void relax(Scratch scratch, int from, int x, int y, int goalX, int goalY) {
+		int cost = cost(x, y);
+		if(cost == BLOCKED) {
+			return;
+		}
+		
+		int tile = y * this.width + x;
+		if(!scratch.isClosed(tile)) {
+			scratch.open(tile, scratch.cost(from) + cost, from, distance(x, y, goalX, goalY));
+		}
+	}
+	
+	/**
+	 * Opens the jump points reached from a tile, for Jump Point Search. The
+	 * start is jumped from in every direction, any other tile is jumped from
+	 * in every direction but back the way the path came.
+	 * 
+	 * @param scratch the arrays of the search
+	 * @param tile the tile being expanded
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 */
+	private void expandJumpPoints(Scratch scratch, int tile, int x, int y, int goalX, int goalY) {
+		int parent = scratch.parent(tile);
+		int dx = Integer.signum(x - parent % this.width);
+		int dy = Integer.signum(y - parent / this.width);
+		
+		if(dy == 0 || dx != 0) {
+			// moving horizontally, or the start
+			if(dx >= 0) {
+				openJumpPoint(scratch, tile, jumpHorizontal(x, y, 1, goalX, goalY), goalX, goalY);
+			}
+			if(dx <= 0) {
+				openJumpPoint(scratch, tile, jumpHorizontal(x, y, -1, goalX, goalY), goalX, goalY);
+			}
+			openJumpPoint(scratch, tile, jumpVertical(x, y, 1, goalX, goalY), goalX, goalY);
+			openJumpPoint(scratch, tile, jumpVertical(x, y, -1, goalX, goalY), goalX, goalY);
+		} else {
+			// moving vertically
+			openJumpPoint(scratch, tile, jumpVertical(x, y, dy, goalX, goalY), goalX, goalY);
+			openJumpPoint(scratch, tile, jumpHorizontal(x, y, 1, goalX, goalY), goalX, goalY);
+			openJumpPoint(scratch, tile, jumpHorizontal(x, y, -1, goalX, goalY), goalX, goalY);
+		}
+	}
+	
+	/**
+	 * Opens a jump point, costing the straight line to it from the tile
+	 * it was jumped to from.
+	 * 
+	 * @param scratch the arrays of the search
+	 * @param from the tile jumped from
+	 * @param to the jump point, -1 if the jump didn't find one
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 */
+	private void openJumpPoint(Scratch scratch, int from, int to, int goalX, int goalY) {
+		if(to < 0 || scratch.isClosed(to)) {
+			return;
+		}
+		
+		// every tile jumped over is a floor tile, only the jump point can be a door
+		int x = to % this.width;
+		int y = to / this.width;
+		int length = Math.abs(x - from % this.width) + Math.abs(y - from / this.width);
+		int cost = scratch.cost(from) + length - 1 + cost(x, y);
+		scratch.open(to, cost, from, distance(x, y, goalX, goalY));
+	}
+	
+	/**
+	 * Jumps along a row until reaching the goal, a door, or a tile where the
+	 * path could turn because a wall beside the row has just ended.
+	 * 
+	 * @param x the x coordinate to jump from
+	 * @param y the y coordinate of the row
+	 * @param dx the direction to jump, 1 for east or -1 for west
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * 
+	 * @return the jump point, or -1 if the jump hit a wall first
+	 */
+	private int jumpHorizontal(int x, int y, int dx, int goalX, int goalY) {
+		while(true) {
+			x += dx;
+			int cost = cost(x, y);
+			if(cost == BLOCKED) {
+				return -1;
+			}
+			
+			if((x == goalX && y == goalY) || cost != 1 ||
+					(cost(x, y - 1) != BLOCKED && cost(x - dx, y - 1) == BLOCKED) ||
+					(cost(x, y + 1) != BLOCKED && cost(x - dx, y + 1) == BLOCKED)) {
+				return y * this.width + x;
+			}
+		}
+	}
+	
+	/**
+	 * Jumps along a column until reaching the goal, a door, a tile where the
+	 * path could turn because a wall beside the column has just ended, or a
+	 * tile with a jump point along its row.
+	 * 
+	 * @param x the x coordinate of the column
+	 * @param y the y coordinate to jump from
+	 * @param dy the direction to jump, 1 for south or -1 for north
+	 * @param goalX the x coordinate of the goal
+	 * @param goalY the y coordinate of the goal
+	 * 
+	 * @return the jump point, or -1 if the jump hit a wall first
+	 */
+	private int jumpVertical(int x, int y, int dy, int goalX, int goalY) {
+		while(true) {
+			y += dy;
+			int cost = cost(x, y);
+			if(cost == BLOCKED) {
+				return -1;
+			}
+			
+			if((x == goalX && y == goalY) || cost != 1 ||
+					(cost(x - 1, y) != BLOCKED && cost(x - 1, y - dy) == BLOCKED) ||
+					(cost(x + 1, y) != BLOCKED && cost(x + 1, y - dy) == BLOCKED) ||
+					jumpHorizontal(x, y, 1, goalX, goalY) >= 0 ||
+					jumpHorizontal(x, y, -1, goalX, goalY) >= 0) {
+				return y * this.width + x;
+			}
+		}
+	}
+	
+	/**
+	 * Fills in a path by following the parents back from the goal, filling
+	 * in the straight lines between jump points.
+	 * 
+	 * @param scratch the arrays of the search
+	 * @param start the start tile
+	 * @param goal the goal tile
+	 * @param path the {@link Path} to fill in
+	 */
+	private void buildPath(Scratch scratch, int start, int goal, Path path) {
+		int tile = goal;
+		path.add(tile);
+		while(tile != start) {
+			int parent = scratch.parent(tile);
+			int step = Math.abs(parent - tile) < this.width ? Integer.signum(parent - tile)
+					: Integer.signum(parent - tile) * this.width;
+			while(tile != parent) {
+				tile += step;
+				path.add(tile);
+			}
+		}
+		path.finish(scratch.cost(goal));
+	}
+	
+	/**
+	 * Get the cost of entering a tile
+	 * 
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the cost, or {@link #BLOCKED} if the tile can't be entered
+	 */
+	private int cost(int x, int y) {
+		if(x < 0 || x >= this.width || y < 0 || y >= this.height) {
+			return BLOCKED;
+		}
+		return this.tileCosts[this.world.getTile(x, y).ordinal()];
+	}
+	
+	/**
+	 * Get the cost of entering each type of tile, walls and the bounds of
+	 * the world can't be entered and floor tiles and stairs cost 1.
+	 * 
+	 * @param doorCost the cost of entering a closed door
+	 * 
+	 * @return the costs, by tile ordinal, {@link #BLOCKED} if the tile can't be entered
+	 */
+	static int[] tileCosts(int doorCost) {
+		int[] costs = new int[Tile.values().length];
+		for(Tile tile : Tile.values()) {
+			switch(tile) {
+				case Floor:
+				case StairsUp:
+				case StairsDown:
+					costs[tile.ordinal()] = 1;
+					break;
+				case ClosedDoor:
+					costs[tile.ordinal()] = doorCost;
+					break;
+				default:
+					costs[tile.ordinal()] = BLOCKED;
+			}
+		}
+		return costs;
+	}
+	
+	/**
+	 * Get the number of moves between two tiles if nothing was in the way,
+	 * which is never more than the cost of the path between them.
+	 * 
+	 * @return
+	 */
+	private static int distance(int x1, int y1, int x2, int y2) {
+		return Math.abs(x1 - x2) + Math.abs(y1 - y2);
+	}
+	
+	/**
+	 * The arrays of the searches run on one thread. The closed tiles are a
+	 * bit per tile of the world, and the cost and parent of each tile a
+	 * search reaches are kept in a hash table, so the memory taken grows
+	 * with the tiles reached rather than the size of the world. Rather than
+	 * clearing everything before each search, only the tiles the last
+	 * search reached are cleared.
+	 */
+	private static class Scratch {
+		
+		/** marks a slot of the table without a tile */
+		private static final int EMPTY = -1;
+		/** the number of slots the table starts with */
+		private static final int INITIAL_CAPACITY = 1 << 10;
+		
+		/** whether each tile has been expanded, a bit per tile */
+		private long[] closed = null;
+		/** the tile held in each slot of the table, {@link #EMPTY} if none */
+		private int[] keys = null;
+		/** the cheapest cost found to the tile in each slot */
+		private int[] cost = null;
+		/** the tile the cheapest path to the tile in each slot came from */
+		private int[] parent = null;
+		/** the slots filled by the current search, in the order they were filled */
+		private int[] used = null;
+		/** the number of slots filled by the current search */
+		private int size = 0;
+		/** how far to shift a hash to leave as many bits as the table has slots */
+		private int shift = 0;
+		/** the open tiles, by estimated total cost */
+		private TileHeap heap = new TileHeap();
+		
+		/**
+		 * Create the arrays for a world.
+		 * 
+		 * @param tiles the number of tiles in the world
+		 */
+		Scratch(int tiles) {
+			this.closed = new long[(int)(((long)tiles + 63) >>> 6)];
+			allocate(INITIAL_CAPACITY);
+		}
+		
+		/**
+		 * Estimates the number of bytes the arrays of a thread take before
+		 * a search, a bit per tile and the starting table.
+		 * 
+		 * @param tiles the number of tiles in the world
+		 * 
+		 * @return the number of bytes
+		 */
+		static long estimateSize(int tiles) {
+			return (((long)tiles + 63) >>> 6) * 8 + 16L * INITIAL_CAPACITY;
+		}
+		
+		/**
+		 * Readies the arrays for a new search, clearing the tiles the last
+		 * search reached.
+		 */
+		void begin() {
+			for(int i = 0; i < this.size; i++) {
+				int slot = this.used[i];
+				int tile = this.keys[slot];
+				this.closed[tile >>> 6] &= ~(1L << tile);
+				this.keys[slot] = EMPTY;
+			}
+			this.size = 0;
+			this.heap.clear();
+		}
+		
+		/**
+		 * Opens a tile, if the path to it is cheaper than any found so far.
+		 * 
+		 * @param tile the tile
+		 * @param cost the cost of the path to the tile
+		 * @param parent the tile the path came from
+		 * @param estimate the estimated cost from the tile to the goal
+		 */
+		void open(int tile, int cost, int parent, int estimate) {
+			int slot = slot(tile);
+			if(this.keys[slot] == tile) {
+				if(this.cost[slot] <= cost) {
+					return;
+				}
+			} else {
+				// keep the table at most half full
+				if(2 * (this.size + 1) > this.keys.length) {
+					grow();
+					slot = slot(tile);
+				}
+				this.keys[slot] = tile;
+				this.used[this.size++] = slot;
+			}
+			this.cost[slot] = cost;
+			this.parent[slot] = parent;
+			
+			// a cheaper path just adds another entry, the old one is skipped when it's popped
+			this.heap.push(cost + estimate, tile);
+		}
+		
+		/**
+		 * Get the cheapest cost found to a tile, which must have been opened
+		 * 
+		 * @param tile the tile
+		 * 
+		 * @return
+		 */
+		int cost(int tile) {
+			return this.cost[slot(tile)];
+		}
+		
+		/**
+		 * Get the tile the cheapest path to a tile came from, which must have been opened
+		 * 
+		 * @param tile the tile
+		 * 
+		 * @return
+		 */
+		int parent(int tile) {
+			return this.parent[slot(tile)];
+		}
+		
+		/**
+		 * Get whether a tile has been expanded
+		 * 
+		 * @param tile the tile
+		 * 
+		 * @return
+		 */
+		boolean isClosed(int tile) {
+			return (this.closed[tile >>> 6] & (1L << tile)) != 0;
+		}
+		
+		/**
+		 * Marks a tile as expanded, it's only ever closed once it's been opened.
+		 * 
+		 * @param tile the tile
+		 */
+		void close(int tile) {
+			this.closed[tile >>> 6] |= 1L << tile;
+		}
+		
+		/**
+		 * Finds the slot holding a tile, or the empty slot it would go in.
+		 * 
+		 * @param tile the tile
+		 * 
+		 * @return the slot
+		 */
+		private int slot(int tile) {
+			// the top bits of the product are the best mixed
+			int mask = this.keys.length - 1;
+			int slot = (tile * 0x9E3779B9) >>> this.shift;
+			while(this.keys[slot] != EMPTY && this.keys[slot] != tile) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		/**
+		 * Doubles the size of the table, moving the tiles of the current
+		 * search into it.
+		 */
+		private void grow() {
+			int[] oldKeys = this.keys;
+			int[] oldCost = this.cost;
+			int[] oldParent = this.parent;
+			int[] oldUsed = this.used;
+			allocate(oldKeys.length << 1);
+			
+			for(int i = 0; i < this.size; i++) {
+				int tile = oldKeys[oldUsed[i]];
+				int slot = slot(tile);
+				this.keys[slot] = tile;
+				this.cost[slot] = oldCost[oldUsed[i]];
+				this.parent[slot] = oldParent[oldUsed[i]];
+				this.used[i] = slot;
+			}
+		}
+		
+		/**
+		 * Allocates an empty table.
+		 * 
+		 * @param capacity the number of slots, a power of two
+		 */
+		private void allocate(int capacity) {
+			this.keys = new int[capacity];
+			Arrays.fill(this.keys, EMPTY);
+			this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+			this.cost = new int[capacity];
+			this.parent = new int[capacity];
+			this.used = new int[capacity >>> 1];
+		}
+	}
+	
+	/**
+	 * Finds a range of the paths of a batch, splitting the range in half
+	 * until there are few enough paths to find on one thread.
+	 */
+	private class PathTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** the number of paths to find without splitting any further */
+		private static final int THRESHOLD = 16;
+		
+		/** the first path to find */
+		private int from = 0;
+		/** one past the last path to find */
+		private int to = 0;
+		/** the start and goal of each path */
+		private int[] queries = null;
+		/** whether to use Jump Point Search rather than A* */
+		private boolean jumpPoints = false;
+		/** the paths found */
+		private Path[] paths = null;
+		
+		/**
+		 * Create a task to find a range of paths.
+		 * 
+		 * @param from the first path to find
+		 * @param to one past the last path to find
+		 * @param queries the start and goal of each path
+		 * @param jumpPoints whether to use Jump Point Search rather than A*
+		 * @param paths the paths found
+		 */
+		PathTask(int from, int to, int[] queries, boolean jumpPoints, Path[] paths) {
+			this.from = from;
+			this.to = to;
+			this.queries = queries;
+			this.jumpPoints = jumpPoints;
+			this.paths = paths;
+		}
+		
+		@Override
+		protected void compute() {
+			if(this.to - this.from <= THRESHOLD) {
+				for(int i = this.from; i < this.to; i++) {
+					int query = 4 * i;
+					Path path = this.paths[i] == null ? new Path() : this.paths[i];
+					this.paths[i] = search(this.queries[query], this.queries[query + 1],
+							this.queries[query + 2], this.queries[query + 3], path, this.jumpPoints);
+				}
+				return;
+			}
+			
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new PathTask(this.from, middle, this.queries, this.jumpPoints, this.paths),
+					  new PathTask(middle, this.to, this.queries, this.jumpPoints, this.paths));
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ealanhill.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A binary min heap of tiles, each entry packed into a long as its priority
+ * then the tile, so the heap never boxes a value. A tile can be pushed more
+ * than once, callers skip the stale entries as they're popped. The heap only
+ * allocates when it outgrows its array.
+ * 
+ * @author Alan Hill
+ * 
+ */
+class TileHeap {
+	
+	/** the entries, each packed as the priority then the tile */
+	private long[] entries = new long[256];
+	/** the number of entries in the heap */
+	private int size = 0;
+	
+	/**
+	 * Removes every entry from the heap.
+	 */
+	void clear() {
+		this.size = 0;
+	}
+	
+	/**
+	 * Get whether the heap has no entries
+	 * 
+	 * @return
+	 */
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+	
+	/**
+	 * Adds a tile to the heap.
+	 * 
+	 * @param priority the priority of the tile, lowest first, must not be negative
+	 * @param tile the tile, must not be negative
+	 */
+	void push(int priority, int tile) {
+		if(this.size == this.entries.length) {
+			this.entries = Arrays.copyOf(this.entries, this.size * 2);
+		}
+		
+		// sift the entry up from the bottom
+		long entry = ((long)priority << 32) | tile;
+		int child = this.size++;
+		while(child > 0) {
+			int parent = (child - 1) >>> 1;
+			if(this.entries[parent] <= entry) {
+				break;
+			}
+			this.entries[child] = this.entries[parent];
+			child = parent;
+		}
+		this.entries[child] = entry;
+	}
+	
+	/**
+	 * Removes the entry with the lowest priority, use {@link #priority(long)}
+	 * and {@link #tile(long)} to unpack it.
+	 * 
+	 * @return the packed entry
+	 */
+	long pop() {
+		long top = this.entries[0];
+		long last = this.entries[--this.size];
+		
+		// sift the last entry down from the top
+		int index = 0;
+		while(true) {
+			int child = 2 * index + 1;
+			if(child >= this.size) {
+				break;
+			}
+			if(child + 1 < this.size && this.entries[child + 1] < this.entries[child]) {
+				child++;
+			}
+			if(last <= this.entries[child]) {
+				break;
+			}
+			this.entries[index] = this.entries[child];
+			index = child;
+		}
+		this.entries[index] = last;
+		
+		return top;
+	}
+	
+	/**
+	 * Get the priority of a packed entry
+	 * 
+	 * @param entry the entry
+	 * 
+	 * @return
+	 */
+	static int priority(long entry) {
+		return (int)(entry >>> 32);
+	}
+	
+	/**
+	 * Get the tile of a packed entry
+	 * 
+	 * @param entry the entry
+	 * 
+	 * @return
+	 */
+	static int tile(long entry) {
+		return (int)entry;
+	}
+}
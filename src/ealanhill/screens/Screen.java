@@ -1,8 +1,10 @@
 package ealanhill.screens;
 
 import java.awt.event.KeyEvent;
+import java.util.Arrays;
 
 import asciiPanel.AsciiPanel;
+import ealanhill.objects.FieldOfView;
 import ealanhill.objects.Tile;
 import ealanhill.objects.World;
 
@@ -14,6 +16,11 @@ import ealanhill.objects.World;
  */
 public class Screen {
 
+	/** added to the ordinal of a tile that has been seen but can't be seen now */
+	private static final byte REMEMBERED = 0x10;
+	/** drawn in a cell whose tile has never been seen */
+	private static final byte UNSEEN = 0x20;
+
 	/** the terminal to show the user for the ascii world */
 	private AsciiPanel terminal = null;
 	/** the world to be displayed */
@@ -26,6 +33,22 @@ public class Screen {
 	private int screenWidth = 0;
 	/** how high the screen should be */
 	private int screenHeight = 0;
+	/** the ordinal of the tile drawn in each cell of the terminal, row by row, -1 if nothing has been drawn */
+	private byte[] drawn = null;
+	/** the tiles to be drawn in each cell of the terminal, swapped with {@link #drawn} once drawn */
+	private byte[] next = null;
+	/** the ordinals of the tiles read from the world for each cell of the terminal, row by row */
+	private byte[] viewport = null;
+	/** the ordinals of a rectangle of tiles read from the world, before they're put in the viewport */
+	private byte[] band = null;
+	/** the x coordinate of the world drawn in the left most column */
+	private int drawnLeft = 0;
+	/** the y coordinate of the world drawn in the top row */
+	private int drawnTop = 0;
+	/** the world's modification count when it was last drawn */
+	private long drawnModificationCount = -1;
+	/** what can be seen from the center of the view, {@code null} to show every tile */
+	private FieldOfView fieldOfView = null;
 	
 	/**
 	 * Default constructor.
@@ -37,10 +60,34 @@ public class Screen {
 		// set the terminal and world
 		this.terminal = terminal;
 		this.world = world;
-		// get the character width and height from the
+		// get the width and height in characters from the
 		// terminal to set the screen appropriately
-		this.screenWidth = terminal.getCharWidth();
-		this.screenHeight = terminal.getCharHeight();
+		this.screenWidth = terminal.getWidthInCharacters();
+		this.screenHeight = terminal.getHeightInCharacters();
+		// nothing has been drawn yet
+		this.drawn = new byte[this.screenWidth * this.screenHeight];
+		this.next = new byte[this.screenWidth * this.screenHeight];
+		this.viewport = new byte[this.screenWidth * this.screenHeight];
+		this.band = new byte[this.screenWidth * this.screenHeight];
+		Arrays.fill(this.drawn, (byte)-1);
+	}
+	
+	/**
+	 * Sets what can be seen from the center of the view. Tiles that can't be
+	 * seen are drawn dimmed if they have been seen before, and not at all if
+	 * they haven't.
+	 * 
+	 * @param fieldOfView the {@link FieldOfView} of the world, can be {@code null}
+	 * to show every tile
+	 * 
+	 * @return the {@link Screen}
+	 */
+	public Screen setFieldOfView(FieldOfView fieldOfView) {
+		this.fieldOfView = fieldOfView;
+		// everything has to be drawn again
+		this.drawnModificationCount = -1;
+		
+		return this;
 	}
 	
 	/**
@@ -52,6 +99,10 @@ public class Screen {
 		int left = getScrollX();
 		int top = getScrollY();
 		
+		// let the world know what we're looking at, so it can
+		// release anything far away from it
+		this.world.viewportChanged(left, top, this.screenWidth, this.screenHeight);
+		
 		// diplay the tiles
 		displayTiles(this.terminal, left, top);
 	}
@@ -148,23 +199,142 @@ public class Screen {
 	}
 	
 	/**
-	 * Displays the tiles to the user.
+	 * Displays the tiles to the user. Only the cells of the terminal whose
+	 * tile has changed are written. If the world hasn't changed since it was
+	 * last drawn, the tiles still on the screen after scrolling are taken from
+	 * what was drawn, and only the newly exposed rows and columns are read
+	 * from the world. The tiles are read with {@link World#readTiles}, so a
+	 * frame drawn while the world is being generated never mixes tiles from
+	 * before and after a change.
+	 * 
+	 * With a field of view, each tile is drawn as it's seen from the center
+	 * of the view, and the view is only worked out again when the center
+	 * moves or the tiles change.
 	 * 
 	 * @param terminal the {@link AsciiPanel} to display the world on
 	 * @param left how far to the left the screen is
 	 * @param top how far to the top the screen is
 	 */
 	private void displayTiles(AsciiPanel terminal, int left, int top) {
-		for(int x = 0; x < world.getWidth(); x++) {
-			for(int y = 0; y < world.getHeight(); y++) {
-				Tile tile = world.getTile(x + left, y + top);
-				// display the tile at this location
-				terminal.write(tile.getGlyph(), // get the character to display
-								x, // the location in the world
-								y, // the location in the world
-								tile.getColor() // get the color of the character
-							);
+		// only display what fits on the screen
+		int width = Math.min(this.screenWidth, world.getWidth());
+		int height = Math.min(this.screenHeight, world.getHeight());
+		
+		// if none of the tiles have changed, what was drawn can be reused; the
+		// count is read before the tiles, so tiles inserted while drawing are
+		// drawn next time
+		long modificationCount = world.getModificationCount();
+		boolean unchanged = modificationCount == this.drawnModificationCount;
+		if(this.fieldOfView != null && this.fieldOfView.update(this.centerX, this.centerY)) {
+			// the center has moved, or the tiles around it have changed
+			unchanged = false;
+		}
+		if(unchanged && left == this.drawnLeft && top == this.drawnTop) {
+			return;
+		}
+		
+		// how far the screen has scrolled since it was last drawn
+		int shiftX = left - this.drawnLeft;
+		int shiftY = top - this.drawnTop;
+		
+		// read the tiles that can't be taken from what was drawn
+		if(!unchanged) {
+			readViewport(left, top, 0, 0, width, height);
+		} else {
+			int rows = Math.min(Math.abs(shiftY), height);
+			int columns = Math.min(Math.abs(shiftX), width);
+			readViewport(left, top, 0, shiftY > 0 ? height - rows : 0, width, rows);
+			readViewport(left, top, shiftX > 0 ? width - columns : 0, 0, columns, height);
+		}
+		
+		// go row by row, since that is how the world stores its tiles
+		for(int y = 0; y < height; y++) {
+			int sourceY = y + shiftY;
+			for(int x = 0; x < width; x++) {
+				int sourceX = x + shiftX;
+				int index = y * this.screenWidth + x;
+				
+				// take the tile from what was drawn if it's still on screen,
+				// otherwise from what was read from the world
+				byte tile = -1;
+				if(unchanged && sourceX >= 0 && sourceX < width && sourceY >= 0 && sourceY < height) {
+					tile = this.drawn[sourceY * this.screenWidth + sourceX];
+				} else {
+					tile = toDraw(this.viewport[index], x + left, y + top);
+				}
+				this.next[index] = tile;
+				
+				// only write the cell if it's showing a different tile
+				if(tile == UNSEEN && tile != this.drawn[index]) {
+					terminal.write(' ', x, y, AsciiPanel.black);
+				} else if((tile & REMEMBERED) != 0 && tile != this.drawn[index]) {
+					// what was seen is drawn dimmed
+					terminal.write(Tile.fromOrdinal(tile & ~REMEMBERED).getGlyph(), x, y, AsciiPanel.brightBlack);
+				} else if(tile != this.drawn[index]) {
+					Tile toDraw = Tile.fromOrdinal(tile);
+					// display the tile at this location
+					terminal.write(toDraw.getGlyph(), // get the character to display
+									x, // the location in the world
+									y, // the location in the world
+									toDraw.getColor() // get the color of the character
+								);
+				}
 			}
 		}
+		
+		// what we just worked out is now what's drawn
+		byte[] swap = this.drawn;
+		this.drawn = this.next;
+		this.next = swap;
+		this.drawnLeft = left;
+		this.drawnTop = top;
+		this.drawnModificationCount = modificationCount;
+	}
+	
+	/**
+	 * Reads a rectangle of the cells of the terminal from the world into the
+	 * viewport, as the tiles were at a single moment.
+	 * 
+	 * @param left how far to the left the screen is
+	 * @param top how far to the top the screen is
+	 * @param cellX the left most column of the rectangle
+	 * @param cellY the top most row of the rectangle
+	 * @param width how wide the rectangle is
+	 * @param height how high the rectangle is
+	 */
+	private void readViewport(int left, int top, int cellX, int cellY, int width, int height) {
+		if(width <= 0 || height <= 0) {
+			return;
+		}
+		
+		// the whole screen can be read straight into the viewport
+		if(cellX == 0 && cellY == 0 && width == this.screenWidth) {
+			world.readTiles(left, top, width, height, this.viewport);
+			return;
+		}
+		
+		world.readTiles(left + cellX, top + cellY, width, height, this.band);
+		for(int row = 0; row < height; row++) {
+			System.arraycopy(this.band, row * width, this.viewport, (cellY + row) * this.screenWidth + cellX, width);
+		}
+	}
+	
+	/**
+	 * Works out what should be drawn for a tile of the world.
+	 * 
+	 * @param ordinal the ordinal of the tile, as read from the world
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
+	 * 
+	 * @return the ordinal of the tile, plus {@link #REMEMBERED} if it's been seen
+	 * but can't be seen now, or {@link #UNSEEN} if it's never been seen
+	 */
+	private byte toDraw(byte ordinal, int x, int y) {
+		if(this.fieldOfView == null || this.fieldOfView.isVisible(x, y)) {
+			return ordinal;
+		} else if(this.fieldOfView.isExplored(x, y)) {
+			return (byte)(ordinal | REMEMBERED);
+		}
+		return UNSEEN;
 	}
 }